@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.tools.CorpusGenerator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Input for the benchmarks. Either a real source tree, given with
+ * -Dconfigparser.bench.root=&lt;folder&gt;, or one made by
+ * {@link CorpusGenerator} in a temporary folder. The size of the made up
+ * tree can be set with -Dconfigparser.bench.symbols and
+ * -Dconfigparser.bench.files.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class Corpus {
+
+    public static final String ROOT_PROPERTY = "configparser.bench.root";
+    public static final String SYMBOLS_PROPERTY = "configparser.bench.symbols";
+    public static final String FILES_PROPERTY = "configparser.bench.files";
+
+    public static Environment environment() {
+        Environment environment = new Environment();
+        environment.put("SRCARCH", "x86");
+        environment.put("ARCH", "x86");
+        environment.put("KERNELVERSION", "4.13");
+        return environment;
+    }
+
+    /**
+     * A generated tree is deleted when the JVM exits, so each fork cleans
+     * up after itself.
+     *
+     * @return folder with a top level Kconfig to parse
+     * @throws IOException
+     */
+    public static File tree() throws IOException {
+        String root = System.getProperty(ROOT_PROPERTY);
+        if (root != null) {
+            return new File(root);
+        }
+        File dir = Files.createTempDirectory("corpus").toFile();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> delete(dir.toPath())));
+        CorpusGenerator generator = new CorpusGenerator(1);
+        generator.setSymbols(Integer.getInteger(SYMBOLS_PROPERTY, 2000));
+        generator.setFiles(Integer.getInteger(FILES_PROPERTY, 20));
+        generator.generate(dir);
+        return dir;
+    }
+
+    private static void delete(Path dir) {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        } catch (IOException ex) {
+            // Leave it for the OS to tidy up
+        }
+    }
+
+    /**
+     * One file of made up entries, in a menu, that look roughly like the
+     * ones in the kernel.
+     *
+     * @param seed
+     * @param configs how many config entries
+     * @return
+     */
+    public static byte[] file(int seed, int configs) {
+        Random random = new Random(seed);
+        StringBuilder b = new StringBuilder();
+        b.append("#\n# Made up file ").append(seed).append("\n#\n\n");
+        b.append("menu \"Menu ").append(seed).append("\"\n\n");
+        for (int i = 0; i < configs; i += 1) {
+            String name = symbol(seed, i);
+            b.append("config ").append(name).append("\n");
+            b.append("\ttristate \"Support for ").append(name.toLowerCase()).append("\"\n");
+            if (i > 2) {
+                b.append("\tdepends on ").append(symbol(seed, random.nextInt(i)))
+                        .append(" && (").append(symbol(seed, random.nextInt(i)))
+                        .append(" || !").append(symbol(seed, random.nextInt(i))).append(")\n");
+                b.append("\tselect ").append(symbol(seed, random.nextInt(i))).append("\n");
+            }
+            b.append("\tdefault m if ").append(symbol(seed, random.nextInt(i + 1))).append("\n");
+            b.append("\thelp\n");
+            for (int l = 0; l < 2 + random.nextInt(6); l += 1) {
+                b.append("\t  Some help text for ").append(name).append(", line ").append(l).append(".\n");
+            }
+            b.append("\n");
+        }
+        b.append("endmenu\n");
+        return b.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String symbol(int file, int index) {
+        return String.format("BENCH_%d_%d", file, index);
+    }
+
+}
@@ -0,0 +1,53 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.types.Menu;
+import java.io.File;
+import java.io.IOException;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Parses a tree and reports how much heap the result holds on to, counting
+ * every object reachable from the top menu. Run with
+ *
+ *     java -cp target/benchmarks.jar com.moosemorals.configparser.Footprint
+ *
+ * and the same -Dconfigparser.bench properties as the benchmarks.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class Footprint {
+
+    public static void main(String[] args) throws IOException {
+        File root = Corpus.tree();
+        Menu top = new ParseSession(root, Corpus.environment()).parse("Kconfig");
+
+        GraphLayout layout = GraphLayout.parseInstance(top);
+        System.out.printf("%s: %d objects, %.1fMB%n", root, layout.totalCount(), layout.totalSize() / (1024.0 * 1024.0));
+        System.out.println(layout.toFootprint());
+    }
+
+}
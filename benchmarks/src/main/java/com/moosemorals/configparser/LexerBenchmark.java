@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.PushbackReader;
+import java.io.StreamTokenizer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reading and tokenizing one file that's already in memory. Each operation
+ * is one pass over a made up file of 1000 configs, from
+ * {@link Corpus#file}.
+ * {@link KconfigLexer} on its own is compared with the old
+ * reader/StreamTokenizer stack it replaced.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+    private byte[] data;
+    private char[] chars;
+
+    @Setup
+    public void setup() {
+        data = Corpus.file(0, 1000);
+        chars = new String(data, StandardCharsets.UTF_8).toCharArray();
+    }
+
+    @Benchmark
+    public long configFileReader() throws IOException {
+        ConfigFileReader in = new ConfigFileReader(new PushbackReader(new CharArrayReader(chars), 8 * 1024));
+        long count = 0;
+        while (in.read() != -1) {
+            count += 1;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long kconfigLexer() {
+        KconfigLexer t = new KconfigLexer(data);
+        long count = 0;
+        int token;
+        while ((token = t.nextToken()) != KconfigLexer.TT_EOF) {
+            if (token == KconfigLexer.TT_WORD) {
+                count += t.getTokenString().length();
+            }
+            count += 1;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long streamTokenizer() throws IOException {
+        StreamTokenizer t = new StreamTokenizer(new ConfigFileReader(new PushbackReader(new CharArrayReader(chars), 8 * 1024)));
+        t.resetSyntax();
+        t.eolIsSignificant(true);
+        t.quoteChar(KconfigLexer.QUOTE_CHAR);
+        t.quoteChar(KconfigLexer.DOUBLE_QUOTE_CHAR);
+        t.wordChars('a', 'z');
+        t.wordChars('A', 'Z');
+        t.wordChars('0', '9');
+        t.wordChars('-', '-');
+        t.wordChars('_', '_');
+        t.whitespaceChars('\u0000', ' ');
+        long count = 0;
+        while (t.nextToken() != StreamTokenizer.TT_EOF) {
+            count += 1;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long sourceFileTokens() throws IOException {
+        SourceFile t = new SourceFile("Kconfig", data);
+        long count = 0;
+        int token;
+        while ((token = t.nextToken()) != KconfigLexer.TT_EOF) {
+            if (token == KconfigLexer.TT_WORD) {
+                count += t.getTokenString().length();
+            }
+            count += 1;
+        }
+        return count;
+    }
+
+    @Benchmark
+    public long sourceFileSymbols() throws IOException {
+        SourceFile t = new SourceFile("Kconfig", data);
+        long count = 0;
+        int token;
+        while ((token = t.nextToken()) != KconfigLexer.TT_EOF) {
+            if (token == KconfigLexer.TT_WORD) {
+                count += t.getSymbol().getId();
+            }
+        }
+        return count;
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.Corpus;
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.SourceFile;
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing whole trees, and the parts of {@link BaseParser} that show up
+ * most in profiles. Lives in the parsers package to get at the protected
+ * read methods.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    private static final byte[] HELP = ("help\n"
+            + "\t  Say Y here if you want to support this thing. It is a fairly\n"
+            + "\t  long explanation that goes over several lines, much like the\n"
+            + "\t  ones in the kernel.\n"
+            + "\n"
+            + "\t  If unsure, say N.\n"
+            + "\n"
+            + "config NEXT\n").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] EXPRESSION = "PCI && (X86_64 || !ARM) && ARCH != \"um\" && (NET = y || NET = m)\n"
+            .getBytes(StandardCharsets.UTF_8);
+
+    private File root;
+    private Environment environment;
+    private BaseParser parser;
+    private SymbolTable symbols;
+
+    @Setup
+    public void setup() throws IOException {
+        environment = Corpus.environment();
+        root = Corpus.tree();
+        parser = new BaseParser(null, environment) {
+        };
+        symbols = new SymbolTable();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Menu parseSequential() throws IOException {
+        return new ParseSession(root, environment).parse("Kconfig");
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public Menu parseParallel() throws IOException {
+        ParseSession session = new ParseSession(root, environment);
+        session.setPool(ForkJoinPool.commonPool());
+        return session.parse("Kconfig");
+    }
+
+    @Benchmark
+    public String readHelp() throws IOException {
+        SourceFile t = new SourceFile("Kconfig", HELP, symbols);
+        t.nextToken();
+        Config c = new Config(t.getLocation(), symbols.intern("BENCH"));
+        parser.readHelp(t, c);
+        return c.getHelp();
+    }
+
+    @Benchmark
+    public Expr readExpression() throws IOException {
+        return parser.readExpression(new SourceFile("Kconfig", EXPRESSION, symbols));
+    }
+
+}
@@ -24,8 +24,10 @@
 
 package com.moosemorals.configparser;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -37,20 +39,52 @@ public class Environment {
 
     private final Logger log = LoggerFactory.getLogger(Environment.class);
     private final Map<String, String> environment;
-    
+    private final Set<String> used;
+
     public Environment() {
         environment = new HashMap<>();
+        used = null;
+    }
+
+    private Environment(Environment parent, Set<String> used) {
+        this.environment = parent.environment;
+        this.used = used;
+    }
+
+    /**
+     * Get a view of this environment that notes every variable that is looked
+     * up, whether or not it is set.
+     *
+     * @param used set to add variable names to
+     * @return
+     */
+    public Environment recordUsage(Set<String> used) {
+        return new Environment(this, used);
     }
-    
+
+    /**
+     * @return every variable that is set, without noting any of them as
+     * used
+     */
+    public Map<String, String> getValues() {
+        return Collections.unmodifiableMap(environment);
+    }
+
     public void put(String key, String value) {
         environment.put(key, value);
     }
 
     public String get(String key) {
+        if (used != null) {
+            used.add(key);
+        }
         return environment.get(key);
     }
-    
+
     public boolean contains(String key) {
+        if (used != null) {
+            used.add(key);
+        }
         return environment.containsKey(key);
     }
 }
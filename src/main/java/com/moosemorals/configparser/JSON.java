@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import java.io.BufferedWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import javax.json.Json;
+import javax.json.stream.JsonGenerator;
+import javax.json.stream.JsonGeneratorFactory;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Writes the same things as {@link XML}, but as JSON.
+ *
+ * Elements become objects and lists become arrays. An object in an array
+ * gets its element name as "kind", so a list of defaults comes out as
+ * <code>[{"kind": "default", "value": "y", "if": "A"}]</code>. Attributes
+ * become members of the object, and the text of an element with attributes
+ * is its "value". Text without attributes is a plain string, either as a
+ * member of the enclosing object or an item in the enclosing array.
+ *
+ * Like XML, output is written as it's generated, through a buffer.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class JSON implements StructuredWriter {
+
+    public static final String KIND = "kind";
+    public static final String VALUE = "value";
+
+    private static final JsonGeneratorFactory factory = Json.createGeneratorFactory(Collections.<String, Object>emptyMap());
+    private static final JsonGeneratorFactory prettyFactory = Json.createGeneratorFactory(
+            Collections.<String, Object>singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+
+    private final JsonGenerator json;
+    // true for each open array, false for each open object
+    private final Deque<Boolean> open = new ArrayDeque<>();
+
+    public JSON(Writer out) {
+        this(out, false);
+    }
+
+    public JSON(Writer out, boolean pretty) {
+        if (!(out instanceof BufferedWriter)) {
+            out = new BufferedWriter(out);
+        }
+        json = (pretty ? prettyFactory : factory).createGenerator(out);
+    }
+
+    private boolean inArray() {
+        return open.isEmpty() || open.peek();
+    }
+
+    private void writeAttributes(String[] attr) {
+        if (attr != null) {
+            if (attr.length % 2 != 0) {
+                throw new IllegalArgumentException("Attributes must come in pairs");
+            }
+            for (int i = 0; i < attr.length; i += 2) {
+                json.write(attr[i], attr[i + 1]);
+            }
+        }
+    }
+
+    @Override
+    public void start(String name, String... attr) {
+        if (inArray()) {
+            json.writeStartObject();
+            json.write(KIND, name);
+        } else {
+            json.writeStartObject(name);
+        }
+        open.push(false);
+        writeAttributes(attr);
+    }
+
+    @Override
+    public void startList(String name) {
+        if (inArray()) {
+            json.writeStartArray();
+        } else {
+            json.writeStartArray(name);
+        }
+        open.push(true);
+    }
+
+    @Override
+    public void add(String name, String content, String... attr) {
+        start(name, attr);
+        if (content != null) {
+            json.write(VALUE, content);
+        }
+        end();
+    }
+
+    @Override
+    public void add(String name, String content) {
+        if (content != null) {
+            if (inArray()) {
+                json.write(content);
+            } else {
+                json.write(name, content);
+            }
+        }
+    }
+
+    @Override
+    public void add(XMLable other) throws XMLStreamException {
+        other.toXML(this);
+    }
+
+    @Override
+    public void add(String name, XMLable other) throws XMLStreamException {
+        if (other != null) {
+            start(name);
+            other.toXML(this);
+            end();
+        }
+    }
+
+    @Override
+    public void add(String name) {
+        start(name);
+        end();
+    }
+
+    @Override
+    public void add(String name, List<? extends XMLable> l) throws XMLStreamException {
+        if (!l.isEmpty()) {
+            startList(name);
+            for (XMLable a : l) {
+                a.toXML(this);
+            }
+            end();
+        }
+    }
+
+    @Override
+    public void addList(String name, String item, List<String> values) {
+        if (!values.isEmpty()) {
+            startList(name);
+            for (String value : values) {
+                json.write(value);
+            }
+            end();
+        }
+    }
+
+    @Override
+    public void end() {
+        if (open.isEmpty()) {
+            throw new IllegalStateException("Nothing to end");
+        }
+        open.pop();
+        json.writeEnd();
+    }
+
+    /**
+     * Closes anything that's still open. The underlying writer is left open,
+     * but flushed.
+     */
+    @Override
+    public void endDocument() {
+        while (!open.isEmpty()) {
+            end();
+        }
+        json.flush();
+    }
+
+    @Override
+    public void flush() {
+        json.flush();
+    }
+
+}
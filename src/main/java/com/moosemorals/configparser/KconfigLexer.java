@@ -0,0 +1,414 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import java.io.StreamTokenizer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tokenizer for Kconfig files that works directly on the bytes of the whole
+ * file.
+ *
+ * Token types are the same as {@link StreamTokenizer} uses, so it can be
+ * dropped in where a tokenizer was used before. Comments and '\'
+ * continuations are dealt with as the bytes are scanned, and tokens are kept
+ * as offsets into the buffer. Nothing is allocated per token unless the text
+ * is asked for with {@link #getTokenString()}, and Kconfig keywords come back
+ * as shared constants even then.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class KconfigLexer {
+
+    public static final int TT_EOF = StreamTokenizer.TT_EOF;
+    public static final int TT_EOL = StreamTokenizer.TT_EOL;
+    public static final int TT_WORD = StreamTokenizer.TT_WORD;
+    public static final int TT_NOTHING = -4;
+
+    public static final int COMMENT_CHAR = '#';
+    public static final int DOUBLE_QUOTE_CHAR = '"';
+    public static final int QUOTE_CHAR = '\'';
+
+    private static final String[] KEYWORDS = {
+        "bool", "boolean", "choice", "comment", "config", "def_bool",
+        "def_tristate", "default", "depends", "endchoice", "endif", "endmenu",
+        "env", "help", "---help---", "hex", "if", "imply", "int", "m",
+        "mainmenu", "menu", "menuconfig", "modules", "n", "on", "option",
+        "optional", "prompt", "range", "select", "source", "string",
+        "tristate", "visible", "y"
+    };
+    private static final int KEYWORD_TABLE_SIZE = 128;
+    private static final String[] KEYWORD_TABLE = new String[KEYWORD_TABLE_SIZE];
+
+    static {
+        for (String k : KEYWORDS) {
+            byte[] b = k.getBytes(StandardCharsets.US_ASCII);
+            int slot = hash(b, 0, b.length) & (KEYWORD_TABLE_SIZE - 1);
+            while (KEYWORD_TABLE[slot] != null) {
+                slot = (slot + 1) & (KEYWORD_TABLE_SIZE - 1);
+            }
+            KEYWORD_TABLE[slot] = k;
+        }
+    }
+
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+    private int line = 1;
+
+    private int ttype = TT_NOTHING;
+    private int start;
+    private int end;
+    private boolean escaped;
+    private boolean pushedBack;
+    private int tokens;
+
+    private int lastLineStart = -1;
+    private int lastLineNumber;
+
+    public KconfigLexer(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    public KconfigLexer(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.limit = offset + length;
+    }
+
+    public static boolean isWordChar(int c) {
+        return (c >= 'a' && c <= 'z')
+                || (c >= 'A' && c <= 'Z')
+                || (c >= '0' && c <= '9')
+                || c == '-' || c == '_'
+                || c >= 0x80;
+    }
+
+    static int hash(byte[] b, int from, int to) {
+        int h = 0;
+        for (int i = from; i < to; i += 1) {
+            h = 31 * h + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Skip a '\' newline pair at pos, if there is one.
+     *
+     * @return true if a continuation was skipped
+     */
+    private boolean skipContinuation() {
+        if (buf[pos] != '\\') {
+            return false;
+        }
+        int next = pos + 1;
+        if (next < limit && buf[next] == '\r') {
+            next += 1;
+        }
+        if (next < limit && buf[next] == '\n') {
+            pos = next + 1;
+            line += 1;
+            return true;
+        }
+        return false;
+    }
+
+    public int nextToken() {
+        if (pushedBack) {
+            pushedBack = false;
+            return ttype;
+        }
+        tokens += 1;
+        escaped = false;
+
+        while (pos < limit) {
+            int c = buf[pos] & 0xff;
+            if (c == '\n') {
+                pos += 1;
+                line += 1;
+                return ttype = TT_EOL;
+            } else if (c == '\r') {
+                pos += 1;
+                if (pos < limit && buf[pos] == '\n') {
+                    pos += 1;
+                }
+                line += 1;
+                return ttype = TT_EOL;
+            } else if (c <= ' ') {
+                pos += 1;
+            } else if (c == COMMENT_CHAR) {
+                while (pos < limit && buf[pos] != '\n' && buf[pos] != '\r') {
+                    pos += 1;
+                }
+            } else if (c == '\\' && skipContinuation()) {
+                // Joined line, carry on
+            } else if (isWordChar(c)) {
+                start = pos;
+                while (pos < limit && isWordChar(buf[pos] & 0xff)) {
+                    pos += 1;
+                }
+                end = pos;
+                return ttype = TT_WORD;
+            } else if (c == DOUBLE_QUOTE_CHAR || c == QUOTE_CHAR) {
+                pos += 1;
+                start = pos;
+                while (pos < limit) {
+                    int q = buf[pos];
+                    if (q == c || q == '\n' || q == '\r') {
+                        break;
+                    } else if (q == '\\') {
+                        escaped = true;
+                        if (!skipContinuation()) {
+                            pos += 2;
+                        }
+                    } else {
+                        pos += 1;
+                    }
+                }
+                if (pos > limit) {
+                    pos = limit;
+                }
+                end = pos;
+                if (pos < limit && buf[pos] == c) {
+                    pos += 1;
+                }
+                return ttype = c;
+            } else {
+                pos += 1;
+                start = end = pos;
+                return ttype = c;
+            }
+        }
+        return ttype = TT_EOF;
+    }
+
+    public void pushBack() {
+        if (ttype != TT_NOTHING) {
+            pushedBack = true;
+        }
+    }
+
+    public int currentToken() {
+        return ttype;
+    }
+
+    public int getLineNumber() {
+        return line;
+    }
+
+    /**
+     * @return number of tokens read so far, not counting pushed back tokens
+     */
+    public int getTokenCount() {
+        return tokens;
+    }
+
+    public int getTokenStart() {
+        return start;
+    }
+
+    public int getTokenEnd() {
+        return end;
+    }
+
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    /**
+     * Compare the current word or string with some text without building a
+     * String.
+     *
+     * @param s ASCII text to compare
+     * @return true if the current token matches
+     */
+    public boolean tokenEquals(String s) {
+        if (!hasText() || escaped || end - start != s.length()) {
+            return false;
+        }
+        for (int i = 0; i < s.length(); i += 1) {
+            if (buf[start + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean hasText() {
+        return ttype == TT_WORD || ttype == DOUBLE_QUOTE_CHAR || ttype == QUOTE_CHAR;
+    }
+
+    /**
+     * Text of the current word or quoted string, or null for any other
+     * token.
+     *
+     * @return
+     */
+    public String getTokenString() {
+        if (!hasText()) {
+            return null;
+        }
+        if (ttype == TT_WORD) {
+            String keyword = findKeyword();
+            if (keyword != null) {
+                return keyword;
+            }
+        } else if (escaped) {
+            return unescape();
+        }
+        return new String(buf, start, end - start, StandardCharsets.UTF_8);
+    }
+
+    private String findKeyword() {
+        int slot = hash(buf, start, end) & (KEYWORD_TABLE_SIZE - 1);
+        String k;
+        while ((k = KEYWORD_TABLE[slot]) != null) {
+            if (tokenEquals(k)) {
+                return k;
+            }
+            slot = (slot + 1) & (KEYWORD_TABLE_SIZE - 1);
+        }
+        return null;
+    }
+
+    private String unescape() {
+        byte[] out = new byte[end - start];
+        int len = 0;
+        int i = start;
+        while (i < end) {
+            byte b = buf[i];
+            if (b == '\\' && i + 1 < end) {
+                byte n = buf[i + 1];
+                i += 2;
+                switch (n) {
+                    case '\r':
+                        if (i < end && buf[i] == '\n') {
+                            i += 1;
+                        }
+                        break;
+                    case '\n':
+                        break;
+                    case 'a':
+                        out[len++] = 0x7;
+                        break;
+                    case 'b':
+                        out[len++] = '\b';
+                        break;
+                    case 'f':
+                        out[len++] = 0xC;
+                        break;
+                    case 'n':
+                        out[len++] = '\n';
+                        break;
+                    case 'r':
+                        out[len++] = '\r';
+                        break;
+                    case 't':
+                        out[len++] = '\t';
+                        break;
+                    case 'v':
+                        out[len++] = 0xB;
+                        break;
+                    default:
+                        out[len++] = n;
+                        break;
+                }
+            } else {
+                out[len++] = b;
+                i += 1;
+            }
+        }
+        return new String(out, 0, len, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read the rest of the current line as raw text, without any comment.
+     * Any token state is discarded.
+     *
+     * @return the line, or null at the end of the file
+     */
+    public String readLine() {
+        pushedBack = false;
+        if (pos >= limit) {
+            return null;
+        }
+        lastLineStart = pos;
+        lastLineNumber = line;
+
+        StringBuilder result = null;
+        int from = pos;
+        int to = -1;
+        while (pos < limit) {
+            byte c = buf[pos];
+            if (c == '\n' || c == '\r') {
+                break;
+            } else if (to == -1) {
+                int mark = pos;
+                if (c == COMMENT_CHAR) {
+                    to = pos;
+                } else if (c == '\\' && skipContinuation()) {
+                    if (result == null) {
+                        result = new StringBuilder();
+                    }
+                    result.append(new String(buf, from, mark - from, StandardCharsets.UTF_8));
+                    from = pos;
+                    continue;
+                }
+            }
+            pos += 1;
+        }
+        if (to == -1) {
+            to = pos;
+        }
+        if (pos < limit) {
+            if (buf[pos] == '\r' && pos + 1 < limit && buf[pos + 1] == '\n') {
+                pos += 1;
+            }
+            pos += 1;
+            line += 1;
+        }
+
+        String text = new String(buf, from, Math.max(0, to - from), StandardCharsets.UTF_8);
+        return result == null ? text : result.append(text).toString();
+    }
+
+    /**
+     * Go back to the start of the line most recently returned by
+     * {@link #readLine()}.
+     */
+    public void unreadLine() {
+        if (lastLineStart < 0) {
+            throw new IllegalStateException("No line to unread");
+        }
+        pos = lastLineStart;
+        line = lastLineNumber;
+        lastLineStart = -1;
+    }
+
+    @Override
+    public String toString() {
+        return "KconfigLexer{" + "ttype=" + ttype + ", line=" + line + '}';
+    }
+
+}
@@ -23,11 +23,33 @@
  */
 package com.moosemorals.configparser;
 
+import com.moosemorals.configparser.SourceFile.Location;
 import com.moosemorals.configparser.types.Menu;
-import com.moosemorals.configparser.parsers.MenuParser;
+import com.moosemorals.configparser.metrics.ParseMetrics;
+import com.moosemorals.configparser.parsers.BatchParser;
+import com.moosemorals.configparser.parsers.KconfigWatcher;
+import com.moosemorals.configparser.parsers.ParseCache;
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.parsers.Prefetcher;
+import com.moosemorals.configparser.resolve.DotConfig;
+import com.moosemorals.configparser.resolve.Resolver;
+import com.moosemorals.configparser.snapshot.Snapshot;
+import com.moosemorals.configparser.snapshot.SnapshotWriter;
+import com.moosemorals.configparser.sources.DirectoryTree;
+import com.moosemorals.configparser.sources.SourceTree;
+import com.moosemorals.configparser.sources.StampedTree;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.SymbolTable;
 import java.io.File;
+import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import javax.management.JMException;
 import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -43,26 +65,261 @@ public class Main {
 
     public static final Logger log = LoggerFactory.getLogger(Main.class);
 
-    public static void main(String[] args) throws IOException {
+    // Set -Dconfigparser.format=json to write JSON instead of XML
+    private static final boolean JSON_OUTPUT = "json".equalsIgnoreCase(System.getProperty("configparser.format"));
+    private static final String EXTENSION = JSON_OUTPUT ? ".json" : ".xml";
+
+    // Set -Dconfigparser.compress=gz or zst to compress the output
+    private static final String COMPRESS = System.getProperty("configparser.compress");
+    private static final String OUTPUT = "/tmp/config" + EXTENSION + (COMPRESS != null ? "." + COMPRESS : "");
+
+    public static void main(String[] args) throws IOException, InterruptedException {
 
         Environment environment = new Environment();
         environment.put("SRCARCH", "x86");
         environment.put("ARCH", "x86");
         environment.put("KERNELVERSION", "4.13");
 
-        SourceFile.setRoot(SOURCE_FOLDER);
-        Menu top = new MenuParser(null, environment).parse("Kconfig");
+        // Set -Dconfigparser.cache=<folder> to keep parse results between runs
+        String cacheFolder = System.getProperty("configparser.cache");
+        ParseCache cache = cacheFolder != null ? new ParseCache(new File(cacheFolder)) : null;
+
+        // Set -Dconfigparser.watch=true to keep running and write changes
+        // as files are edited
+        boolean watch = Boolean.getBoolean("configparser.watch");
+
+        // Set -Dconfigparser.stream=true to write the XML while parsing,
+        // without keeping the tree
+        boolean stream = Boolean.getBoolean("configparser.stream");
+
+        // Set -Dconfigparser.arches=x86,arm,... to parse once for each
+        // architecture, sharing whatever doesn't depend on it
+        String arches = System.getProperty("configparser.arches");
+
+        // Set -Dconfigparser.source=<archive> to read Kconfig files straight
+        // from a tarball or zip instead of SOURCE_FOLDER
+        String source = System.getProperty("configparser.source");
+        try (SourceTree tree = SourceTree.open(source != null ? new File(source) : SOURCE_FOLDER)) {
+            if (arches != null) {
+                batch(tree, arches.split(","));
+            } else if (stream) {
+                stream(new ParseSession(tree, environment, new SymbolTable()), new File(OUTPUT));
+            } else if (watch) {
+                if (!(tree instanceof DirectoryTree)) {
+                    throw new IOException("Can't watch " + tree + ", only folders can be watched");
+                }
+                try (KconfigWatcher watcher = new KconfigWatcher(tree.getRoot(), environment, ForkJoinPool.commonPool(), cache)) {
+                    save(watcher.parse("Kconfig"), new File(OUTPUT));
+                    log.info("Watching {} for changes", tree);
+                    watcher.watch(new UpdateWriter(new File("/tmp")));
+                }
+            } else {
+                parse(tree, environment, cache);
+            }
+        }
+    }
+
+    /**
+     * Parse the tree, or load it from a snapshot, and write it out.
+     */
+    private static void parse(SourceTree tree, Environment environment, ParseCache cache) throws IOException {
+        // Set -Dconfigparser.snapshot=<file> to load the tree from a
+        // snapshot when none of the files have changed since it was
+        // written, and to write one when they have
+        String snapshotFile = System.getProperty("configparser.snapshot");
+        Snapshot snapshot = snapshotFile != null ? openSnapshot(new File(snapshotFile), tree, environment) : null;
+
+        // Stamp the files as they are read, so the snapshot knows which
+        // ones it depends on
+        StampedTree stamped = snapshotFile != null ? new StampedTree(tree) : null;
+        ParseSession session = new ParseSession(stamped != null ? stamped : tree, environment, new SymbolTable());
+        session.setPool(ForkJoinPool.commonPool());
+        if (cache != null) {
+            session.setCache(cache);
+        }
+
+        // Set -Dconfigparser.metrics=<file> to time each file, and
+        // write a report when done. The numbers are also available
+        // over JMX while running
+        String report = System.getProperty("configparser.metrics");
+        if (report != null) {
+            ParseMetrics metrics = new ParseMetrics();
+            try {
+                metrics.register();
+            } catch (JMException ex) {
+                log.warn("Can't register metrics: {}", ex.toString());
+            }
+            session.setMetrics(metrics);
+        }
+
+        // Set -Dconfigparser.prefetch=<threads> to read sourced files
+        // on that many threads ahead of the parser
+        int prefetch = Integer.getInteger("configparser.prefetch", 0);
+
+        Menu top;
+        SymbolTable symbols;
+        if (snapshot != null) {
+            top = snapshot.getTop();
+            symbols = snapshot.getSymbolTable();
+        } else {
+            if (prefetch > 0) {
+                try (Prefetcher prefetcher = new Prefetcher(session.getTree(), environment, prefetch)) {
+                    session.setPrefetcher(prefetcher);
+                    top = session.parse("Kconfig");
+                }
+            } else {
+                top = session.parse("Kconfig");
+            }
+            symbols = session.getSymbolTable();
+            if (report != null) {
+                try (Writer out = new FileWriter(report)) {
+                    session.getMetrics().writeReport(out);
+                }
+                log.info("Wrote metrics to {}", report);
+            }
+            if (cache != null) {
+                log.debug("Cache hits {}, misses {}", cache.getHits(), cache.getMisses());
+            }
+            if (snapshotFile != null) {
+                SnapshotWriter.write(top, new File(snapshotFile), stamped, environment);
+            }
+        }
+        save(top, new File(OUTPUT));
+
+        // Set -Dconfigparser.config=<.config> to fill in the rest of a
+        // config, like 'make olddefconfig'
+        String config = System.getProperty("configparser.config");
+        if (config != null) {
+            resolve(top, symbols, new File(config), new File("/tmp/config.resolved"));
+        }
+    }
+
+    private static void batch(SourceTree tree, String[] arches) throws IOException {
+        List<Environment> environments = new ArrayList<>();
+        for (String arch : arches) {
+            Environment environment = new Environment();
+            environment.put("SRCARCH", arch);
+            environment.put("ARCH", arch);
+            environment.put("KERNELVERSION", "4.13");
+            environments.add(environment);
+        }
+
+        BatchParser parser = new BatchParser(tree, new SymbolTable());
+        parser.setPool(ForkJoinPool.commonPool());
+        List<Menu> tops = parser.parse("Kconfig", environments);
+        log.info("Parsed {} files, reused {}", parser.getParsed(), parser.getReused());
+
+        for (int i = 0; i < arches.length; i += 1) {
+            save(tops.get(i), new File("/tmp/config-" + arches[i] + EXTENSION + (COMPRESS != null ? "." + COMPRESS : "")));
+        }
+    }
+
+    /**
+     * @return the snapshot, or null if there isn't a usable, current one
+     */
+    private static Snapshot openSnapshot(File file, SourceTree tree, Environment environment) {
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            Snapshot snapshot = Snapshot.open(file);
+            if (snapshot.isCurrent(tree, environment)) {
+                log.info("Loaded {}", file);
+                return snapshot;
+            }
+            log.info("{} is out of date", file);
+        } catch (IOException ex) {
+            log.warn("Can't use snapshot: {}", ex.getMessage());
+        }
+        return null;
+    }
+
+    private static void resolve(Menu top, SymbolTable symbols, File in, File out) throws IOException {
+        Resolver resolver = new Resolver(top, symbols);
+        try (FileReader reader = new FileReader(in)) {
+            resolver.load(DotConfig.read(reader, symbols));
+        }
+        try (FileWriter writer = new FileWriter(out)) {
+            resolver.write(writer);
+        }
+        log.info("Resolved {} to {}", in, out);
+    }
+
+    private static void stream(ParseSession session, File file) throws IOException {
+        log.debug("Streaming to {}", file);
+        try (Writer out = TreeWriter.open(file)) {
+            StructuredWriter xml = open(out);
+            session.parse("Kconfig", new XMLParseListener(xml));
+            xml.endDocument();
+            xml.flush();
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+        log.debug("Stream complete");
+    }
 
-        log.debug("Saving to XML");
-        try (FileWriter out = new FileWriter(new File("/tmp/config.xml"))) {
-            XML xml = new XML(out);
-            top.toXML(xml);
-            out.flush();
+    private static StructuredWriter open(Writer out) throws XMLStreamException {
+        return JSON_OUTPUT ? new JSON(out) : new XML(out);
+    }
 
+    private static void save(Menu top, File file) throws IOException {
+        log.debug("Saving to {}", file);
+        try (Writer out = TreeWriter.open(file)) {
+            if (JSON_OUTPUT) {
+                StructuredWriter json = open(out);
+                top.toXML(json);
+                json.endDocument();
+                json.flush();
+            } else {
+                new TreeWriter(ForkJoinPool.commonPool()).write(top, out);
+            }
         } catch (XMLStreamException ex) {
             throw new IOException(ex);
         }
         log.debug("Save complete");
     }
 
+    /**
+     * Writes each change to its own numbered file, holding just the new
+     * entries and where they go.
+     */
+    private static class UpdateWriter implements KconfigWatcher.Listener {
+
+        private final File folder;
+        private int count = 0;
+
+        UpdateWriter(File folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        public void replaced(String target, Container host, int index, List<Entry> removed, List<Entry> added) {
+            count += 1;
+            Location location = ((Entry) host).getLocation();
+            File file = new File(folder, String.format("config-update-%d%s", count, EXTENSION));
+            try (FileWriter out = new FileWriter(file)) {
+                StructuredWriter xml = open(out);
+                xml.start("update", "file", target,
+                        "hostFile", location.getFile(), "hostLine", location.getLine(),
+                        "index", Integer.toString(index), "removed", Integer.toString(removed.size()));
+                xml.add("entries", added);
+                xml.end();
+                xml.endDocument();
+                xml.flush();
+                log.info("{} changed, wrote {}", target, file);
+            } catch (IOException | XMLStreamException ex) {
+                log.warn("Can't write update for {}: {}", target, ex.toString());
+            }
+        }
+
+        @Override
+        public void reloaded(Menu top) {
+            try {
+                save(top, new File(folder, "config" + EXTENSION));
+            } catch (IOException ex) {
+                log.warn("Can't save reloaded tree: {}", ex.toString());
+            }
+        }
+    }
+
 }
@@ -23,66 +23,212 @@
  */
 package com.moosemorals.configparser;
 
-import com.moosemorals.configparser.parsers.BaseParser;
+import com.moosemorals.configparser.events.Events;
+import com.moosemorals.configparser.metrics.FileMetrics;
+import com.moosemorals.configparser.types.FileTable;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
 import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
-import java.io.PushbackReader;
-import java.io.StreamTokenizer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 public final class SourceFile {
 
-    private static File root = new File("/");
-    private final Logger log = LoggerFactory.getLogger(SourceFile.class);
-    private final static int PUSHBACK_BUFFER_SIZE = 8 * 1024; // Probably overkill.
-    private final StreamTokenizer t;
-    private final ConfigFileReader in;
+    // Where parsers made without a ParseSession look for files
+    private static volatile File root = new File("/");
+    private static final Logger log = LoggerFactory.getLogger(SourceFile.class);
+    private final KconfigLexer t;
     private final String target;
-    private int lines = 0;
+    private final SymbolTable symbols;
+    // Id of the target in the file table, looked up on first use
+    private int file = -1;
+    // Null unless the parse is being measured
+    private FileMetrics metrics;
+    // Null unless there's a flight recording and a parser opened this file
+    private Object event;
 
+    /**
+     * Set the folder that parsers made without a
+     * {@link com.moosemorals.configparser.parsers.ParseSession} read from.
+     *
+     * @param base
+     * @deprecated this is shared by every parse in the JVM. Give each parse
+     * its own root with a ParseSession instead
+     */
+    @Deprecated
     public static void setRoot(File base) {
         SourceFile.root = base;
     }
 
-    public SourceFile(String target) throws FileNotFoundException {
+    /**
+     * @return the folder set with {@link #setRoot}
+     * @deprecated use {@link com.moosemorals.configparser.parsers.ParseSession#getRoot}
+     */
+    @Deprecated
+    public static File getRoot() {
+        return root;
+    }
+
+    /**
+     * @param target path relative to the root set with {@link #setRoot}
+     * @throws IOException
+     * @deprecated use {@link com.moosemorals.configparser.parsers.ParseSession#open}
+     */
+    @Deprecated
+    public SourceFile(String target) throws IOException {
+        this(target, new SymbolTable());
+    }
+
+    /**
+     * @param target path relative to the root set with {@link #setRoot}
+     * @param symbols table for symbol names
+     * @throws IOException
+     * @deprecated use {@link com.moosemorals.configparser.parsers.ParseSession#open}
+     */
+    @Deprecated
+    public SourceFile(String target, SymbolTable symbols) throws IOException {
+        this(root, target, symbols);
+    }
+
+    /**
+     * @param base folder that target is relative to
+     * @param target
+     * @param symbols table for symbol names
+     * @throws IOException
+     */
+    public SourceFile(File base, String target, SymbolTable symbols) throws IOException {
+        this(target, read(new File(base, target)), symbols);
+    }
+
+    /**
+     * Find the file on disk for a source target, relative to the default
+     * root.
+     *
+     * @param target path relative to the root
+     * @return
+     * @deprecated only right for folders. Use
+     * {@link com.moosemorals.configparser.sources.SourceTree#read} to read a
+     * file from any tree
+     */
+    @Deprecated
+    public static File resolve(String target) {
+        return new File(root, target);
+    }
+
+    /**
+     * Tokenize a file that has already been read into memory.
+     *
+     * @param target name of the file, for locations
+     * @param data contents of the file
+     */
+    public SourceFile(String target, byte[] data) {
+        this(target, data, new SymbolTable());
+    }
+
+    /**
+     * Tokenize a file that has already been read into memory, interning
+     * symbols into a shared table.
+     *
+     * @param target name of the file, for locations
+     * @param data contents of the file
+     * @param symbols table for symbol names
+     */
+    public SourceFile(String target, byte[] data, SymbolTable symbols) {
         this.target = target;
-        in = new ConfigFileReader(new PushbackReader(new FileReader(new File(root, target)), PUSHBACK_BUFFER_SIZE));
-        t = new StreamTokenizer(in);
-        setupTokenizer();
-    }
-
-    private void setupTokenizer() {
-        t.resetSyntax();
-        t.eolIsSignificant(true);
-        t.slashSlashComments(false);
-        t.slashStarComments(false);
-        t.quoteChar(BaseParser.QUOTE_CHAR);
-        t.quoteChar(BaseParser.DOUBLE_QUOTE_CHAR);
-        t.wordChars('a', 'z');
-        t.wordChars('A', 'Z');
-        t.wordChars('0', '9');
-        t.wordChars('-', '-');
-        t.wordChars('_', '_');
-        t.whitespaceChars('\u0000', '\u0020');
+        this.t = new KconfigLexer(data);
+        this.symbols = symbols;
+    }
+
+    public static byte[] read(File file) throws IOException {
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (NoSuchFileException ex) {
+            throw new FileNotFoundException(ex.getMessage());
+        }
     }
 
     public int nextToken() throws IOException {
-        return t.nextToken();
+        if (metrics == null) {
+            return t.nextToken();
+        }
+        long start = System.nanoTime();
+        int token = t.nextToken();
+        metrics.token(System.nanoTime() - start);
+        return token;
+    }
+
+    /**
+     * Start measuring this file. Parsing is taken to start now.
+     *
+     * @param metrics
+     */
+    public void setMetrics(FileMetrics metrics) {
+        this.metrics = metrics;
+        metrics.opened(t.getBuffer().length);
+    }
+
+    /**
+     * Attach the flight recorder event for this file, begun before it was
+     * read. {@link #finish()} ends it. Files that aren't part of a tree,
+     * like expressions, don't get one.
+     *
+     * @param event from {@link Events#begin}, may be null
+     */
+    public void setEvent(Object event) {
+        this.event = event;
+    }
+
+    /**
+     * The end of the file has been reached and parsing has finished with
+     * it.
+     */
+    public void finish() {
+        if (metrics != null) {
+            metrics.finish(getLineNumber());
+        }
+        Events.end(event, target, getLineNumber(), null);
+    }
+
+    /**
+     * @return path of the file, relative to the root
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return metrics for this file, or null if it isn't being measured
+     */
+    public FileMetrics getMetrics() {
+        return metrics;
     }
 
     public int currentToken() {
-        return t.ttype;
+        return t.currentToken();
     }
 
     public String getTokenString() {
-        return t.sval;
+        return t.getTokenString();
     }
 
-    public double tokenDouble() {
-        return t.nval;
+    /**
+     * @return the current word as a symbol, interned without copying it out
+     * of the file
+     */
+    public Symbol getSymbol() {
+        return symbols.intern(t.getBuffer(), t.getTokenStart(), t.getTokenEnd());
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    public boolean tokenEquals(String s) {
+        return t.tokenEquals(s);
     }
 
     public void pushBack() {
@@ -90,34 +236,17 @@ public final class SourceFile {
     }
 
     public String readLine() throws IOException {
-        lines += 1;
-
-        StringBuilder line = new StringBuilder();
-        int c;
-        boolean inComment = false;
-        while ((c = in.read()) != -1) {
-            if (c == BaseParser.COMMENT_CHAR) {
-                inComment = true;
-            } else if (c != '\n') {
-                if (!inComment) {
-                    line.appendCodePoint(c);
-                }
-            } else {
-                break;
-            }
-        }
-
-        if (c == -1) {
-            return null;
-        }
-
-        return line.toString();
+        return t.readLine();
     }
 
+    /**
+     * Push back the last line returned by {@link #readLine()}.
+     *
+     * @param line the line, which must be the last one read
+     * @throws IOException
+     */
     public void unreadLine(String line) throws IOException {
-        lines -= 1;
-        line = line + '\n';
-        in.unread(line.toCharArray());
+        t.unreadLine();
     }
 
     @Override
@@ -126,43 +255,63 @@ public final class SourceFile {
     }
 
     public int getLineNumber() {
-        if (t != null) {
-            return t.lineno() + lines;
-        } else {
-            return 0;
+        return t.getLineNumber();
+    }
+
+    /**
+     * @return the current file and line, packed as described in
+     * {@link FileTable}
+     */
+    public long getPosition() {
+        if (file < 0) {
+            file = symbols.getFileTable().intern(target);
         }
+        return FileTable.pack(file, getLineNumber());
     }
 
     public Location getLocation() {
-        return new Location(target, getLineNumber());
+        return new Location(symbols.getFileTable(), getPosition());
     }
 
     /**
+     * A packed location along with the table it needs to be read. Entries
+     * only keep the packed form, and make one of these when asked.
      *
      * @author Osric Wilkinson (osric@fluffypeople.com)
      */
     public static class Location {
 
-        private final Logger log = LoggerFactory.getLogger(Location.class);
-        private final String file;
-        private final String line;
+        private final FileTable files;
+        private final long position;
+
+        public Location(FileTable files, long position) {
+            this.files = files;
+            this.position = position;
+        }
+
+        public FileTable getFileTable() {
+            return files;
+        }
 
-        public Location(String file, int line) {
-            this.file = file;
-            this.line = String.format("%d", line);
+        public long getPosition() {
+            return position;
         }
 
         public String getFile() {
-            return file;
+            return files.getFile(position);
+        }
+
+        public int getLineNumber() {
+            return FileTable.line(position);
         }
 
         public String getLine() {
-            return line;
+            return Integer.toString(getLineNumber());
         }
 
         @Override
         public String toString() {
-            return String.format("%s: %s", file, line);
+            return getFile() + ": " + getLineNumber();
         }
 
     }
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Somewhere to write a tree of named values, like {@link XML} or
+ * {@link JSON}. Things that can be written implement {@link XMLable}.
+ *
+ * Methods are named from the XML point of view: an element started with
+ * {@link #start} becomes an object in JSON, and one started with
+ * {@link #startList} (or added with one of the list methods) becomes an
+ * array.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public interface StructuredWriter {
+
+    /**
+     * Open a named element with some attributes, given as name, value pairs.
+     */
+    void start(String name, String... attr) throws XMLStreamException;
+
+    /**
+     * Open an element that will hold a list of other elements.
+     */
+    void startList(String name) throws XMLStreamException;
+
+    /**
+     * Add an element with text and attributes.
+     */
+    void add(String name, String content, String... attr) throws XMLStreamException;
+
+    /**
+     * Add an element with some text, or nothing if content is null.
+     */
+    void add(String name, String content) throws XMLStreamException;
+
+    void add(XMLable other) throws XMLStreamException;
+
+    /**
+     * Add an element wrapping something else, or nothing if other is null.
+     */
+    void add(String name, XMLable other) throws XMLStreamException;
+
+    /**
+     * Add an empty element.
+     */
+    void add(String name) throws XMLStreamException;
+
+    /**
+     * Add a list of things, or nothing if the list is empty.
+     */
+    void add(String name, List<? extends XMLable> l) throws XMLStreamException;
+
+    /**
+     * Add a list of strings, each as an element called item, or nothing if
+     * the list is empty.
+     */
+    void addList(String name, String item, List<String> values) throws XMLStreamException;
+
+    /**
+     * Close the last thing opened.
+     */
+    void end() throws XMLStreamException;
+
+    void endDocument() throws XMLStreamException;
+
+    void flush() throws XMLStreamException;
+
+}
@@ -0,0 +1,143 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.moosemorals.configparser.events.Events;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.zip.GZIPOutputStream;
+import javax.xml.stream.XMLStreamException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a parsed tree as XML, using a pool to write each top level entry
+ * into its own buffer at the same time. The buffers are copied to the output
+ * in order as they finish, so the result is the same as calling toXML on
+ * the top menu.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class TreeWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(TreeWriter.class);
+
+    // Big enough that the disk (or compressor) sees large writes
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pool pool to write in, or null to write everything in the
+     * calling thread
+     */
+    public TreeWriter(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Open a file for writing through a large buffer. Files ending in .gz
+     * are gzip compressed, and files ending in .zst are zstd compressed.
+     *
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static Writer open(File file) throws IOException {
+        OutputStream out = new FileOutputStream(file);
+        try {
+            String name = file.getName();
+            if (name.endsWith(".gz")) {
+                out = new GZIPOutputStream(out, BUFFER_SIZE);
+            } else if (name.endsWith(".zst")) {
+                out = new ZstdOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+            } else {
+                out = new BufferedOutputStream(out, BUFFER_SIZE);
+            }
+        } catch (IOException ex) {
+            out.close();
+            throw ex;
+        }
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    public void write(Menu top, Writer out) throws XMLStreamException {
+        List<ForkJoinTask<String>> tasks = new ArrayList<>();
+        for (Entry e : top.getEntries()) {
+            ForkJoinTask<String> task = ForkJoinTask.adapt(() -> fragment(e));
+            tasks.add(pool != null ? pool.submit(task) : task);
+        }
+
+        XML xml = new XML(out);
+        top.startXML(xml);
+        if (!tasks.isEmpty()) {
+            xml.startList("entries");
+            for (ForkJoinTask<String> task : tasks) {
+                xml.addRaw(join(task));
+            }
+            xml.end();
+        }
+        xml.end();
+        xml.endDocument();
+        xml.flush();
+        log.debug("Wrote {} top level entries", tasks.size());
+    }
+
+    private static String fragment(Entry e) throws XMLStreamException {
+        Object event = Events.begin(Events.Kind.WRITE);
+        StringWriter buffer = new StringWriter();
+        XML xml = new XML(buffer, false);
+        e.toXML(xml);
+        xml.flush();
+        Events.end(event, e);
+        return buffer.toString();
+    }
+
+    private String join(ForkJoinTask<String> task) throws XMLStreamException {
+        try {
+            return pool != null ? task.join() : task.invoke();
+        } catch (RuntimeException ex) {
+            if (ex.getCause() instanceof XMLStreamException) {
+                throw (XMLStreamException) ex.getCause();
+            }
+            throw ex;
+        }
+    }
+
+}
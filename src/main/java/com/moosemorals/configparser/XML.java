@@ -23,6 +23,7 @@
  */
 package com.moosemorals.configparser;
 
+import java.io.IOException;
 import java.io.Writer;
 import java.util.List;
 import javax.xml.stream.XMLOutputFactory;
@@ -35,14 +36,28 @@ import org.slf4j.LoggerFactory;
  *
  * @author Osric Wilkinson (osric@fluffypeople.com)
  */
-public class XML {
+public class XML implements StructuredWriter {
 
     private final Logger log = LoggerFactory.getLogger(XML.class);
+    private final Writer out;
     private final XMLStreamWriter xml;
 
     public XML(Writer out) throws XMLStreamException {
+        this(out, true);
+    }
+
+    /**
+     * @param out
+     * @param document false to leave out the XML declaration, for writing
+     * pieces that will be put together later with {@link #addRaw}
+     * @throws XMLStreamException
+     */
+    public XML(Writer out, boolean document) throws XMLStreamException {
+        this.out = out;
         xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out);
-        xml.writeStartDocument();
+        if (document) {
+            xml.writeStartDocument();
+        }
     }
 
     private void writeAttributes(String[] attr) throws XMLStreamException {
@@ -56,11 +71,18 @@ public class XML {
         }
     }
 
+    @Override
     public void start(String name, String... attr) throws XMLStreamException {
         xml.writeStartElement(name);
         writeAttributes(attr);
     }
 
+    @Override
+    public void startList(String name) throws XMLStreamException {
+        xml.writeStartElement(name);
+    }
+
+    @Override
     public void add(String name, String content, String... attr) throws XMLStreamException {
         if (content != null) {
             xml.writeStartElement(name);
@@ -75,6 +97,7 @@ public class XML {
 
     }
 
+    @Override
     public void add(String name, String content) throws XMLStreamException {
         if (content != null) {
             xml.writeStartElement(name);
@@ -83,10 +106,12 @@ public class XML {
         }
     }
 
+    @Override
     public void add(XMLable other) throws XMLStreamException {
         other.toXML(this);
     }
 
+    @Override
     public void add(String name, XMLable other) throws XMLStreamException {
         if (other != null) {
             xml.writeStartElement(name);
@@ -95,10 +120,12 @@ public class XML {
         }
     }
 
+    @Override
     public void add(String name) throws XMLStreamException {
         xml.writeEmptyElement(name);
     }
 
+    @Override
     public void add(String name, List<? extends XMLable> l) throws XMLStreamException {
         if (!l.isEmpty()) {
             xml.writeStartElement(name);
@@ -109,12 +136,48 @@ public class XML {
         }
     }
 
+    @Override
+    public void addList(String name, String item, List<String> values) throws XMLStreamException {
+        if (!values.isEmpty()) {
+            xml.writeStartElement(name);
+            for (String value : values) {
+                add(item, value);
+            }
+            xml.writeEndElement();
+        }
+    }
+
+    /**
+     * Copy some XML that has already been written somewhere else straight
+     * to the output.
+     *
+     * @param fragment well formed XML, without a declaration
+     * @throws XMLStreamException
+     */
+    public void addRaw(CharSequence fragment) throws XMLStreamException {
+        // Empty text makes the writer finish any start tag it has open
+        xml.writeCharacters("");
+        xml.flush();
+        try {
+            out.append(fragment);
+        } catch (IOException ex) {
+            throw new XMLStreamException(ex);
+        }
+    }
+
+    @Override
     public void end() throws XMLStreamException {
         xml.writeEndElement();
     }
 
+    @Override
     public void endDocument() throws XMLStreamException {
         xml.writeEndDocument();
     }
 
+    @Override
+    public void flush() throws XMLStreamException {
+        xml.flush();
+    }
+
 }
@@ -0,0 +1,327 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.moosemorals.configparser.SourceFile.Location;
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.parsers.ExpressionParser;
+import com.moosemorals.configparser.types.Choice;
+import com.moosemorals.configparser.types.Comment;
+import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.FileTable;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.MenuConfig;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import com.moosemorals.configparser.values.Default;
+import com.moosemorals.configparser.values.Imply;
+import com.moosemorals.configparser.values.Prompt;
+import com.moosemorals.configparser.values.Range;
+import com.moosemorals.configparser.values.Select;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads a tree back from the XML written by {@link XML} and
+ * {@link TreeWriter}, without going back to the Kconfig files.
+ *
+ * The document is read in one pass with a stream reader, building entries
+ * as their elements go by. Expressions are parsed from their text, and the
+ * ones seen most recently are remembered since the same conditions turn up
+ * again and again.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class XMLLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(XMLLoader.class);
+
+    private static final int BUFFER_SIZE = 1 << 20;
+    // Forget remembered expressions once there are this many
+    private static final int EXPR_CACHE_SIZE = 1 << 14;
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newInstance();
+
+    static {
+        // Help text can come in several pieces otherwise
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, true);
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    private final SymbolTable symbols;
+    private final FileTable files;
+    private final Map<String, Expr> exprs = new HashMap<>();
+
+    // Entries tend to come from the same file as the one before
+    private String lastFile;
+    private int lastFileId;
+
+    public XMLLoader() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * @param symbols table to intern symbols into
+     */
+    public XMLLoader(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.files = symbols.getFileTable();
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Load a file, which may be compressed with gzip or zstd if its name
+     * ends .gz or .zst.
+     *
+     * @param file
+     * @return the top level menu
+     * @throws IOException
+     */
+    public Menu load(File file) throws IOException {
+        long start = System.nanoTime();
+        try (InputStream in = open(file)) {
+            Menu top = load(FACTORY.createXMLStreamReader(in));
+            log.debug("Loaded {} in {}ms", file, (System.nanoTime() - start) / 1000000);
+            return top;
+        } catch (XMLStreamException ex) {
+            throw new IOException(file + ": " + ex.getMessage(), ex);
+        }
+    }
+
+    /**
+     * @param in
+     * @return the top level menu
+     * @throws XMLStreamException if the document isn't a tree written by
+     * this library
+     */
+    public Menu load(Reader in) throws XMLStreamException {
+        return load(FACTORY.createXMLStreamReader(in));
+    }
+
+    private Menu load(XMLStreamReader in) throws XMLStreamException {
+        try {
+            in.nextTag();
+            if (!"menu".equals(in.getLocalName())) {
+                throw new XMLStreamException("Expecting menu, found " + in.getLocalName(), in.getLocation());
+            }
+            return (Menu) readEntry(in);
+        } finally {
+            in.close();
+            exprs.clear();
+        }
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            String name = file.getName();
+            if (name.endsWith(".gz")) {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            } else if (name.endsWith(".zst")) {
+                return new ZstdInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+            } else {
+                return new BufferedInputStream(in, BUFFER_SIZE);
+            }
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Read an entry, starting on its start tag and finishing on its end tag.
+     */
+    private Entry readEntry(XMLStreamReader in) throws XMLStreamException {
+        String kind = in.getLocalName();
+        Location location = location(in);
+
+        // The symbol is needed to make the entry, and always comes first
+        Symbol symbol = null;
+        int event = in.nextTag();
+        if (event == XMLStreamConstants.START_ELEMENT && "symbol".equals(in.getLocalName())) {
+            symbol = symbols.intern(in.getElementText());
+            event = in.nextTag();
+        }
+
+        Entry e;
+        switch (kind) {
+            case "config":
+                e = new Config(location, symbol);
+                break;
+            case "menuconfig":
+                e = new MenuConfig(location, symbol);
+                break;
+            case "menu":
+                e = new Menu(location, symbol);
+                break;
+            case "choice":
+                e = new Choice(location, symbol);
+                break;
+            case "comment":
+                e = new Comment(location, symbol);
+                break;
+            default:
+                throw new XMLStreamException("Unknown entry " + kind, in.getLocation());
+        }
+
+        while (event == XMLStreamConstants.START_ELEMENT) {
+            String name = in.getLocalName();
+            switch (name) {
+                case "type":
+                    e.setType(in.getElementText());
+                    break;
+                case "env":
+                    e.setEnv(in.getElementText());
+                    break;
+                case "help":
+                    e.setHelp(in.getElementText());
+                    break;
+                case "prompt":
+                    // The prompt's condition is already one of the depends
+                    e.setPrompt(new Prompt(in.getElementText(), null));
+                    break;
+                case "defaults":
+                    while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        Condition condition = condition(in, in.getAttributeValue(null, "if"));
+                        e.addDefault(new Default(expr(in, in.getElementText()), condition));
+                    }
+                    break;
+                case "depends":
+                    while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        e.addDepends(condition(in, in.getElementText()));
+                    }
+                    break;
+                case "options":
+                    while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        e.addOption(in.getElementText());
+                    }
+                    break;
+                case "selects":
+                    while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        Condition condition = condition(in, in.getAttributeValue(null, "if"));
+                        config(in, e).addSelect(new Select(symbols.intern(in.getElementText()), condition));
+                    }
+                    break;
+                case "implies":
+                    while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        Condition condition = condition(in, in.getAttributeValue(null, "if"));
+                        config(in, e).addImplies(new Imply(symbols.intern(in.getElementText()), condition));
+                    }
+                    break;
+                case "ranges":
+                    while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        Condition condition = condition(in, in.getAttributeValue(null, "if"));
+                        String to = in.getAttributeValue(null, "to");
+                        config(in, e).addRange(new Range(in.getElementText(), to, condition));
+                    }
+                    break;
+                case "visibleIf":
+                    if (!(e instanceof Menu)) {
+                        throw new XMLStreamException("Only menus can have visibleIf", in.getLocation());
+                    }
+                    in.nextTag();
+                    ((Menu) e).setVisibleIf(condition(in, in.getElementText()));
+                    in.nextTag();
+                    break;
+                case "entries":
+                    if (!(e instanceof Container)) {
+                        throw new XMLStreamException(kind + " can't have entries", in.getLocation());
+                    }
+                    while (in.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                        ((Container) e).addEntry(readEntry(in));
+                    }
+                    break;
+                default:
+                    throw new XMLStreamException("Unexpected " + name + " in " + kind, in.getLocation());
+            }
+            event = in.nextTag();
+        }
+        return e;
+    }
+
+    private static Config config(XMLStreamReader in, Entry e) throws XMLStreamException {
+        if (!(e instanceof Config)) {
+            throw new XMLStreamException("Only configs can have " + in.getLocalName(), in.getLocation());
+        }
+        return (Config) e;
+    }
+
+    private Location location(XMLStreamReader in) throws XMLStreamException {
+        String file = in.getAttributeValue(null, "file");
+        String line = in.getAttributeValue(null, "line");
+        if (file == null || line == null) {
+            throw new XMLStreamException("Missing file or line", in.getLocation());
+        }
+        if (!file.equals(lastFile)) {
+            lastFile = file;
+            lastFileId = files.intern(file);
+        }
+        try {
+            return new Location(files, FileTable.pack(lastFileId, Integer.parseInt(line)));
+        } catch (NumberFormatException ex) {
+            throw new XMLStreamException("Bad line number " + line, in.getLocation());
+        }
+    }
+
+    private Condition condition(XMLStreamReader in, String text) throws XMLStreamException {
+        return text != null ? new Condition(expr(in, text)) : null;
+    }
+
+    private Expr expr(XMLStreamReader in, String text) throws XMLStreamException {
+        Expr e = exprs.get(text);
+        if (e == null) {
+            try {
+                e = ExpressionParser.parse(text, symbols);
+            } catch (IOException | ParseError ex) {
+                throw new XMLStreamException("Bad expression " + text + ": " + ex.getMessage(), in.getLocation());
+            }
+            if (exprs.size() == EXPR_CACHE_SIZE) {
+                exprs.clear();
+            }
+            exprs.put(text, e);
+        }
+        return e;
+    }
+
+}
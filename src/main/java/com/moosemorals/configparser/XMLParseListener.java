@@ -0,0 +1,135 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseListener;
+import com.moosemorals.configparser.types.Choice;
+import com.moosemorals.configparser.types.Comment;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Menu;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import javax.xml.stream.XMLStreamException;
+
+/**
+ * Writes a tree as it is parsed, giving the same output as calling toXML on
+ * the finished tree. Works with either {@link XML} or {@link JSON}.
+ *
+ * Only the menus and choices that are currently open are remembered, and
+ * for each only whether its entries element has been started (it's left
+ * out for menus with no entries).
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class XMLParseListener implements ParseListener {
+
+    private final StructuredWriter xml;
+    private final Deque<Boolean> open = new ArrayDeque<>();
+
+    public XMLParseListener(StructuredWriter xml) {
+        this.xml = xml;
+    }
+
+    private static UncheckedIOException wrap(XMLStreamException ex) {
+        return new UncheckedIOException(new IOException(ex));
+    }
+
+    private void child() throws XMLStreamException {
+        if (!open.isEmpty() && !open.peek()) {
+            open.pop();
+            open.push(true);
+            xml.startList("entries");
+        }
+    }
+
+    private void close() throws XMLStreamException {
+        if (open.pop()) {
+            xml.end();
+        }
+        xml.end();
+    }
+
+    @Override
+    public void startMenu(Menu menu) {
+        try {
+            child();
+            menu.startXML(xml);
+            open.push(false);
+        } catch (XMLStreamException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    @Override
+    public void endMenu(Menu menu) {
+        try {
+            close();
+        } catch (XMLStreamException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    @Override
+    public void startChoice(Choice choice) {
+        try {
+            child();
+            choice.startXML(xml);
+            open.push(false);
+        } catch (XMLStreamException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    @Override
+    public void endChoice(Choice choice) {
+        try {
+            close();
+        } catch (XMLStreamException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    @Override
+    public void config(Config config) {
+        try {
+            child();
+            config.toXML(xml);
+        } catch (XMLStreamException ex) {
+            throw wrap(ex);
+        }
+    }
+
+    @Override
+    public void comment(Comment comment) {
+        try {
+            child();
+            comment.toXML(xml);
+        } catch (XMLStreamException ex) {
+            throw wrap(ex);
+        }
+    }
+
+}
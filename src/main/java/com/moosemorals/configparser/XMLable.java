@@ -31,6 +31,6 @@ import javax.xml.stream.XMLStreamException;
  */
 public interface XMLable {
     
-    void toXML(XML xml) throws XMLStreamException;
+    void toXML(StructuredWriter xml) throws XMLStreamException;
     
 }
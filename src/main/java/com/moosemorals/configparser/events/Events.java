@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.events;
+
+import com.moosemorals.configparser.types.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Java Flight Recorder events for the parser and writers.
+ *
+ * Call sites use this class rather than the events themselves so that
+ * nothing needs jdk.jfr when running on a JVM without it (or with
+ * -Dconfigparser.jfr=false). When there's no recording going, or the event
+ * is turned off in the recording settings, {@link #begin} returns null and
+ * the {@link #end} methods do nothing, so the cost is a check of a flag
+ * and nothing is allocated.
+ *
+ * Typical use:
+ * <pre>
+ *     Object event = Events.begin(Events.Kind.CONFIG);
+ *     ...
+ *     Events.end(event, entry);
+ * </pre>
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class Events {
+
+    private static final Logger log = LoggerFactory.getLogger(Events.class);
+
+    public enum Kind {
+        /** A source file, from being read to reaching its end */
+        FILE,
+        /** ConfigParser.parse */
+        CONFIG,
+        /** ChoiceParser.parse */
+        CHOICE,
+        /** MenuParser.parse, for each menu */
+        MENU,
+        /** Resolving a 'source' directive */
+        SOURCE,
+        /** BaseParser.readHelp */
+        HELP,
+        /** Writing one top level entry */
+        WRITE
+    }
+
+    private static final boolean AVAILABLE = available();
+
+    private static boolean available() {
+        if (!Boolean.parseBoolean(System.getProperty("configparser.jfr", "true"))) {
+            return false;
+        }
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            log.debug("No flight recorder: {}", ex.toString());
+            return false;
+        }
+    }
+
+    private Events() {
+    }
+
+    /**
+     * @return true if events can be recorded in this JVM
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Start timing something.
+     *
+     * @param kind
+     * @return an event to pass to end, or null if it won't be recorded
+     */
+    public static Object begin(Kind kind) {
+        return AVAILABLE ? JfrEvents.begin(kind) : null;
+    }
+
+    /**
+     * Finish timing something and record it.
+     *
+     * @param event from begin, may be null
+     * @param file source file
+     * @param line line in the file
+     * @param symbol symbol the event is about, may be null
+     */
+    public static void end(Object event, String file, int line, String symbol) {
+        if (event != null) {
+            JfrEvents.end(event, file, line, symbol, null);
+        }
+    }
+
+    /**
+     * Finish timing a 'source' directive.
+     *
+     * @param event from begin, may be null
+     * @param file file holding the directive
+     * @param line line of the directive
+     * @param target file being sourced
+     */
+    public static void endSource(Object event, String file, int line, String target) {
+        if (event != null) {
+            JfrEvents.end(event, file, line, null, target);
+        }
+    }
+
+    /**
+     * Finish timing something to do with an entry, taking the file, line
+     * and symbol from the entry.
+     *
+     * @param event from begin, may be null
+     * @param e may be null, if it failed to parse
+     */
+    public static void end(Object event, Entry e) {
+        if (event != null) {
+            if (e != null) {
+                JfrEvents.end(event, e.getLocation().getFile(), e.getLocation().getLineNumber(),
+                        e.getSymbol() != null ? e.getSymbol().getName() : null, null);
+            } else {
+                JfrEvents.end(event, null, 0, null, null);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.events;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * The flight recorder events themselves. Only touched through
+ * {@link Events}, which makes sure jdk.jfr is there first.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+final class JfrEvents {
+
+    private JfrEvents() {
+    }
+
+    @Category({"Kconfig", "Parser"})
+    abstract static class KconfigEvent extends Event {
+
+        @Label("File")
+        String file;
+
+        @Label("Line")
+        int line;
+
+        @Label("Symbol")
+        String symbol;
+    }
+
+    @Name("com.moosemorals.configparser.File")
+    @Label("Kconfig File")
+    @Description("A source file, from being read to reaching its end")
+    static class FileEvent extends KconfigEvent {
+    }
+
+    @Name("com.moosemorals.configparser.Config")
+    @Label("Parse Config")
+    static class ConfigEvent extends KconfigEvent {
+    }
+
+    @Name("com.moosemorals.configparser.Choice")
+    @Label("Parse Choice")
+    static class ChoiceEvent extends KconfigEvent {
+    }
+
+    @Name("com.moosemorals.configparser.Menu")
+    @Label("Parse Menu")
+    static class MenuEvent extends KconfigEvent {
+    }
+
+    @Name("com.moosemorals.configparser.Source")
+    @Label("Source")
+    @Description("Resolving a 'source' directive")
+    static class SourceEvent extends KconfigEvent {
+
+        @Label("Target")
+        String target;
+    }
+
+    @Name("com.moosemorals.configparser.Help")
+    @Label("Read Help")
+    static class HelpEvent extends KconfigEvent {
+    }
+
+    @Category({"Kconfig", "Writer"})
+    @Name("com.moosemorals.configparser.Write")
+    @Label("Write Entry")
+    @Description("Writing one top level entry")
+    static class WriteEvent extends KconfigEvent {
+    }
+
+    // In the same order as Events.Kind. EventType.isEnabled is a field read,
+    // so begin can check it before making an event that won't be recorded
+    private static final EventType[] TYPES = {
+        EventType.getEventType(FileEvent.class),
+        EventType.getEventType(ConfigEvent.class),
+        EventType.getEventType(ChoiceEvent.class),
+        EventType.getEventType(MenuEvent.class),
+        EventType.getEventType(SourceEvent.class),
+        EventType.getEventType(HelpEvent.class),
+        EventType.getEventType(WriteEvent.class)
+    };
+
+    static Object begin(Events.Kind kind) {
+        if (!TYPES[kind.ordinal()].isEnabled()) {
+            return null;
+        }
+        KconfigEvent event;
+        switch (kind) {
+            case FILE:
+                event = new FileEvent();
+                break;
+            case CONFIG:
+                event = new ConfigEvent();
+                break;
+            case CHOICE:
+                event = new ChoiceEvent();
+                break;
+            case MENU:
+                event = new MenuEvent();
+                break;
+            case SOURCE:
+                event = new SourceEvent();
+                break;
+            case HELP:
+                event = new HelpEvent();
+                break;
+            default:
+                event = new WriteEvent();
+                break;
+        }
+        event.begin();
+        return event;
+    }
+
+    static void end(Object o, String file, int line, String symbol, String target) {
+        KconfigEvent event = (KconfigEvent) o;
+        event.end();
+        if (event.shouldCommit()) {
+            event.file = file;
+            event.line = line;
+            event.symbol = symbol;
+            if (event instanceof SourceEvent) {
+                ((SourceEvent) event).target = target;
+            }
+            event.commit();
+        }
+    }
+
+}
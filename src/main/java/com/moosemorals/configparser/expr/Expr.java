@@ -0,0 +1,193 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.expr;
+
+import com.moosemorals.configparser.types.Symbol;
+import java.io.Serializable;
+import java.util.Objects;
+
+/**
+ * A node in a Kconfig expression.
+ *
+ * Expressions are immutable and are made through an {@link ExprFactory}, which
+ * hands back the same instance for equal expressions. Children of a factory
+ * made expression can be compared with ==.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class Expr implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public enum Type {
+        /** A symbol, or a constant like y, n, m or 0x100 */
+        SYMBOL,
+        /** A quoted string */
+        STRING,
+        NOT,
+        EQUAL,
+        UNEQUAL,
+        AND,
+        OR
+    }
+
+    private final Type type;
+    private final Symbol symbol;
+    private final String text;
+    private final Expr left;
+    private final Expr right;
+    private final int hash;
+
+    Expr(Type type, Symbol symbol, String text, Expr left, Expr right) {
+        this.type = type;
+        this.symbol = symbol;
+        this.text = text;
+        this.left = left;
+        this.right = right;
+
+        int h = type.ordinal();
+        h = 31 * h + (symbol != null ? symbol.getName().hashCode() : 0);
+        h = 31 * h + Objects.hashCode(text);
+        h = 31 * h + Objects.hashCode(left);
+        h = 31 * h + Objects.hashCode(right);
+        this.hash = h;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the symbol for a SYMBOL node, otherwise null
+     */
+    public Symbol getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return the text of a STRING node, otherwise null
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return the only operand of NOT, or the first of a binary operator
+     */
+    public Expr getLeft() {
+        return left;
+    }
+
+    public Expr getRight() {
+        return right;
+    }
+
+    private int precedence() {
+        switch (type) {
+            case OR:
+                return 1;
+            case AND:
+                return 2;
+            case NOT:
+                return 3;
+            case EQUAL:
+            case UNEQUAL:
+                return 4;
+            default:
+                return 5;
+        }
+    }
+
+    private void render(StringBuilder result, int outer) {
+        boolean brackets = precedence() < outer;
+        if (brackets) {
+            result.append('(');
+        }
+        switch (type) {
+            case SYMBOL:
+                result.append(symbol.getName());
+                break;
+            case STRING:
+                result.append('"').append(text).append('"');
+                break;
+            case NOT:
+                result.append('!');
+                left.render(result, precedence());
+                break;
+            case EQUAL:
+            case UNEQUAL:
+            case AND:
+            case OR:
+                left.render(result, precedence());
+                result.append(type == Type.EQUAL ? "=" : type == Type.UNEQUAL ? "!=" : type == Type.AND ? "&&" : "||");
+                // Both sides of a comparison are plain operands, and && and ||
+                // are left associative
+                right.render(result, precedence() + 1);
+                break;
+        }
+        if (brackets) {
+            result.append(')');
+        }
+    }
+
+    /**
+     * @return the expression in Kconfig syntax, without spaces and with only
+     * the brackets that are needed
+     */
+    @Override
+    public String toString() {
+        if (type == Type.SYMBOL) {
+            return symbol.getName();
+        }
+        StringBuilder result = new StringBuilder();
+        render(result, 0);
+        return result.toString();
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        final Expr other = (Expr) obj;
+        if (hash != other.hash || type != other.type) {
+            return false;
+        }
+        if (symbol != other.symbol && (symbol == null || other.symbol == null || !symbol.getName().equals(other.symbol.getName()))) {
+            return false;
+        }
+        return Objects.equals(text, other.text)
+                && Objects.equals(left, other.left)
+                && Objects.equals(right, other.right);
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.expr;
+
+import com.moosemorals.configparser.types.Symbol;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Makes expressions, keeping a single copy of each distinct expression (and
+ * so of each distinct subexpression). Safe to share between threads.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class ExprFactory {
+
+    private final ConcurrentMap<Expr, Expr> exprs = new ConcurrentHashMap<>();
+
+    private Expr canonical(Expr e) {
+        Expr existing = exprs.putIfAbsent(e, e);
+        return existing != null ? existing : e;
+    }
+
+    public Expr symbol(Symbol symbol) {
+        return canonical(new Expr(Expr.Type.SYMBOL, symbol, null, null, null));
+    }
+
+    public Expr string(String text) {
+        return canonical(new Expr(Expr.Type.STRING, null, text, null, null));
+    }
+
+    public Expr not(Expr e) {
+        return canonical(new Expr(Expr.Type.NOT, null, null, e, null));
+    }
+
+    public Expr equal(Expr left, Expr right) {
+        return canonical(new Expr(Expr.Type.EQUAL, null, null, left, right));
+    }
+
+    public Expr unequal(Expr left, Expr right) {
+        return canonical(new Expr(Expr.Type.UNEQUAL, null, null, left, right));
+    }
+
+    public Expr and(Expr left, Expr right) {
+        return canonical(new Expr(Expr.Type.AND, null, null, left, right));
+    }
+
+    public Expr or(Expr left, Expr right) {
+        return canonical(new Expr(Expr.Type.OR, null, null, left, right));
+    }
+
+    /**
+     * Swap an expression that was made somewhere else (for example, read
+     * back from a cache) for the copy from this factory. The children and
+     * symbols must already belong to this factory.
+     *
+     * @param e
+     * @return
+     */
+    public Expr intern(Expr e) {
+        return canonical(e);
+    }
+
+    /**
+     * @return number of distinct expressions
+     */
+    public int size() {
+        return exprs.size();
+    }
+
+}
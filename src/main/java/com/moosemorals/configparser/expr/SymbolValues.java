@@ -0,0 +1,232 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.expr;
+
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.util.Arrays;
+
+/**
+ * The current value of every symbol in a table, and expression evaluation
+ * against those values.
+ *
+ * Values are kept in arrays indexed by symbol id. A symbol that has been
+ * declared with a type has the value of its type (n, or the empty string,
+ * until it is set). A symbol that hasn't, like y, 0x100 or a name from some
+ * other architecture, is a constant: its text is its own name and as a
+ * tristate it is n, apart from y and m themselves.
+ *
+ * Not safe to change from more than one thread.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class SymbolValues {
+
+    public static final byte UNKNOWN = 0;
+    public static final byte BOOL = 1;
+    public static final byte TRISTATE = 2;
+    public static final byte STRING = 3;
+    public static final byte INT = 4;
+    public static final byte HEX = 5;
+
+    private final SymbolTable symbols;
+    private final Symbol yes;
+    private final Symbol mod;
+
+    private byte[] types;
+    private byte[] tristates;
+    private String[] strings;
+
+    public SymbolValues(SymbolTable symbols) {
+        this.symbols = symbols;
+        this.yes = symbols.intern("y");
+        this.mod = symbols.intern("m");
+        int size = Math.max(symbols.size(), 16);
+        this.types = new byte[size];
+        this.tristates = new byte[size];
+        this.strings = new String[size];
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    private void ensure(int id) {
+        if (id >= types.length) {
+            int size = Math.max(id + 1, types.length * 2);
+            types = Arrays.copyOf(types, size);
+            tristates = Arrays.copyOf(tristates, size);
+            strings = Arrays.copyOf(strings, size);
+        }
+    }
+
+    public static byte typeOf(String type) {
+        if (type == null) {
+            return UNKNOWN;
+        }
+        switch (type) {
+            case "bool":
+                return BOOL;
+            case "tristate":
+                return TRISTATE;
+            case "string":
+                return STRING;
+            case "int":
+                return INT;
+            case "hex":
+                return HEX;
+            default:
+                return UNKNOWN;
+        }
+    }
+
+    /**
+     * Give a symbol a type. A symbol declared more than once keeps its first
+     * type.
+     *
+     * @param symbol
+     * @param type Kconfig type name, as stored on an {@link Entry}
+     */
+    public void declare(Symbol symbol, String type) {
+        byte t = typeOf(type);
+        int id = symbol.getId();
+        ensure(id);
+        if (types[id] == UNKNOWN) {
+            types[id] = t;
+        }
+    }
+
+    /**
+     * Declare every typed symbol under a menu or choice.
+     *
+     * @param container
+     */
+    public void declareAll(Container container) {
+        for (Entry e : container.getEntries()) {
+            if (e.getSymbol() != null && e.getType() != null) {
+                declare(e.getSymbol(), e.getType());
+            }
+            if (e instanceof Container) {
+                declareAll((Container) e);
+            }
+        }
+    }
+
+    public byte getType(Symbol symbol) {
+        int id = symbol.getId();
+        return id < types.length ? types[id] : UNKNOWN;
+    }
+
+    public boolean isDeclared(Symbol symbol) {
+        return getType(symbol) != UNKNOWN;
+    }
+
+    public void set(Symbol symbol, byte tristate) {
+        int id = symbol.getId();
+        ensure(id);
+        tristates[id] = tristate;
+    }
+
+    /**
+     * Set a value from text. Bool and tristate symbols take y, m or n, other
+     * symbols take the text as it is.
+     *
+     * @param symbol
+     * @param value
+     */
+    public void set(Symbol symbol, String value) {
+        int id = symbol.getId();
+        ensure(id);
+        if (types[id] == BOOL || types[id] == TRISTATE) {
+            byte v = Tristate.parse(value);
+            tristates[id] = v < 0 ? Tristate.N : v;
+        } else {
+            strings[id] = value;
+        }
+    }
+
+    public byte getTristate(Symbol symbol) {
+        int id = symbol.getId();
+        byte type = id < types.length ? types[id] : UNKNOWN;
+        switch (type) {
+            case BOOL:
+            case TRISTATE:
+                return tristates[id];
+            case UNKNOWN:
+                return symbol == yes ? Tristate.Y : symbol == mod ? Tristate.M : Tristate.N;
+            default:
+                return Tristate.N;
+        }
+    }
+
+    public String getString(Symbol symbol) {
+        int id = symbol.getId();
+        byte type = id < types.length ? types[id] : UNKNOWN;
+        switch (type) {
+            case BOOL:
+            case TRISTATE:
+                return Tristate.toString(tristates[id]);
+            case UNKNOWN:
+                return symbol.getName();
+            default:
+                return strings[id] != null ? strings[id] : "";
+        }
+    }
+
+    private String text(Expr e) {
+        return e.getType() == Expr.Type.SYMBOL ? getString(e.getSymbol()) : e.getText();
+    }
+
+    /**
+     * Evaluate an expression with the current values.
+     *
+     * @param e
+     * @return one of the {@link Tristate} values
+     */
+    public byte evaluate(Expr e) {
+        switch (e.getType()) {
+            case SYMBOL:
+                return getTristate(e.getSymbol());
+            case NOT:
+                return Tristate.not(evaluate(e.getLeft()));
+            case AND: {
+                byte left = evaluate(e.getLeft());
+                return left == Tristate.N ? left : Tristate.and(left, evaluate(e.getRight()));
+            }
+            case OR: {
+                byte left = evaluate(e.getLeft());
+                return left == Tristate.Y ? left : Tristate.or(left, evaluate(e.getRight()));
+            }
+            case EQUAL:
+                return text(e.getLeft()).equals(text(e.getRight())) ? Tristate.Y : Tristate.N;
+            case UNEQUAL:
+                return text(e.getLeft()).equals(text(e.getRight())) ? Tristate.N : Tristate.Y;
+            default:
+                return Tristate.N;
+        }
+    }
+
+}
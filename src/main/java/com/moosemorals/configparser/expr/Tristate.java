@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.expr;
+
+/**
+ * Kconfig's three valued logic. Values are bytes ordered n &lt; m &lt; y, so
+ * && is min, || is max and ! is 2 - x.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class Tristate {
+
+    public static final byte N = 0;
+    public static final byte M = 1;
+    public static final byte Y = 2;
+
+    private Tristate() {
+    }
+
+    public static byte and(byte a, byte b) {
+        return a < b ? a : b;
+    }
+
+    public static byte or(byte a, byte b) {
+        return a > b ? a : b;
+    }
+
+    public static byte not(byte a) {
+        return (byte) (Y - a);
+    }
+
+    /**
+     * @param value "y", "m" or "n"
+     * @return the value, or -1 if the text isn't a tristate
+     */
+    public static byte parse(String value) {
+        switch (value) {
+            case "y":
+                return Y;
+            case "m":
+                return M;
+            case "n":
+                return N;
+            default:
+                return -1;
+        }
+    }
+
+    public static String toString(byte value) {
+        switch (value) {
+            case Y:
+                return "y";
+            case M:
+                return "m";
+            default:
+                return "n";
+        }
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.metrics;
+
+/**
+ * What it took to parse one file.
+ *
+ * Filled in by the thread parsing the file, and only read once the file is
+ * finished and has been added to its {@link ParseMetrics}.
+ *
+ * Times are exclusive: while a sequential parse is off reading a sourced
+ * file the clock for the file that sourced it is paused. Lexing time is
+ * part of the active time, so parse time is whatever is left once it's
+ * taken away.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class FileMetrics {
+
+    private final ParseMetrics owner;
+    private final String target;
+    private final long start;
+
+    private long openNanos;
+    private long lexNanos;
+    private long activeNanos;
+    private long activeSince;
+    private long tokens;
+    private int lines;
+    private long bytes;
+    private int sources;
+    private int skipped;
+    private boolean cached;
+
+    FileMetrics(ParseMetrics owner, String target) {
+        this.owner = owner;
+        this.target = target;
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * The file has been read (or found in the cache) and parsing starts.
+     *
+     * @param bytes size of the file
+     */
+    public void opened(long bytes) {
+        this.bytes = bytes;
+        activeSince = System.nanoTime();
+        openNanos = activeSince - start;
+    }
+
+    /**
+     * The file was found in the cache, so it won't be parsed.
+     *
+     * @param sources how many files it sources
+     */
+    public void cached(int sources) {
+        cached = true;
+        this.sources = sources;
+        finish(0);
+    }
+
+    /**
+     * Time for one token, from the lexer.
+     */
+    public void token(long nanos) {
+        tokens += 1;
+        lexNanos += nanos;
+    }
+
+    public void source() {
+        sources += 1;
+    }
+
+    public void skipped() {
+        skipped += 1;
+    }
+
+    /**
+     * Parsing has moved to a sourced file.
+     */
+    public void pause() {
+        activeNanos += System.nanoTime() - activeSince;
+    }
+
+    /**
+     * Parsing has come back from a sourced file.
+     */
+    public void resume() {
+        activeSince = System.nanoTime();
+    }
+
+    /**
+     * The end of the file has been reached.
+     *
+     * @param lines lines read
+     */
+    public void finish(int lines) {
+        pause();
+        this.lines = lines;
+        owner.add(this);
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public long getOpenNanos() {
+        return openNanos;
+    }
+
+    public long getLexNanos() {
+        return lexNanos;
+    }
+
+    public long getParseNanos() {
+        return cached ? 0 : activeNanos - lexNanos;
+    }
+
+    /**
+     * @return open, lex and parse time together
+     */
+    public long getTotalNanos() {
+        return openNanos + (cached ? 0 : activeNanos);
+    }
+
+    public long getTokens() {
+        return tokens;
+    }
+
+    public int getLines() {
+        return lines;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return how many 'source' directives the file has
+     */
+    public int getSources() {
+        return sources;
+    }
+
+    /**
+     * @return how many lines had text that was skipped over
+     */
+    public int getSkipped() {
+        return skipped;
+    }
+
+    public boolean isCached() {
+        return cached;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: open %dus, lex %dus, parse %dus, %d tokens, %d lines, %d bytes",
+                target, openNanos / 1000, lexNanos / 1000, getParseNanos() / 1000, tokens, lines, bytes);
+    }
+
+}
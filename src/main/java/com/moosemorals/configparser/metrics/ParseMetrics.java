@@ -0,0 +1,266 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.metrics;
+
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonWriter;
+import javax.json.JsonWriterFactory;
+import javax.json.stream.JsonGenerator;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Per file timings and counts for one or more parses.
+ *
+ * Parsers only collect these when given a ParseMetrics (see
+ * {@link com.moosemorals.configparser.parsers.MenuParser#setMetrics}).
+ * Without one, the cost is a null check per token. Files can be finished
+ * from any thread.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ParseMetrics implements ParseMetricsMBean {
+
+    private static final Logger log = LoggerFactory.getLogger(ParseMetrics.class);
+
+    public static final String OBJECT_NAME = "com.moosemorals.configparser:type=ParseMetrics";
+
+    private static final int SLOWEST = 10;
+
+    private final Queue<FileMetrics> files = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger missing = new AtomicInteger();
+
+    /**
+     * Start timing a file, before it's opened.
+     *
+     * @param target
+     * @return
+     */
+    public FileMetrics start(String target) {
+        return new FileMetrics(this, target);
+    }
+
+    /**
+     * A sourced file couldn't be found.
+     */
+    public void missing() {
+        missing.incrementAndGet();
+    }
+
+    void add(FileMetrics file) {
+        files.add(file);
+    }
+
+    /**
+     * @return every finished file, in the order they finished
+     */
+    public List<FileMetrics> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+    @Override
+    public int getFileCount() {
+        return files.size();
+    }
+
+    @Override
+    public int getCachedCount() {
+        int count = 0;
+        for (FileMetrics f : files) {
+            count += f.isCached() ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Override
+    public int getMissingCount() {
+        return missing.get();
+    }
+
+    @Override
+    public long getTokenCount() {
+        long count = 0;
+        for (FileMetrics f : files) {
+            count += f.getTokens();
+        }
+        return count;
+    }
+
+    @Override
+    public long getLineCount() {
+        long count = 0;
+        for (FileMetrics f : files) {
+            count += f.getLines();
+        }
+        return count;
+    }
+
+    @Override
+    public long getByteCount() {
+        long count = 0;
+        for (FileMetrics f : files) {
+            count += f.getBytes();
+        }
+        return count;
+    }
+
+    @Override
+    public int getSourceCount() {
+        int count = 0;
+        for (FileMetrics f : files) {
+            count += f.getSources();
+        }
+        return count;
+    }
+
+    @Override
+    public int getSkippedCount() {
+        int count = 0;
+        for (FileMetrics f : files) {
+            count += f.getSkipped();
+        }
+        return count;
+    }
+
+    @Override
+    public long getOpenMillis() {
+        long nanos = 0;
+        for (FileMetrics f : files) {
+            nanos += f.getOpenNanos();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getLexMillis() {
+        long nanos = 0;
+        for (FileMetrics f : files) {
+            nanos += f.getLexNanos();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    @Override
+    public long getParseMillis() {
+        long nanos = 0;
+        for (FileMetrics f : files) {
+            nanos += f.getParseNanos();
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private List<FileMetrics> slowest() {
+        List<FileMetrics> sorted = getFiles();
+        Collections.sort(sorted, Comparator.comparingLong(FileMetrics::getTotalNanos).reversed());
+        return sorted;
+    }
+
+    @Override
+    public String[] getSlowestFiles() {
+        List<FileMetrics> sorted = slowest();
+        String[] result = new String[Math.min(SLOWEST, sorted.size())];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = sorted.get(i).toString();
+        }
+        return result;
+    }
+
+    @Override
+    public void reset() {
+        files.clear();
+        missing.set(0);
+    }
+
+    /**
+     * Make these metrics visible over JMX, replacing any that were there
+     * before.
+     *
+     * @throws JMException
+     */
+    public void register() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(this, name);
+        log.debug("Registered {}", name);
+    }
+
+    /**
+     * Write totals and every file, slowest first, as JSON. Times are in
+     * microseconds.
+     *
+     * @param out
+     */
+    public void writeReport(Writer out) {
+        JsonArrayBuilder list = Json.createArrayBuilder();
+        for (FileMetrics f : slowest()) {
+            list.add(Json.createObjectBuilder()
+                    .add("file", f.getTarget())
+                    .add("openMicros", f.getOpenNanos() / 1000)
+                    .add("lexMicros", f.getLexNanos() / 1000)
+                    .add("parseMicros", f.getParseNanos() / 1000)
+                    .add("tokens", f.getTokens())
+                    .add("lines", f.getLines())
+                    .add("bytes", f.getBytes())
+                    .add("sources", f.getSources())
+                    .add("skipped", f.getSkipped())
+                    .add("cached", f.isCached()));
+        }
+        JsonWriterFactory factory = Json.createWriterFactory(
+                Collections.<String, Object>singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+        try (JsonWriter writer = factory.createWriter(out)) {
+            writer.writeObject(Json.createObjectBuilder()
+                    .add("files", getFileCount())
+                    .add("cached", getCachedCount())
+                    .add("missing", getMissingCount())
+                    .add("tokens", getTokenCount())
+                    .add("lines", getLineCount())
+                    .add("bytes", getByteCount())
+                    .add("sources", getSourceCount())
+                    .add("skipped", getSkippedCount())
+                    .add("openMillis", getOpenMillis())
+                    .add("lexMillis", getLexMillis())
+                    .add("parseMillis", getParseMillis())
+                    .add("perFile", list)
+                    .build());
+        }
+    }
+
+}
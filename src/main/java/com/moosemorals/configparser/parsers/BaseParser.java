@@ -23,15 +23,17 @@
  */
 package com.moosemorals.configparser.parsers;
 
+import com.moosemorals.configparser.events.Events;
 import com.moosemorals.configparser.types.Condition;
 import com.moosemorals.configparser.types.Entry;
 import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.KconfigLexer;
 import com.moosemorals.configparser.ParseError;
 import com.moosemorals.configparser.SourceFile;
+import com.moosemorals.configparser.expr.Expr;
 import com.moosemorals.configparser.values.Default;
 import com.moosemorals.configparser.values.Prompt;
 import java.io.IOException;
-import java.io.StreamTokenizer;
 import java.util.Collections;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -46,9 +48,9 @@ public abstract class BaseParser {
 
     private static final int TAB_WIDTH = 8;
 
-    public static final int COMMENT_CHAR = '#';
-    public static final int DOUBLE_QUOTE_CHAR = '"';
-    public static final int QUOTE_CHAR = '\'';
+    public static final int COMMENT_CHAR = KconfigLexer.COMMENT_CHAR;
+    public static final int DOUBLE_QUOTE_CHAR = KconfigLexer.DOUBLE_QUOTE_CHAR;
+    public static final int QUOTE_CHAR = KconfigLexer.QUOTE_CHAR;
 
     private final Logger log = LoggerFactory.getLogger(BaseParser.class);
     protected final Environment environment;
@@ -70,14 +72,17 @@ public abstract class BaseParser {
         StringBuilder skipped = new StringBuilder();
         while (true) {
             int token = t.nextToken();
-            if (token == StreamTokenizer.TT_EOL || token == StreamTokenizer.TT_EOF) {
+            if (token == KconfigLexer.TT_EOL || token == KconfigLexer.TT_EOF) {
                 t.pushBack();
                 if (skipped.length() > 0) {
                     log.warn("Skipped {}", skipped.toString());
+                    if (t.getMetrics() != null) {
+                        t.getMetrics().skipped();
+                    }
                 }
                 return skipped.toString();
             } else {
-                if (token == StreamTokenizer.TT_WORD) {
+                if (token == KconfigLexer.TT_WORD) {
                     skipped.append(t.getTokenString()).append(" ");
                 } else {
                     skipped.appendCodePoint(token);
@@ -86,72 +91,22 @@ public abstract class BaseParser {
         }
     }
 
-    protected String readExpression(SourceFile t) throws IOException {
-        StringBuilder result = new StringBuilder();
-
-        String symbol;
-        while (true) {
-            int token = t.nextToken();
-            switch (token) {
-                case '(':
-                    result.append("(");
-                    result.append(readExpression(t));
-                    break;
-                case ')':
-                    result.append(")");
-                    break;
-                case '!':
-                    token = t.nextToken();
-                    if (token == '=') {
-                        result.append("!=");
-                    } else {
-                        t.pushBack();
-                        result.append("!");
-                    }
-                    result.append(readExpression(t));
-                    break;
-                case '=':
-                    result.append("=");
-                    result.append(readExpression(t));
-                    break;
-                case StreamTokenizer.TT_WORD:
-                    symbol = t.getTokenString();
-                    if (symbol.equals("if")) {
-                        t.pushBack();
-                        return result.toString();
-                    }
-                    result.append(symbol);
-                    break;
-                case QUOTE_CHAR:
-                case DOUBLE_QUOTE_CHAR:
-
-                    result.append('"');
-                    result.append(t.getTokenString());
-                    result.append('"');
-                    break;
-                case '&':
-                    t.nextToken(); // should be '&';
-                    result.append("&&");
-                    result.append(readExpression(t));
-                    break;
-                case '|':
-                    t.nextToken();
-                    result.append("||");
-                    result.append(readExpression(t));
-                    break;
-                case StreamTokenizer.TT_EOL:
-                default:
-                    t.pushBack();
-                    return result.toString();
-            }
-        }
+    /**
+     * Read an expression up to the end of the line or a trailing 'if'.
+     *
+     * @param t
+     * @return
+     * @throws IOException
+     */
+    protected Expr readExpression(SourceFile t) throws IOException {
+        return new ExpressionParser(t).parse();
     }
 
     protected void readDefault(SourceFile t, Entry e) throws IOException {
-        String def = readExpression(t);
+        Expr def = readExpression(t);
         int token = t.nextToken();
         Condition c = null;
-        if (token == StreamTokenizer.TT_WORD && t.getTokenString().equals("if")) {
+        if (token == KconfigLexer.TT_WORD && t.getTokenString().equals("if")) {
             c = new ConditionParser(parentMenu, environment).parse(t);
         } else {
             t.pushBack();
@@ -161,14 +116,24 @@ public abstract class BaseParser {
 
     protected void readDepends(SourceFile t, Entry e) throws IOException {
         int token = t.nextToken();
-        if (token != StreamTokenizer.TT_WORD || !t.getTokenString().equals("on")) {
+        if (token != KconfigLexer.TT_WORD || !t.getTokenString().equals("on")) {
             throw new ParseError(t, "'on' must follow depends");
         }
         e.addDepends(new Condition(readExpression(t)));
     }
 
     protected void readHelp(SourceFile t, Entry e) throws IOException {
-        while (t.currentToken() != StreamTokenizer.TT_EOL) {
+        Object event = Events.begin(Events.Kind.HELP);
+        int line = t.getLineNumber();
+        try {
+            readHelpText(t, e);
+        } finally {
+            Events.end(event, t.getTarget(), line, e.getSymbol() != null ? e.getSymbol().getName() : null);
+        }
+    }
+
+    private void readHelpText(SourceFile t, Entry e) throws IOException {
+        while (t.currentToken() != KconfigLexer.TT_EOL) {
             t.nextToken();
         }
 
@@ -221,7 +186,7 @@ public abstract class BaseParser {
 
     protected void readOption(SourceFile t, Entry e) throws IOException {
         int token = t.nextToken();
-        if (token != StreamTokenizer.TT_WORD) {
+        if (token != KconfigLexer.TT_WORD) {
             throw new ParseError(t, "Option without word");
         }
         switch (t.getTokenString()) {
@@ -252,7 +217,7 @@ public abstract class BaseParser {
             String prompt = t.getTokenString();
             token = t.nextToken();
             Condition c = null;
-            if (token == StreamTokenizer.TT_WORD && t.getTokenString().equals("if")) {
+            if (token == KconfigLexer.TT_WORD && t.getTokenString().equals("if")) {
                 c = new ConditionParser(parentMenu, environment).parse(t);
             }
             e.setPrompt(new Prompt(prompt, c));
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.sources.DirectoryTree;
+import com.moosemorals.configparser.sources.SourceTree;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parse one tree for several environments, usually one per architecture.
+ *
+ * Each file is parsed on its own and kept in memory along with the values
+ * of the environment variables it looked at, either directly or through a
+ * 'source' path. A file that looked at none of them, which is most of them,
+ * is parsed once and copied into every tree. Files that did are parsed
+ * again whenever a variable they use has a different value.
+ *
+ * Every tree gets its own entries, but they all share one symbol table.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class BatchParser {
+
+    private static final Logger log = LoggerFactory.getLogger(BatchParser.class);
+
+    private final SourceTree tree;
+    private final SymbolTable symbols;
+    private final ParseCache cache = new ParseCache();
+    private ForkJoinPool pool;
+
+    /**
+     * @param root folder that source paths are relative to
+     */
+    public BatchParser(File root) {
+        this(root, new SymbolTable());
+    }
+
+    /**
+     * @param root folder that source paths are relative to
+     * @param symbols table to intern symbols into
+     */
+    public BatchParser(File root, SymbolTable symbols) {
+        this(new DirectoryTree(root), symbols);
+    }
+
+    /**
+     * @param tree where to read files from, which may be an archive
+     * @param symbols table to intern symbols into
+     */
+    public BatchParser(SourceTree tree, SymbolTable symbols) {
+        this.tree = tree;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @param pool pool to parse in, or null to parse in the calling thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * @return the number of files parsed so far
+     */
+    public int getParsed() {
+        return cache.getMisses();
+    }
+
+    /**
+     * @return the number of files copied from an earlier parse so far
+     */
+    public int getReused() {
+        return cache.getHits();
+    }
+
+    /**
+     * Parse a tree with one environment, reusing whatever can be reused
+     * from earlier parses.
+     *
+     * @param target top level file
+     * @param environment
+     * @return the top level menu
+     * @throws IOException
+     */
+    public Menu parse(String target, Environment environment) throws IOException {
+        int parsed = cache.getMisses();
+        int reused = cache.getHits();
+        ParseSession session = new ParseSession(tree, environment, symbols);
+        session.setPool(pool);
+        session.setCache(cache);
+        Menu top = session.parse(target);
+        log.debug("Parsed {} files, reused {}", cache.getMisses() - parsed, cache.getHits() - reused);
+        return top;
+    }
+
+    /**
+     * @param target top level file
+     * @param environments
+     * @return the top level menu for each environment, in the same order
+     * @throws IOException
+     */
+    public List<Menu> parse(String target, List<Environment> environments) throws IOException {
+        List<Menu> result = new ArrayList<>(environments.size());
+        for (Environment environment : environments) {
+            result.add(parse(target, environment));
+        }
+        return result;
+    }
+
+}
@@ -23,13 +23,16 @@
  */
 package com.moosemorals.configparser.parsers;
 
+import com.moosemorals.configparser.events.Events;
 import com.moosemorals.configparser.types.Choice;
 import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.KconfigLexer;
 import com.moosemorals.configparser.ParseError;
 import com.moosemorals.configparser.SourceFile;
 import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Symbol;
 import java.io.IOException;
-import java.io.StreamTokenizer;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -41,45 +44,69 @@ public class ChoiceParser extends BaseParser {
 
     private final Logger log = LoggerFactory.getLogger(ChoiceParser.class);
 
+    // Streaming only: conditions from outside this choice, and whether it
+    // has been passed to the listener yet
+    private List<Condition> outer;
+    private boolean started = false;
+
     public ChoiceParser(MenuParser parentParser, Environment e) {
         super(parentParser, e);
     }
 
     public Choice parse(SourceFile t) throws IOException {
+        Object event = Events.begin(Events.Kind.CHOICE);
+        Choice c = null;
+        try {
+            c = read(t);
+            return c;
+        } finally {
+            Events.end(event, c);
+        }
+    }
+
+    private Choice read(SourceFile t) throws IOException {
         Choice c;
         if (!"choice".equals(t.getTokenString())) {
             throw new ParseError(t, "Must be called on choice");
         }
 
-        String symbol = null;
-        if (t.nextToken() == StreamTokenizer.TT_WORD) {
-            symbol = t.getTokenString();
+        Symbol symbol = null;
+        if (t.nextToken() == KconfigLexer.TT_WORD) {
+            symbol = t.getSymbol();
         } else {
             t.pushBack();
         }
 
         c = new Choice(t.getLocation(), symbol);
+        ParseListener listener = parentMenu.getListener();
+        if (listener != null) {
+            outer = parentMenu.snapshotIfStack();
+        }
 
         while (true) {
             int token = t.nextToken();
             switch (token) {
-                case StreamTokenizer.TT_EOF:
+                case KconfigLexer.TT_EOF:
                     t.pushBack();
+                    end(listener, c);
                     return c;
-                case StreamTokenizer.TT_WORD:
+                case KconfigLexer.TT_WORD:
                     switch (t.getTokenString()) {
                         case "menuconfig":
                         case "config":
-                            c.addEntry(parentMenu.applyIfStack(new ConfigParser(parentMenu, environment).parse(t)));
+                            begin(listener, c);
+                            parentMenu.addEntry(c, new ConfigParser(parentMenu, environment).parse(t));
                             break;
                         case "endchoice":
                             t.pushBack();
+                            end(listener, c);
                             return c;
                         case "comment":
-                            c.addEntry(parentMenu.applyIfStack(new CommentParser(parentMenu, environment).parse(t)));
+                            begin(listener, c);
+                            parentMenu.addEntry(c, new CommentParser(parentMenu, environment).parse(t));
                             break;
                         case "source":
-                            t = parentMenu.source(t);
+                            t = parentMenu.source(t, c);
                             break;
                         case "if":
                             parentMenu.pushIfStack(new Condition(readExpression(t)));
@@ -129,4 +156,24 @@ public class ChoiceParser extends BaseParser {
         }
     }
 
+    /**
+     * When streaming, pass the choice to the listener before its first
+     * entry.
+     */
+    private void begin(ParseListener listener, Choice c) {
+        if (listener == null || started) {
+            return;
+        }
+        started = true;
+        outer.forEach(c::addDepends);
+        listener.startChoice(c);
+    }
+
+    private void end(ParseListener listener, Choice c) {
+        if (listener != null) {
+            begin(listener, c);
+            listener.endChoice(c);
+        }
+    }
+
 }
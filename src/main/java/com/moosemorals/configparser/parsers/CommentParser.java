@@ -25,10 +25,10 @@ package com.moosemorals.configparser.parsers;
 
 import com.moosemorals.configparser.types.Comment;
 import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.KconfigLexer;
 import com.moosemorals.configparser.ParseError;
 import com.moosemorals.configparser.SourceFile;
 import java.io.IOException;
-import java.io.StreamTokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -56,10 +56,10 @@ public class CommentParser extends BaseParser {
         while (true) {
             int token = t.nextToken();
             switch (token) {
-                case StreamTokenizer.TT_EOF:
+                case KconfigLexer.TT_EOF:
                     t.pushBack();
                     return c;
-                case StreamTokenizer.TT_WORD:
+                case KconfigLexer.TT_WORD:
                     switch (t.getTokenString()) {
                         case "config":
                         case "menuconfig":
@@ -26,10 +26,10 @@ package com.moosemorals.configparser.parsers;
 
 import com.moosemorals.configparser.types.Condition;
 import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.KconfigLexer;
 import com.moosemorals.configparser.ParseError;
 import com.moosemorals.configparser.SourceFile;
 import java.io.IOException;
-import java.io.StreamTokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,7 +46,7 @@ public class ConditionParser extends BaseParser {
     }
 
     Condition parse(SourceFile t) throws IOException {
-        if (t.currentToken() != StreamTokenizer.TT_WORD && !t.getTokenString().equals("if")) {
+        if (t.currentToken() != KconfigLexer.TT_WORD && !t.getTokenString().equals("if")) {
             throw new ParseError(t, "Must start parsing condition on an 'if'");
         }
 
@@ -23,17 +23,19 @@
  */
 package com.moosemorals.configparser.parsers;
 
+import com.moosemorals.configparser.events.Events;
 import com.moosemorals.configparser.types.Condition;
 import com.moosemorals.configparser.types.Config;
 import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.KconfigLexer;
 import com.moosemorals.configparser.ParseError;
 import com.moosemorals.configparser.SourceFile;
 import com.moosemorals.configparser.types.MenuConfig;
+import com.moosemorals.configparser.types.Symbol;
 import com.moosemorals.configparser.values.Imply;
 import com.moosemorals.configparser.values.Range;
 import com.moosemorals.configparser.values.Select;
 import java.io.IOException;
-import java.io.StreamTokenizer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +52,17 @@ class ConfigParser extends BaseParser {
     }
 
     Config parse(SourceFile t) throws IOException {
+        Object event = Events.begin(Events.Kind.CONFIG);
+        Config e = null;
+        try {
+            e = read(t);
+            return e;
+        } finally {
+            Events.end(event, e);
+        }
+    }
+
+    private Config read(SourceFile t) throws IOException {
 
         Config e;
         String type = t.getTokenString();
@@ -57,24 +70,24 @@ class ConfigParser extends BaseParser {
             throw new ParseError(t, "Must be called on config");
         }
 
-        if (t.nextToken() != StreamTokenizer.TT_WORD) {
+        if (t.nextToken() != KconfigLexer.TT_WORD) {
             throw new ParseError(t, "Expecting word to follow 'config'");
         }
 
         if (type.equals("config")) {
-            e = new Config(t.getLocation(), t.getTokenString());
+            e = new Config(t.getLocation(), t.getSymbol());
         } else {
-            e = new MenuConfig(t.getLocation(), t.getTokenString());
+            e = new MenuConfig(t.getLocation(), t.getSymbol());
         }
 
         while (true) {
             int token = t.nextToken();
 
             switch (token) {
-                case StreamTokenizer.TT_EOF:
+                case KconfigLexer.TT_EOF:
                     t.pushBack();
                     return e;
-                case StreamTokenizer.TT_WORD:
+                case KconfigLexer.TT_WORD:
                     switch (t.getTokenString()) {
                         case "config":
                         case "menuconfig":
@@ -147,27 +160,33 @@ class ConfigParser extends BaseParser {
         String value2 = t.getTokenString();
         Condition c = null;
         int token = t.nextToken();
-        if (token == StreamTokenizer.TT_WORD && t.getTokenString().equals("if")) {
+        if (token == KconfigLexer.TT_WORD && t.getTokenString().equals("if")) {
             c = new ConditionParser(parentMenu, environment).parse(t);
         }
         conf.addRange(new Range(value1, value2, c));
     }
 
     private void readSelect(SourceFile t, Config conf) throws IOException {
-        String select = readExpression(t);
+        if (t.nextToken() != KconfigLexer.TT_WORD) {
+            throw new ParseError(t, "Expecting symbol to follow 'select'");
+        }
+        Symbol select = t.getSymbol();
         int token = t.nextToken();
         Condition c = null;
-        if (token == StreamTokenizer.TT_WORD && t.getTokenString().equals("if")) {
+        if (token == KconfigLexer.TT_WORD && t.getTokenString().equals("if")) {
             c = new ConditionParser(parentMenu, environment).parse(t);
         }
         conf.addSelect(new Select(select, c));
     }
 
     private void readImply(SourceFile t, Config conf) throws IOException {
-        String imply = readExpression(t);
+        if (t.nextToken() != KconfigLexer.TT_WORD) {
+            throw new ParseError(t, "Expecting symbol to follow 'imply'");
+        }
+        Symbol imply = t.getSymbol();
         int token = t.nextToken();
         Condition c = null;
-        if (token == StreamTokenizer.TT_WORD && t.getTokenString().equals("if")) {
+        if (token == KconfigLexer.TT_WORD && t.getTokenString().equals("if")) {
             c = new ConditionParser(parentMenu, environment).parse(t);
         }
         conf.addImplies(new Imply(imply, c));
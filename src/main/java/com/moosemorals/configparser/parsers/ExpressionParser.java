@@ -0,0 +1,156 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.KconfigLexer;
+import com.moosemorals.configparser.ParseError;
+import com.moosemorals.configparser.SourceFile;
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.expr.ExprFactory;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads a Kconfig expression into a tree.
+ *
+ * Follows the Kconfig grammar: = and != compare two plain symbols or strings
+ * and bind tightest, then !, then &&, then ||. Parsing stops,
+ * leaving the token to be read again, at the end of the line or at a
+ * trailing 'if'.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ExpressionParser {
+
+    private final SourceFile t;
+    private final ExprFactory exprs;
+
+    public ExpressionParser(SourceFile t) {
+        this.t = t;
+        this.exprs = t.getSymbolTable().getExprFactory();
+    }
+
+    /**
+     * Parse an expression from some text, for example one given on the
+     * command line.
+     *
+     * @param text
+     * @param symbols table the expression's symbols belong to
+     * @return
+     * @throws IOException
+     */
+    public static Expr parse(String text, SymbolTable symbols) throws IOException {
+        SourceFile t = new SourceFile("<expression>", text.getBytes(StandardCharsets.UTF_8), symbols);
+        Expr e = new ExpressionParser(t).parse();
+        int token = t.nextToken();
+        if (token != KconfigLexer.TT_EOL && token != KconfigLexer.TT_EOF) {
+            throw new ParseError(t, "Unexpected text after expression");
+        }
+        return e;
+    }
+
+    public Expr parse() throws IOException {
+        return or();
+    }
+
+    private Expr or() throws IOException {
+        Expr e = and();
+        while (operator('|')) {
+            e = exprs.or(e, and());
+        }
+        return e;
+    }
+
+    private Expr and() throws IOException {
+        Expr e = unary();
+        while (operator('&')) {
+            e = exprs.and(e, unary());
+        }
+        return e;
+    }
+
+    /**
+     * Check for a doubled operator (&& or ||), leaving anything else to be
+     * read again.
+     */
+    private boolean operator(int c) throws IOException {
+        if (t.nextToken() != c) {
+            t.pushBack();
+            return false;
+        }
+        if (t.nextToken() != c) {
+            throw new ParseError(t, "Expecting '" + (char) c + (char) c + "'");
+        }
+        return true;
+    }
+
+    private Expr unary() throws IOException {
+        switch (t.nextToken()) {
+            case '!':
+                return exprs.not(unary());
+            case '(':
+                Expr e = or();
+                if (t.nextToken() != ')') {
+                    throw new ParseError(t, "Expecting ')'");
+                }
+                return e;
+            default:
+                t.pushBack();
+                return comparison();
+        }
+    }
+
+    private Expr comparison() throws IOException {
+        Expr left = operand();
+        switch (t.nextToken()) {
+            case '=':
+                return exprs.equal(left, operand());
+            case '!':
+                if (t.nextToken() != '=') {
+                    throw new ParseError(t, "Expecting '!='");
+                }
+                return exprs.unequal(left, operand());
+            default:
+                t.pushBack();
+                return left;
+        }
+    }
+
+    private Expr operand() throws IOException {
+        switch (t.nextToken()) {
+            case KconfigLexer.TT_WORD:
+                if (t.tokenEquals("if")) {
+                    throw new ParseError(t, "Expecting expression before 'if'");
+                }
+                return exprs.symbol(t.getSymbol());
+            case KconfigLexer.QUOTE_CHAR:
+            case KconfigLexer.DOUBLE_QUOTE_CHAR:
+                return exprs.string(t.getTokenString());
+            default:
+                throw new ParseError(t, "Expecting symbol or string");
+        }
+    }
+
+}
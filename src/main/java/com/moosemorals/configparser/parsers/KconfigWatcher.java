@@ -0,0 +1,388 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.ParseError;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parse a tree once and then keep it up to date as files change.
+ *
+ * When a sourced file changes only that file, and the files it sources, are
+ * parsed again. The new entries replace the old ones in the live tree with
+ * the same if conditions they had before. A change to the top level file
+ * reloads everything.
+ *
+ * The tree is changed from the thread that calls {@link #watch}, so readers
+ * on other threads need to arrange their own locking.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class KconfigWatcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(KconfigWatcher.class);
+
+    // Editors tend to write in bursts, so wait this long for things to settle
+    private static final long SETTLE_MS = 50;
+
+    private final ParseSession session;
+    private final Path root;
+    private final WatchService watcher;
+    private final Map<WatchKey, Path> keys = new HashMap<>();
+    private final Set<Path> watched = new HashSet<>();
+    private final Map<String, List<SourceEdge>> edges = new HashMap<>();
+
+    private String target;
+    private Menu top;
+
+    public interface Listener {
+
+        /**
+         * A sourced file changed and the entries that came from it have
+         * been replaced.
+         *
+         * @param target the file that changed
+         * @param host menu or choice that holds the entries
+         * @param index position of the entries in the host
+         * @param removed old entries
+         * @param added new entries, now in the host
+         */
+        void replaced(String target, Container host, int index, List<Entry> removed, List<Entry> added);
+
+        /**
+         * The top level file changed and the whole tree has been parsed
+         * again.
+         *
+         * @param top new top level menu
+         */
+        void reloaded(Menu top);
+    }
+
+    /**
+     * @param root folder holding the tree
+     * @param environment
+     * @param pool pool to parse in, or null to parse in the calling thread
+     * @param cache cache to use for unchanged files, may be null
+     * @throws IOException
+     */
+    public KconfigWatcher(File root, Environment environment, ForkJoinPool pool, ParseCache cache) throws IOException {
+        this(session(root, environment, pool, cache));
+    }
+
+    /**
+     * @param session where the files are, and how to parse them. Sourced
+     * files are always parsed separately, so they can be parsed again on
+     * their own
+     * @throws IOException
+     */
+    public KconfigWatcher(ParseSession session) throws IOException {
+        this.session = session;
+        this.root = session.getRoot().toPath();
+        this.watcher = FileSystems.getDefault().newWatchService();
+    }
+
+    private static ParseSession session(File root, Environment environment, ForkJoinPool pool, ParseCache cache) {
+        ParseSession session = new ParseSession(root, environment);
+        session.setPool(pool);
+        session.setCache(cache);
+        return session;
+    }
+
+    public Menu parse(String target) throws IOException {
+        this.target = target;
+        try {
+            load();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+        register(target);
+        return top;
+    }
+
+    public Menu getTop() {
+        return top;
+    }
+
+    /**
+     * @return the table that symbols are interned into, shared by every
+     * parse this watcher makes
+     */
+    public SymbolTable getSymbolTable() {
+        return session.getSymbolTable();
+    }
+
+    private Menu run(SourceTask task) {
+        ForkJoinPool pool = session.getPool();
+        return pool != null ? pool.invoke(task) : task.invoke();
+    }
+
+    private void load() {
+        SourceTask task = new SourceTask(target, session.getEnvironment(), session, true);
+        top = run(task);
+        edges.clear();
+        index(task.getNode());
+    }
+
+    private void index(SourceNode node) {
+        for (SourceEdge e : node.edges) {
+            edges.computeIfAbsent(e.target, k -> new ArrayList<>()).add(e);
+            register(e.target);
+            if (e.child != null) {
+                index(e.child);
+            }
+        }
+    }
+
+    private void forget(SourceNode node) {
+        for (SourceEdge e : node.edges) {
+            List<SourceEdge> list = edges.get(e.target);
+            if (list != null) {
+                list.remove(e);
+            }
+            if (e.child != null) {
+                forget(e.child);
+            }
+        }
+    }
+
+    private void register(String target) {
+        Path dir = root.resolve(target).getParent();
+        if (dir == null || !Files.isDirectory(dir) || !watched.add(dir)) {
+            return;
+        }
+        try {
+            keys.put(dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY), dir);
+        } catch (IOException ex) {
+            log.warn("Can't watch {}: {}", dir, ex.toString());
+        }
+    }
+
+    /**
+     * Wait for changes and apply them until the watcher is closed.
+     *
+     * @param listener told about each change
+     * @throws InterruptedException
+     */
+    public void watch(Listener listener) throws InterruptedException {
+        try {
+            while (true) {
+                poll(Long.MAX_VALUE, TimeUnit.MILLISECONDS, listener);
+            }
+        } catch (ClosedWatchServiceException ex) {
+            log.debug("Watcher closed");
+        }
+    }
+
+    /**
+     * Wait for one batch of changes and apply it.
+     *
+     * @param timeout how long to wait for the first change
+     * @param unit
+     * @param listener told about each change
+     * @return number of changed files that were part of the tree
+     * @throws InterruptedException
+     */
+    public int poll(long timeout, TimeUnit unit, Listener listener) throws InterruptedException {
+        WatchKey key = watcher.poll(timeout, unit);
+        if (key == null) {
+            return 0;
+        }
+        Set<String> changed = new LinkedHashSet<>();
+        boolean overflow = collect(key, changed);
+        while ((key = watcher.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+            overflow |= collect(key, changed);
+        }
+
+        if (overflow || changed.contains(target)) {
+            reload(listener);
+            return changed.size();
+        }
+        int count = 0;
+        for (String t : changed) {
+            if (update(t, listener)) {
+                count += 1;
+            }
+        }
+        return count;
+    }
+
+    private boolean collect(WatchKey key, Set<String> changed) {
+        boolean overflow = false;
+        Path dir = keys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (dir != null) {
+                changed.add(root.relativize(dir.resolve((Path) event.context())).toString());
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private void reload(Listener listener) {
+        log.debug("Reloading {}", target);
+        try {
+            load();
+        } catch (ParseError | UncheckedIOException ex) {
+            log.warn("Can't reload {}, keeping the old tree: {}", target, ex.getMessage());
+            return;
+        }
+        listener.reloaded(top);
+    }
+
+    /**
+     * Parse one file again and put its entries in the tree everywhere it is
+     * sourced.
+     *
+     * @param changed path of the file, relative to the root
+     * @param listener told about each change
+     * @return true if the file is part of the tree
+     */
+    public boolean update(String changed, Listener listener) {
+        if (changed.equals(target)) {
+            reload(listener);
+            return true;
+        }
+        List<SourceEdge> list = edges.get(changed);
+        if (list == null || list.isEmpty()) {
+            return false;
+        }
+        for (SourceEdge edge : new ArrayList<>(list)) {
+            replace(edge, listener);
+        }
+        return true;
+    }
+
+    private void replace(SourceEdge edge, Listener listener) {
+        long start = System.nanoTime();
+        SourceTask task = new SourceTask(edge.target, session.getEnvironment(), session, false, edge);
+        Menu fresh;
+        try {
+            fresh = run(task);
+        } catch (ParseError | UncheckedIOException ex) {
+            log.warn("Can't parse {}, keeping the old entries: {}", edge.target, ex.getMessage());
+            return;
+        }
+
+        List<Entry> added = fresh != null ? new ArrayList<>(fresh.getEntries()) : new ArrayList<>();
+        // Conditions from every file between here and the top
+        for (SourceEdge e = edge; e != null; e = e.owner.parent) {
+            for (Entry x : added) {
+                MenuParser.applyConditions(x, e.conditions);
+            }
+        }
+
+        Container host = liveHost(edge);
+        int index = position(edge);
+        List<Entry> live = host.getEntries().subList(index, index + edge.spliced);
+        List<Entry> removed = new ArrayList<>(live);
+        live.clear();
+        host.addEntries(index, added);
+
+        // Files that copied these entries up into their parent now have a
+        // different number of entries there
+        int delta = added.size() - edge.spliced;
+        for (SourceEdge e = edge; e.owner.parent != null && e.host == e.owner.fragment; e = e.owner.parent) {
+            e.owner.parent.spliced += delta;
+        }
+        edge.spliced = added.size();
+
+        if (edge.child != null) {
+            forget(edge.child);
+        }
+        edge.child = task.getNode();
+        if (edge.child != null) {
+            index(edge.child);
+        }
+
+        log.debug("Replaced {} in {}ms", edge.target, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        listener.replaced(edge.target, host, index, removed, added);
+    }
+
+    /**
+     * The container in the live tree that an edge's entries were spliced
+     * into. If the edge was at the top level of its file that's wherever the
+     * file itself ended up.
+     */
+    private static Container liveHost(SourceEdge edge) {
+        if (edge.host == edge.owner.fragment && edge.owner.parent != null) {
+            return liveHost(edge.owner.parent);
+        }
+        return edge.host;
+    }
+
+    /**
+     * Where the entries from an edge start in the live host, allowing for
+     * the edges before it that have been spliced into the same place.
+     */
+    private static int position(SourceEdge edge) {
+        int index = edge.index;
+        for (SourceEdge e : edge.owner.edges) {
+            if (e == edge) {
+                break;
+            }
+            if (e.host == edge.host) {
+                index += e.spliced;
+            }
+        }
+        if (edge.host == edge.owner.fragment && edge.owner.parent != null) {
+            index += position(edge.owner.parent);
+        }
+        return index;
+    }
+
+    @Override
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+}
@@ -25,16 +25,28 @@ package com.moosemorals.configparser.parsers;
 
 import com.moosemorals.configparser.types.Condition;
 import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.KconfigLexer;
 import com.moosemorals.configparser.ParseError;
 import com.moosemorals.configparser.types.Menu;
 import com.moosemorals.configparser.SourceFile;
+import com.moosemorals.configparser.events.Events;
+import com.moosemorals.configparser.metrics.FileMetrics;
+import com.moosemorals.configparser.metrics.ParseMetrics;
+import com.moosemorals.configparser.types.Choice;
+import com.moosemorals.configparser.types.Comment;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Container;
 import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.SymbolTable;
 import com.moosemorals.configparser.values.Prompt;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.StreamTokenizer;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.Deque;
 import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.slf4j.Logger;
@@ -44,20 +56,144 @@ public class MenuParser extends BaseParser {
 
     public static final Logger log = LoggerFactory.getLogger(MenuParser.class);
 
+    // Shared with child parsers, but not between parses
     private final Deque<SourceFile> fileStack;
     private final Deque<Condition> ifStack;
+    private final ParseSession session;
+    // Non-null when sourced files are parsed as separate fragments
+    private final List<SourceEdge> edges;
+    // Non-null when entries are streamed rather than added to the tree
+    private ParseListener listener;
+    // Streaming only: conditions from outside this menu, and whether it has
+    // been passed to the listener yet
+    private List<Condition> outer;
+    private boolean started = false;
 
+    /**
+     * @param parentParser parser of the enclosing menu, or null for a top
+     * level parser
+     * @param environment
+     * @deprecated a top level parser made this way reads from the root set
+     * with {@link SourceFile#setRoot}, which is shared by every parse. Use
+     * {@link ParseSession#parse} instead
+     */
+    @Deprecated
     public MenuParser(MenuParser parentParser, Environment environment) {
         super(parentParser, environment);
         if (parentParser == null) {
             fileStack = new LinkedList<>();
             ifStack = new LinkedList<>();
+            session = new ParseSession(SourceFile.getRoot(), environment);
+            edges = null;
         } else {
             fileStack = parentParser.fileStack;
             ifStack = parentParser.ifStack;
+            session = parentParser.session;
+            edges = parentParser.edges;
+            listener = parentParser.listener;
         }
     }
 
+    /**
+     * Create a top level parser that parses each sourced file as a separate
+     * task in the given pool and splices the results back together.
+     *
+     * @param environment
+     * @param pool
+     * @deprecated reads from the root set with {@link SourceFile#setRoot}.
+     * Use a {@link ParseSession} with {@link ParseSession#setPool} instead
+     */
+    @Deprecated
+    public MenuParser(Environment environment, ForkJoinPool pool) {
+        this(environment, pool, null);
+    }
+
+    /**
+     * Create a top level parser that parses sourced files as separate tasks,
+     * reusing the results from a previous run where the files haven't
+     * changed.
+     *
+     * @param environment
+     * @param pool pool to run tasks in, or null to run them in this thread
+     * @param cache
+     * @deprecated reads from the root set with {@link SourceFile#setRoot}.
+     * Use a {@link ParseSession} with {@link ParseSession#setCache} instead
+     */
+    @Deprecated
+    public MenuParser(Environment environment, ForkJoinPool pool, ParseCache cache) {
+        this(environment, new SymbolTable(), pool, cache);
+    }
+
+    /**
+     * Create a top level parser that parses sourced files as separate tasks,
+     * sharing a symbol table with other parses.
+     *
+     * @param environment
+     * @param symbols table to intern symbols into
+     * @param pool pool to run tasks in, or null to run them in this thread
+     * @param cache cache to use for unchanged files, may be null
+     * @deprecated reads from the root set with {@link SourceFile#setRoot}.
+     * Use a {@link ParseSession} instead
+     */
+    @Deprecated
+    public MenuParser(Environment environment, SymbolTable symbols, ForkJoinPool pool, ParseCache cache) {
+        super(null, environment);
+        this.fileStack = new LinkedList<>();
+        this.ifStack = new LinkedList<>();
+        this.session = new ParseSession(SourceFile.getRoot(), environment, symbols);
+        this.session.setPool(pool);
+        this.session.setCache(cache);
+        this.edges = new ArrayList<>();
+    }
+
+    /**
+     * Create a top level parser for a session.
+     *
+     * @param environment usually the session's, but fragments are parsed
+     * with one that records which variables are used
+     * @param session
+     * @param edges null to read sourced files inline, otherwise sourced
+     * files are recorded here rather than being read
+     */
+    MenuParser(Environment environment, ParseSession session, List<SourceEdge> edges) {
+        super(null, environment);
+        this.fileStack = new LinkedList<>();
+        this.ifStack = new LinkedList<>();
+        this.session = session;
+        this.edges = edges;
+    }
+
+    /**
+     * @return the table that symbols from this parse are interned into
+     */
+    public SymbolTable getSymbolTable() {
+        return session.getSymbolTable();
+    }
+
+    /**
+     * Measure each file this parser reads.
+     *
+     * @param metrics where to put the measurements, or null to stop
+     * measuring
+     */
+    public void setMetrics(ParseMetrics metrics) {
+        session.setMetrics(metrics);
+    }
+
+    public ParseMetrics getMetrics() {
+        return session.getMetrics();
+    }
+
+    /**
+     * Read sourced files ahead of this parser.
+     *
+     * @param prefetcher for the same root and environment as this parser, or
+     * null to read each file when it is wanted
+     */
+    public void setPrefetcher(Prefetcher prefetcher) {
+        session.setPrefetcher(prefetcher);
+    }
+
     String replaceSymbols(String original) {
         Pattern p = Pattern.compile("\\$([A-Za-z_]+)");
         Matcher m = p.matcher(original);
@@ -73,11 +209,28 @@ public class MenuParser extends BaseParser {
     }
 
     private SourceFile source(SourceFile current, String target) throws IOException {
+        ParseMetrics metrics = session.getMetrics();
+        FileMetrics file = null;
+        if (metrics != null) {
+            if (current != null) {
+                current.getMetrics().pause();
+            }
+            file = metrics.start(target);
+        }
         try {
-            SourceFile t = new SourceFile(target);
+            SourceFile t = session.open(target);
+            if (file != null) {
+                t.setMetrics(file);
+            }
             fileStack.push(t);
             return t;
         } catch (FileNotFoundException ex) {
+            if (metrics != null) {
+                metrics.missing();
+                if (current != null) {
+                    current.getMetrics().resume();
+                }
+            }
             if (current != null) {
                 log.warn("at {}: Can't find source {}, skipping", current.getLocation().toString(), target);
                 return current;
@@ -87,7 +240,7 @@ public class MenuParser extends BaseParser {
         }
     }
 
-    public SourceFile source(SourceFile t) throws IOException {
+    private String readSourceTarget(SourceFile t) throws IOException {
         String target;
         int token = t.nextToken();
         if (token == DOUBLE_QUOTE_CHAR || token == QUOTE_CHAR) {
@@ -97,11 +250,11 @@ public class MenuParser extends BaseParser {
             OUTER:
             while (true) {
                 switch (token) {
-                    case StreamTokenizer.TT_EOL:
+                    case KconfigLexer.TT_EOL:
                         target = result.toString();
                         t.pushBack();
                         break OUTER;
-                    case StreamTokenizer.TT_WORD:
+                    case KconfigLexer.TT_WORD:
                         result.append(t.getTokenString());
                         break;
                     default:
@@ -113,7 +266,34 @@ public class MenuParser extends BaseParser {
         }
 
         skip(t);
-        return source(t, target);
+        return target;
+    }
+
+    /**
+     * Handle a 'source' directive. Sequential parsers switch to the new file
+     * and carry on, fragment parsers note where the file goes and hand it off
+     * to a {@link SourceTask}.
+     *
+     * @param t current file, positioned just after 'source'
+     * @param host menu or choice that the sourced entries belong to
+     * @return file to continue parsing from
+     * @throws IOException
+     */
+    public SourceFile source(SourceFile t, Container host) throws IOException {
+        Object event = Events.begin(Events.Kind.SOURCE);
+        int line = t.getLineNumber();
+        String target = readSourceTarget(t);
+        if (t.getMetrics() != null) {
+            t.getMetrics().source();
+        }
+        SourceFile next = t;
+        if (edges == null) {
+            next = source(t, target);
+        } else {
+            edges.add(new SourceEdge(host, host.getEntries().size(), target, snapshotIfStack(), t.getLineNumber()));
+        }
+        Events.endSource(event, t.getTarget(), line, target);
+        return next;
     }
 
     public void pushIfStack(Condition c) {
@@ -124,37 +304,163 @@ public class MenuParser extends BaseParser {
         ifStack.pop();
     }
 
+    /**
+     * @return the conditions on the if stack, innermost first
+     */
+    List<Condition> snapshotIfStack() {
+        return new ArrayList<>(ifStack);
+    }
+
+    ParseListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Add a config or comment to a menu or choice, or pass it to the
+     * listener when streaming.
+     */
+    void addEntry(Container host, Entry e) {
+        applyIfStack(e);
+        if (listener == null) {
+            host.addEntry(e);
+        } else if (e instanceof Config) {
+            listener.config((Config) e);
+        } else if (e instanceof Comment) {
+            listener.comment((Comment) e);
+        }
+    }
+
+    /**
+     * When streaming, pass the menu to the listener before its first entry.
+     */
+    private void begin(Menu m) {
+        if (listener == null || started) {
+            return;
+        }
+        started = true;
+        if (outer != null) {
+            outer.forEach(m::addDepends);
+        }
+        listener.startMenu(m);
+    }
+
+    private void end(Menu m) {
+        if (listener != null) {
+            begin(m);
+            listener.endMenu(m);
+        }
+    }
+
     public Entry applyIfStack(Entry e) {
         ifStack.forEach(e::addDepends);
         return e;
     }
 
+    /**
+     * Add conditions to an entry and everything it contains, the same way
+     * they would have been added if they were on the if stack when the
+     * entry was parsed.
+     */
+    static void applyConditions(Entry e, List<Condition> conditions) {
+        if (e instanceof Container) {
+            for (Entry child : ((Container) e).getEntries()) {
+                applyConditions(child, conditions);
+            }
+        }
+        conditions.forEach(e::addDepends);
+    }
+
+    /**
+     * Parse a tree without keeping it, passing each part to a listener as
+     * soon as it is complete. Memory use depends on how deeply menus are
+     * nested, not on how big the tree is.
+     *
+     * Only works with sequential parsers, as sourced files have to be read
+     * in order.
+     *
+     * @param target top level file
+     * @param listener
+     * @throws IOException if there's a problem reading, or the listener
+     * throws an UncheckedIOException
+     */
+    public void parse(String target, ParseListener listener) throws IOException {
+        if (edges != null) {
+            throw new IllegalStateException("Can't stream a parallel parse");
+        }
+        this.listener = listener;
+        try {
+            parse(source(null, target), null);
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
     public Menu parse(String target) throws IOException {
-        return parse(source(null, target), null);
+        if (edges == null) {
+            return parse(source(null, target), null);
+        }
+        try {
+            SourceTask task = new SourceTask(target, environment, session, true);
+            ForkJoinPool pool = session.getPool();
+            return pool != null ? pool.invoke(task) : task.invoke();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+
+    /**
+     * Parse a single file as a fragment, leaving any sourced files as
+     * edges.
+     */
+    Menu parseFragment(SourceFile t) throws IOException {
+        fileStack.push(t);
+        return parse(t, null);
     }
 
     public Menu parse(SourceFile t, Menu parent) throws IOException {
+        Object event = Events.begin(Events.Kind.MENU);
+        Menu m = null;
+        try {
+            m = read(t, parent);
+            return m;
+        } finally {
+            Events.end(event, m);
+        }
+    }
+
+    private Menu read(SourceFile t, Menu parent) throws IOException {
 
         Menu m = new Menu(t.getLocation(), null);
         if (parent != null) {
             readPrompt(t, m);
+            if (listener != null) {
+                outer = snapshotIfStack();
+            }
         }
 
         while (true) {
             int token = t.nextToken();
 
             switch (token) {
-                case StreamTokenizer.TT_EOF:
+                case KconfigLexer.TT_EOF:
                     fileStack.pop();
+                    t.finish();
                     if (fileStack.isEmpty()) {
+                        if (edges != null && !ifStack.isEmpty()) {
+                            throw new ParseError(t, "Missing endif");
+                        }
+                        end(m);
                         log.debug("Completed parse");
                         return m;
                     } else {
                         t = fileStack.peek();
+                        if (t.getMetrics() != null) {
+                            t.getMetrics().resume();
+                        }
                     }
                     break;
 
-                case StreamTokenizer.TT_WORD:
+                case KconfigLexer.TT_WORD:
                     switch (t.getTokenString()) {
                         case "mainmenu":
                             t.nextToken();
@@ -164,18 +470,29 @@ public class MenuParser extends BaseParser {
                             }
                         case "config":
                         case "menuconfig":
-                            m.addEntry(applyIfStack(new ConfigParser(this, environment).parse(t)));
+                            begin(m);
+                            addEntry(m, new ConfigParser(this, environment).parse(t));
                             break;
                         case "choice":
-                            m.addEntry(applyIfStack(new ChoiceParser(this, environment).parse(t)));
+                            begin(m);
+                            Choice choice = new ChoiceParser(this, environment).parse(t);
+                            if (listener == null) {
+                                m.addEntry(applyIfStack(choice));
+                            }
                             break;
                         case "comment":
-                            m.addEntry(applyIfStack(new CommentParser(this, environment).parse(t)));
+                            begin(m);
+                            addEntry(m, new CommentParser(this, environment).parse(t));
                             break;
                         case "menu":
-                            m.addEntry(applyIfStack(new MenuParser(this, environment).parse(t, m)));
+                            begin(m);
+                            Menu child = new MenuParser(this, environment).parse(t, m);
+                            if (listener == null) {
+                                m.addEntry(applyIfStack(child));
+                            }
                             break;
                         case "endmenu":
+                            end(m);
                             return m;
                         case "visible":
                             t.nextToken();
@@ -188,7 +505,7 @@ public class MenuParser extends BaseParser {
                             popIfStack();
                             break;
                         case "source":
-                            t = source(t);
+                            t = source(t, m);
                             break;
                         case "depends":
                             readDepends(t, m);
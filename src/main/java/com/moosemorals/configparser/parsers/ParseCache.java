@@ -0,0 +1,335 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.FileTable;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the parsed entries of each file on disk between runs.
+ *
+ * Each file is stored before anything it sources is spliced in, along with
+ * the places it sources other files, so a changed file only invalidates
+ * itself. A stored file is reused if its content hash is the same and every
+ * environment variable it looked at has the same value. If the modification
+ * time and size haven't changed either the file isn't even read.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ParseCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ParseCache.class);
+    private static final String DIGEST = "SHA-256";
+    // The model classes all declare a fixed serialVersionUID, so bump this
+    // whenever any of them changes shape
+    private static final int VERSION = 7;
+
+    // Null when entries are only kept in memory
+    private final File directory;
+    // Null when entries are kept on disk. Files that use the environment
+    // can have one entry for each set of values they have been parsed with
+    private final Map<String, List<CachedFile>> memory;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    public ParseCache(File directory) throws IOException {
+        this.directory = directory;
+        this.memory = null;
+        Files.createDirectories(directory.toPath());
+    }
+
+    /**
+     * Create a cache that is only kept in memory, for parsing the same tree
+     * several times in one run with different environments. Each lookup
+     * returns a fresh copy of the stored entries, which only works if every
+     * parse uses the same symbol table.
+     */
+    public ParseCache() {
+        this.directory = null;
+        this.memory = new ConcurrentHashMap<>();
+    }
+
+    public int getHits() {
+        return hits.get();
+    }
+
+    public int getMisses() {
+        return misses.get();
+    }
+
+    static byte[] hash(byte[] data) {
+        try {
+            return MessageDigest.getInstance(DIGEST).digest(data);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(DIGEST + " not available", ex);
+        }
+    }
+
+    private static String toHex(byte[] b) {
+        StringBuilder result = new StringBuilder();
+        for (byte x : b) {
+            result.append(String.format("%02x", x & 0xff));
+        }
+        return result.toString();
+    }
+
+    private File cacheFile(String target) {
+        return new File(directory, toHex(hash(target.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    /**
+     * Look for a stored copy of a file.
+     *
+     * @param target source path
+     * @param session where to read the file, and the table to intern the
+     * symbols of a stored copy into
+     * @param environment current environment
+     * @return the result, with the file contents if they had to be read
+     * @throws IOException if the file can't be read
+     */
+    Lookup load(String target, ParseSession session, Environment environment) throws IOException {
+        SymbolTable symbols = session.getSymbolTable();
+        Lookup result = new Lookup(session.getTree().lastModified(target), session.getTree().size(target));
+        CachedFile cached = directory != null ? read(target, symbols) : find(target, environment, symbols);
+
+        if (cached != null && (cached.modified != result.modified || cached.size != result.size)) {
+            result.data = session.read(target);
+            result.hash = hash(result.data);
+            if (!Arrays.equals(cached.hash, result.hash)) {
+                cached = null;
+            }
+        }
+
+        if (cached != null && !matches(cached, environment)) {
+            cached = null;
+        }
+
+        if (cached != null) {
+            hits.incrementAndGet();
+            session.skip(target);
+            // Entries get changed when they are spliced into the tree, so
+            // never hand out the ones in memory
+            result.cached = directory != null ? cached : cached.copy();
+        } else {
+            misses.incrementAndGet();
+            if (result.data == null) {
+                result.data = session.read(target);
+                result.hash = hash(result.data);
+            }
+        }
+        return result;
+    }
+
+    private static boolean matches(CachedFile cached, Environment environment) {
+        for (Map.Entry<String, String> e : cached.environment.entrySet()) {
+            if (!Objects.equals(environment.get(e.getKey()), e.getValue())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private CachedFile find(String target, Environment environment, SymbolTable symbols) {
+        List<CachedFile> stored = memory.get(target);
+        if (stored != null) {
+            synchronized (stored) {
+                for (CachedFile cached : stored) {
+                    if (cached.symbols == symbols && matches(cached, environment)) {
+                        return cached;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private CachedFile read(String target, SymbolTable symbols) {
+        File f = cacheFile(target);
+        if (!f.exists()) {
+            return null;
+        }
+        try (InputStream raw = Files.newInputStream(f.toPath());
+                ObjectInputStream in = new SymbolInputStream(new BufferedInputStream(raw), symbols)) {
+            if (in.readInt() != VERSION) {
+                return null;
+            }
+            CachedFile cached = (CachedFile) in.readObject();
+            if (!target.equals(cached.target)) {
+                return null;
+            }
+            // Every entry in a stored file came from that file
+            FileTable files = symbols.getFileTable();
+            cached.fragment.setFile(files, files.intern(target));
+            return cached;
+        } catch (IOException | ClassNotFoundException | ClassCastException ex) {
+            log.debug("Ignoring unreadable cache entry for {}: {}", target, ex.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Save a freshly parsed file. Must be called before anything is spliced
+     * into the fragment.
+     */
+    void store(String target, Lookup lookup, Map<String, String> environment, Menu fragment, List<SourceEdge> edges, SymbolTable symbols) {
+        CachedFile cached = new CachedFile(target, lookup.modified, lookup.size, lookup.hash, environment, fragment, edges);
+        if (memory != null) {
+            cached = cached.copy();
+            cached.symbols = symbols;
+            List<CachedFile> stored = memory.computeIfAbsent(target, k -> new ArrayList<>());
+            synchronized (stored) {
+                // Anything with the same values must be out of date
+                stored.removeIf(c -> c.environment.equals(environment));
+                stored.add(cached);
+            }
+            return;
+        }
+        Path dest = cacheFile(target).toPath();
+        try {
+            Path temp = Files.createTempFile(directory.toPath(), "entry", ".tmp");
+            try (OutputStream raw = Files.newOutputStream(temp);
+                    ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(raw))) {
+                out.writeInt(VERSION);
+                out.writeObject(cached);
+            }
+            Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException ex) {
+            log.warn("Can't write cache entry for {}: {}", target, ex.toString());
+        }
+    }
+
+    /**
+     * Symbols and expressions in a stored file belong to whatever table was
+     * used when it was written, so swap each one for the matching one from
+     * the current table.
+     */
+    private static class SymbolInputStream extends ObjectInputStream {
+
+        private final SymbolTable symbols;
+
+        SymbolInputStream(InputStream in, SymbolTable symbols) throws IOException {
+            super(in);
+            this.symbols = symbols;
+            enableResolveObject(true);
+        }
+
+        @Override
+        protected Object resolveObject(Object obj) throws IOException {
+            if (obj instanceof Symbol) {
+                return symbols.intern(((Symbol) obj).getName());
+            }
+            if (obj instanceof Expr) {
+                // Children are read (and resolved) before their parents
+                return symbols.getExprFactory().intern((Expr) obj);
+            }
+            return obj;
+        }
+    }
+
+    static class Lookup {
+
+        final long modified;
+        final long size;
+        byte[] data;
+        byte[] hash;
+        CachedFile cached;
+
+        Lookup(long modified, long size) {
+            this.modified = modified;
+            this.size = size;
+        }
+    }
+
+    static class CachedFile implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        final String target;
+        final long modified;
+        final long size;
+        final byte[] hash;
+        final Map<String, String> environment;
+        final Menu fragment;
+        final List<SourceEdge> edges;
+        // Memory only: the table the symbols in the entries belong to
+        transient SymbolTable symbols;
+
+        CachedFile(String target, long modified, long size, byte[] hash, Map<String, String> environment, Menu fragment, List<SourceEdge> edges) {
+            this.target = target;
+            this.modified = modified;
+            this.size = size;
+            this.hash = hash;
+            this.environment = environment;
+            this.fragment = fragment;
+            this.edges = edges;
+        }
+
+        /**
+         * @return a copy with its own entries and edges, as they were
+         * before anything was spliced in
+         */
+        CachedFile copy() {
+            Map<Entry, Entry> copies = new IdentityHashMap<>();
+            Menu copied = fragment.copy(copies);
+            List<SourceEdge> copiedEdges = new ArrayList<>(edges.size());
+            for (SourceEdge edge : edges) {
+                copiedEdges.add(edge.copy((Container) copies.get((Entry) edge.host)));
+            }
+            CachedFile result = new CachedFile(target, modified, size, hash, environment, copied, copiedEdges);
+            result.symbols = symbols;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.types.Choice;
+import com.moosemorals.configparser.types.Comment;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Menu;
+
+/**
+ * Told about each part of the tree as soon as it has been parsed, see
+ * {@link MenuParser#parse(String, ParseListener)}.
+ *
+ * Menus and choices are passed to start once their own properties have been
+ * read, but before any of their entries, and are never given any entries.
+ * Configs and comments are complete, including the depends from enclosing
+ * 'if' blocks. Nothing is kept once it has been passed on, so a listener
+ * that wants the tree has to build it.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public interface ParseListener {
+
+    void startMenu(Menu menu);
+
+    void endMenu(Menu menu);
+
+    void startChoice(Choice choice);
+
+    void endChoice(Choice choice);
+
+    void config(Config config);
+
+    void comment(Comment comment);
+
+}
@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.SourceFile;
+import com.moosemorals.configparser.events.Events;
+import com.moosemorals.configparser.metrics.ParseMetrics;
+import com.moosemorals.configparser.sources.DirectoryTree;
+import com.moosemorals.configparser.sources.SourceTree;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Everything one parse needs: where the files are, the environment, the
+ * symbol table, and optionally a pool, a cache and somewhere to put
+ * metrics.
+ *
+ * Nothing is shared between sessions, so any number of them can parse at
+ * the same time on different threads. Each call to parse gets its own
+ * parsers, with their own file and if stacks, so a session can also run
+ * several parses at once; they share the symbol table, cache and metrics,
+ * which are all safe for that.
+ *
+ * This replaces the root set with {@link SourceFile#setRoot}, which only
+ * the deprecated parser constructors still use.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ParseSession {
+
+    private final SourceTree tree;
+    private final Environment environment;
+    private final SymbolTable symbols;
+    private ForkJoinPool pool;
+    private ParseCache cache;
+    private ParseMetrics metrics;
+    private Prefetcher prefetcher;
+    private boolean fragments;
+
+    /**
+     * @param root folder that source paths are relative to
+     * @param environment
+     */
+    public ParseSession(File root, Environment environment) {
+        this(root, environment, new SymbolTable());
+    }
+
+    /**
+     * @param root folder that source paths are relative to
+     * @param environment
+     * @param symbols table to intern symbols into, which may be shared with
+     * other sessions
+     */
+    public ParseSession(File root, Environment environment, SymbolTable symbols) {
+        this(new DirectoryTree(root), environment, symbols);
+    }
+
+    /**
+     * @param tree where to read files from, which may be an archive
+     * @param environment
+     * @param symbols table to intern symbols into, which may be shared with
+     * other sessions
+     */
+    public ParseSession(SourceTree tree, Environment environment, SymbolTable symbols) {
+        this.tree = tree;
+        this.environment = environment;
+        this.symbols = symbols;
+    }
+
+    /**
+     * @return the folder, or archive, that source paths are relative to
+     */
+    public File getRoot() {
+        return tree.getRoot();
+    }
+
+    public SourceTree getTree() {
+        return tree;
+    }
+
+    public Environment getEnvironment() {
+        return environment;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Parse each sourced file as a separate task in a pool.
+     *
+     * @param pool pool to run tasks in, or null to run them in the calling
+     * thread
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        this.fragments = true;
+    }
+
+    public ForkJoinPool getPool() {
+        return pool;
+    }
+
+    /**
+     * Reuse results from earlier parses for files that haven't changed.
+     * Sourced files are parsed separately, as with {@link #setPool}.
+     *
+     * @param cache
+     */
+    public void setCache(ParseCache cache) {
+        this.cache = cache;
+        this.fragments = true;
+    }
+
+    public ParseCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param metrics where to put measurements of each file, or null to
+     * stop measuring
+     */
+    public void setMetrics(ParseMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public ParseMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Read sourced files ahead of the parser.
+     *
+     * @param prefetcher for the same root and environment as this session,
+     * or null to read each file when it is wanted
+     */
+    public void setPrefetcher(Prefetcher prefetcher) {
+        this.prefetcher = prefetcher;
+    }
+
+    public Prefetcher getPrefetcher() {
+        return prefetcher;
+    }
+
+    /**
+     * @return true if sourced files are parsed separately and spliced
+     * together, false if they are read inline
+     */
+    public boolean isFragments() {
+        return fragments;
+    }
+
+    /**
+     * @param target path relative to the root
+     * @return the file, ready to parse
+     * @throws IOException
+     */
+    public SourceFile open(String target) throws IOException {
+        Object event = Events.begin(Events.Kind.FILE);
+        SourceFile t = new SourceFile(target, read(target), symbols);
+        t.setEvent(event);
+        return t;
+    }
+
+    /**
+     * @param target path relative to the root
+     * @return the contents of the file
+     * @throws IOException
+     */
+    public byte[] read(String target) throws IOException {
+        return prefetcher != null ? prefetcher.read(target) : tree.read(target);
+    }
+
+    /**
+     * A file won't be read after all, because its results are already known.
+     *
+     * @param target path relative to the root
+     */
+    void skip(String target) {
+        if (prefetcher != null) {
+            prefetcher.skip(target);
+        }
+    }
+
+    /**
+     * Parse a tree.
+     *
+     * @param target top level file
+     * @return the top level menu
+     * @throws IOException
+     */
+    public Menu parse(String target) throws IOException {
+        return new MenuParser(environment, this, fragments ? new ArrayList<>() : null).parse(target);
+    }
+
+    /**
+     * Parse a tree without keeping it. Sourced files are always read inline,
+     * whatever the pool and cache.
+     *
+     * @param target top level file
+     * @param listener
+     * @throws IOException
+     * @see MenuParser#parse(String, ParseListener)
+     */
+    public void parse(String target, ParseListener listener) throws IOException {
+        new MenuParser(environment, this, null).parse(target, listener);
+    }
+
+}
@@ -0,0 +1,339 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.sources.DirectoryTree;
+import com.moosemorals.configparser.sources.SourceTree;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Read sourced files before the parser gets to them.
+ *
+ * Whenever a file is read it is scanned for 'source' lines, which is much
+ * quicker than parsing it, and each file named is read on a pool of I/O
+ * threads. Those files are scanned in turn, so reading runs ahead of the
+ * parser through the whole tree and the parser only waits for a file if it
+ * gets there before the read has finished.
+ *
+ * The scan doesn't know about help text or anything else, so now and then it
+ * reads a file that is never sourced. That costs a read, but nothing is
+ * parsed that shouldn't be.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class Prefetcher implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(Prefetcher.class);
+
+    private static final byte[] SOURCE = "source".getBytes(StandardCharsets.US_ASCII);
+    private static final Pattern VARIABLE = Pattern.compile("\\$([A-Za-z_]+)");
+
+    // Stands in for a file that has been handed over, so it isn't read again
+    private static final CompletableFuture<byte[]> TAKEN = CompletableFuture.completedFuture(null);
+
+    private final SourceTree tree;
+    private final Environment environment;
+    private final ExecutorService io;
+    private final boolean ownPool;
+    private final ConcurrentMap<String, CompletableFuture<byte[]>> files = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger waits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    /**
+     * @param root folder that source paths are relative to
+     * @param environment used to expand variables in source paths
+     * @param threads number of files to read at once
+     */
+    public Prefetcher(File root, Environment environment, int threads) {
+        this(new DirectoryTree(root), environment, threads);
+    }
+
+    /**
+     * @param tree where to read files from
+     * @param environment used to expand variables in source paths
+     * @param threads number of files to read at once
+     */
+    public Prefetcher(SourceTree tree, Environment environment, int threads) {
+        this(tree, environment, Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "prefetch");
+            t.setDaemon(true);
+            return t;
+        }), true);
+    }
+
+    /**
+     * @param root folder that source paths are relative to
+     * @param environment used to expand variables in source paths
+     * @param io where to read files. It is left running on close
+     */
+    public Prefetcher(File root, Environment environment, ExecutorService io) {
+        this(new DirectoryTree(root), environment, io, false);
+    }
+
+    private Prefetcher(SourceTree tree, Environment environment, ExecutorService io, boolean ownPool) {
+        this.tree = tree;
+        this.environment = environment;
+        this.io = io;
+        this.ownPool = ownPool;
+    }
+
+    /**
+     * @return the number of files that had been read by the time they were
+     * wanted
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of files that were still being read when they were
+     * wanted
+     */
+    public int getWaits() {
+        return waits.get();
+    }
+
+    /**
+     * @return the number of files that had to be read when they were wanted
+     */
+    public int getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Get the contents of a file, reading it now if it hasn't already been
+     * read. Either way, the files it sources start being read.
+     *
+     * @param target path relative to the root
+     * @return the contents of the file
+     * @throws IOException if the file can't be read
+     */
+    public byte[] read(String target) throws IOException {
+        CompletableFuture<byte[]> ahead = files.put(target, TAKEN);
+        if (ahead != null && ahead != TAKEN) {
+            (ahead.isDone() ? hits : waits).incrementAndGet();
+            byte[] data = get(ahead);
+            if (data != null) {
+                return data;
+            }
+        } else {
+            misses.incrementAndGet();
+        }
+        byte[] data = tree.read(target);
+        scan(data);
+        return data;
+    }
+
+    /**
+     * A file won't be wanted after all, so drop it if it has been read.
+     *
+     * @param target path relative to the root
+     */
+    public void skip(String target) {
+        files.put(target, TAKEN);
+    }
+
+    private static byte[] get(CompletableFuture<byte[]> ahead) throws IOException {
+        try {
+            return ahead.get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Start reading a file, unless it has already been read or started.
+     *
+     * @param target path relative to the root
+     */
+    void prefetch(String target) {
+        if (closed) {
+            return;
+        }
+        CompletableFuture<byte[]> ahead = new CompletableFuture<>();
+        if (files.putIfAbsent(target, ahead) != null) {
+            return;
+        }
+        try {
+            io.execute(() -> fetch(target, ahead));
+        } catch (RejectedExecutionException ex) {
+            // Closed while starting, so whoever wants it can read it
+            ahead.complete(null);
+        }
+    }
+
+    private void fetch(String target, CompletableFuture<byte[]> ahead) {
+        if (closed) {
+            ahead.complete(null);
+            return;
+        }
+        byte[] data;
+        try {
+            data = tree.read(target);
+        } catch (IOException ex) {
+            ahead.completeExceptionally(new UncheckedIOException(ex));
+            return;
+        }
+        // Scan first, so the parser can't get to a source line before the
+        // file it names has been started
+        scan(data);
+        ahead.complete(data);
+    }
+
+    /**
+     * Find the 'source' lines in a file and start reading the files they
+     * name.
+     *
+     * @param data contents of a file
+     */
+    void scan(byte[] data) {
+        for (String target : sources(data)) {
+            prefetch(target);
+        }
+    }
+
+    /**
+     * Find the targets of the 'source' lines in a file, with variables
+     * expanded the way the parser does. Targets that still have a variable in
+     * them are left out.
+     *
+     * @param data contents of a file
+     * @return
+     */
+    List<String> sources(byte[] data) {
+        List<String> result = new ArrayList<>();
+        int i = 0;
+        while (i < data.length) {
+            while (i < data.length && (data[i] == ' ' || data[i] == '\t')) {
+                i += 1;
+            }
+            if (startsWith(data, i, SOURCE) && i + SOURCE.length < data.length && (data[i + SOURCE.length] == ' ' || data[i + SOURCE.length] == '\t')) {
+                i += SOURCE.length;
+                while (i < data.length && (data[i] == ' ' || data[i] == '\t')) {
+                    i += 1;
+                }
+                String target = null;
+                if (i < data.length && (data[i] == '"' || data[i] == '\'')) {
+                    byte quote = data[i];
+                    int start = i + 1;
+                    int end = start;
+                    while (end < data.length && data[end] != quote && data[end] != '\n') {
+                        end += 1;
+                    }
+                    if (end < data.length && data[end] == quote) {
+                        target = expand(new String(data, start, end - start, StandardCharsets.UTF_8));
+                    }
+                    i = end;
+                } else {
+                    int start = i;
+                    while (i < data.length && data[i] > ' ' && data[i] != '#') {
+                        i += 1;
+                    }
+                    if (i > start) {
+                        target = new String(data, start, i - start, StandardCharsets.UTF_8);
+                    }
+                }
+                if (target != null && !target.isEmpty() && target.indexOf('$') < 0) {
+                    result.add(target);
+                }
+            }
+            while (i < data.length && data[i] != '\n') {
+                i += 1;
+            }
+            i += 1;
+        }
+        return result;
+    }
+
+    private static boolean startsWith(byte[] data, int offset, byte[] prefix) {
+        if (offset + prefix.length > data.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i += 1) {
+            if (data[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@link MenuParser#replaceSymbols}.
+     */
+    private String expand(String original) {
+        Matcher m = VARIABLE.matcher(original);
+        StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            String symbol = m.group(1);
+            if (environment.contains(symbol)) {
+                m.appendReplacement(sb, environment.get(symbol));
+            }
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+
+    /**
+     * Stop reading ahead and drop anything that hasn't been used.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (ownPool) {
+            io.shutdownNow();
+        }
+        files.clear();
+        log.debug("Read ahead {} files, waited for {}, missed {}", hits.get(), waits.get(), misses.get());
+    }
+
+}
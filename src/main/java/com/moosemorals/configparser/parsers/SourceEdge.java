@@ -0,0 +1,69 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Container;
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Records where a 'source' directive appeared in a file that is being parsed
+ * as a fragment, so that the sourced entries can be spliced in later.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+class SourceEdge implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    final Container host;
+    final int index;
+    final String target;
+    final List<Condition> conditions;
+    // Line of the source directive
+    final int line;
+    transient SourceTask task;
+    // Filled in when the edge is spliced
+    transient SourceNode owner;
+    transient SourceNode child;
+    transient int spliced;
+
+    SourceEdge(Container host, int index, String target, List<Condition> conditions, int line) {
+        this.host = host;
+        this.index = index;
+        this.target = target;
+        this.conditions = conditions;
+        this.line = line;
+    }
+
+    /**
+     * @param host the copy of this edge's host
+     * @return a copy of the edge, before it was spliced
+     */
+    SourceEdge copy(Container host) {
+        return new SourceEdge(host, index, target, conditions, line);
+    }
+
+}
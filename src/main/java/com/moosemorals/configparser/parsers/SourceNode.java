@@ -0,0 +1,52 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.types.Menu;
+import java.util.List;
+
+/**
+ * One parsed file in a fragment mode parse. The same file sourced from two
+ * places gives two nodes.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+class SourceNode {
+
+    final String target;
+    // Top level entries of the file. Only part of the tree for the top
+    // level file, the rest are copied into the file that sourced them
+    final Menu fragment;
+    final List<SourceEdge> edges;
+    // Edge this file was sourced from, null for the top level file
+    final SourceEdge parent;
+
+    SourceNode(String target, Menu fragment, List<SourceEdge> edges, SourceEdge parent) {
+        this.target = target;
+        this.fragment = fragment;
+        this.edges = edges;
+        this.parent = parent;
+    }
+
+}
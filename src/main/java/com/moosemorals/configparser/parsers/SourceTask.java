@@ -0,0 +1,201 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.parsers;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.SourceFile;
+import com.moosemorals.configparser.events.Events;
+import com.moosemorals.configparser.metrics.FileMetrics;
+import com.moosemorals.configparser.metrics.ParseMetrics;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parse one file, and (recursively) everything it sources, as a separate
+ * task.
+ *
+ * The file is parsed with an empty if stack and any 'source' directives are
+ * recorded as {@link SourceEdge}s and forked. Once the file is done each
+ * edge is joined in turn and its entries are inserted at the position the
+ * directive appeared, with the conditions that were on the if stack at the
+ * time. This gives the same entries, in the same order, with the same
+ * depends as reading the files inline.
+ *
+ * If there is a {@link ParseCache} the file is looked up there first, and
+ * stored there after parsing but before anything is spliced in.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+class SourceTask extends RecursiveTask<Menu> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(SourceTask.class);
+
+    private final String target;
+    private final Environment environment;
+    private final ParseSession session;
+    private final SymbolTable symbols;
+    private final ForkJoinPool pool;
+    private final ParseCache cache;
+    private final ParseMetrics metrics;
+    private final boolean topLevel;
+    private final SourceEdge parent;
+    private SourceNode node;
+
+    SourceTask(String target, Environment environment, ParseSession session, boolean topLevel) {
+        this(target, environment, session, topLevel, null);
+    }
+
+    SourceTask(String target, Environment environment, ParseSession session, boolean topLevel, SourceEdge parent) {
+        this.target = target;
+        this.environment = environment;
+        this.session = session;
+        this.symbols = session.getSymbolTable();
+        this.pool = session.getPool();
+        this.cache = session.getCache();
+        this.metrics = session.getMetrics();
+        this.topLevel = topLevel;
+        this.parent = parent;
+    }
+
+    /**
+     * @return the file that was parsed, or null if it didn't exist
+     */
+    SourceNode getNode() {
+        return node;
+    }
+
+    @Override
+    protected Menu compute() {
+        Menu fragment;
+        List<SourceEdge> edges;
+        FileMetrics measured = metrics != null ? metrics.start(target) : null;
+        try {
+            if (cache != null) {
+                if (!session.getTree().exists(target)) {
+                    return missing();
+                }
+                ParseCache.Lookup lookup = cache.load(target, session, environment);
+                if (lookup.cached != null) {
+                    fragment = lookup.cached.fragment;
+                    edges = lookup.cached.edges;
+                    if (measured != null) {
+                        measured.opened(lookup.size);
+                        measured.cached(edges.size());
+                    }
+                } else {
+                    Set<String> used = new HashSet<>();
+                    edges = new ArrayList<>();
+                    // Already read by the cache, so the event only covers parsing
+                    Object event = Events.begin(Events.Kind.FILE);
+                    SourceFile t = new SourceFile(target, lookup.data, symbols);
+                    t.setEvent(event);
+                    fragment = new MenuParser(environment.recordUsage(used), session, edges).parseFragment(measure(t, measured));
+
+                    Map<String, String> values = new HashMap<>();
+                    for (String key : used) {
+                        values.put(key, environment.get(key));
+                    }
+                    cache.store(target, lookup, values, fragment, edges, symbols);
+                }
+            } else {
+                edges = new ArrayList<>();
+                fragment = new MenuParser(environment, session, edges).parseFragment(measure(session.open(target), measured));
+            }
+        } catch (FileNotFoundException ex) {
+            return missing();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+
+        node = new SourceNode(target, fragment, edges, parent);
+        splice(edges);
+        return fragment;
+    }
+
+    private static SourceFile measure(SourceFile t, FileMetrics file) {
+        if (file != null) {
+            t.setMetrics(file);
+        }
+        return t;
+    }
+
+    private Menu missing() {
+        if (metrics != null) {
+            metrics.missing();
+        }
+        if (topLevel) {
+            throw new UncheckedIOException(new IOException("Can't find top level file " + target));
+        }
+        // Logged against the edge when it is joined
+        return null;
+    }
+
+    private void splice(List<SourceEdge> edges) {
+        for (SourceEdge edge : edges) {
+            edge.owner = node;
+            edge.task = new SourceTask(edge.target, environment, session, false, edge);
+            if (pool != null) {
+                edge.task.fork();
+            }
+        }
+
+        // Work backwards so earlier insert positions are still valid. Tasks
+        // that were never forked are run here instead
+        for (int i = edges.size() - 1; i >= 0; i -= 1) {
+            SourceEdge edge = edges.get(i);
+            Menu child = pool != null ? edge.task.join() : edge.task.invoke();
+            if (child == null) {
+                log.warn("at {}: {}: Can't find source {}, skipping", target, edge.line, edge.target);
+                edge.spliced = 0;
+                edge.task = null;
+                continue;
+            }
+            List<Entry> entries = child.getEntries();
+            for (Entry e : entries) {
+                MenuParser.applyConditions(e, edge.conditions);
+            }
+            edge.host.addEntries(edge.index, entries);
+            edge.child = edge.task.getNode();
+            edge.spliced = entries.size();
+            edge.task = null;
+        }
+    }
+
+}
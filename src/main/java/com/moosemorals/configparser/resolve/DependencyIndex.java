@@ -0,0 +1,386 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.resolve;
+
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import com.moosemorals.configparser.values.ConditionalValue;
+import com.moosemorals.configparser.values.Default;
+import com.moosemorals.configparser.values.Imply;
+import com.moosemorals.configparser.values.Range;
+import com.moosemorals.configparser.values.Select;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Who defines, selects, implies and depends on each symbol.
+ *
+ * Built in one pass over a parsed tree. Edges go from the symbol of the
+ * entry that holds the select, depends or whatever, to the symbol it
+ * mentions. For each kind of edge there are forward and reverse indexes in
+ * compressed sparse row form (an offset array indexed by symbol id into one
+ * array of neighbour ids) so looking up the neighbours of a symbol takes time
+ * in proportion to how many there are.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class DependencyIndex {
+
+    private static final Logger log = LoggerFactory.getLogger(DependencyIndex.class);
+
+    public enum Kind {
+        /** 'select' */
+        SELECT,
+        /** 'imply' */
+        IMPLY,
+        /** 'depends on', including enclosing 'if' blocks */
+        DEPENDS,
+        /** Any other mention: defaults, ranges, and the conditions on
+         * selects and implies */
+        REFERENCE
+    }
+
+    /**
+     * A mention of a symbol from an entry.
+     */
+    public static class Reference {
+
+        private final Symbol symbol;
+        private final Entry entry;
+        private final Kind kind;
+
+        Reference(Symbol symbol, Entry entry, Kind kind) {
+            this.symbol = symbol;
+            this.entry = entry;
+            this.kind = kind;
+        }
+
+        public Symbol getSymbol() {
+            return symbol;
+        }
+
+        public Entry getEntry() {
+            return entry;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %s %s", entry.getLocation(), kind.name().toLowerCase(Locale.ROOT), symbol);
+        }
+    }
+
+    private final SymbolTable symbols;
+    private final int size;
+
+    private final int[] defStart;
+    private final Entry[] defs;
+
+    private final int[][] forwardStart = new int[Kind.values().length][];
+    private final int[][] forward = new int[Kind.values().length][];
+    private final int[][] reverseStart = new int[Kind.values().length][];
+    private final int[][] reverse = new int[Kind.values().length][];
+
+    private final List<Reference> dangling = new ArrayList<>();
+
+    // Only used while building
+    private final List<Entry> defined = new ArrayList<>();
+    private final long[][] edges = new long[Kind.values().length][];
+    private final int[] edgeCount = new int[Kind.values().length];
+    private final Map<Symbol, Reference> firstUse = new LinkedHashMap<>();
+
+    public DependencyIndex(Container top, SymbolTable symbols) {
+        this.symbols = symbols;
+        for (int k = 0; k < edges.length; k += 1) {
+            edges[k] = new long[256];
+        }
+
+        walk(top, Collections.emptyList());
+        this.size = symbols.size();
+
+        // Definitions, grouped by symbol id
+        defStart = new int[size + 1];
+        for (Entry e : defined) {
+            defStart[e.getSymbol().getId() + 1] += 1;
+        }
+        for (int i = 0; i < size; i += 1) {
+            defStart[i + 1] += defStart[i];
+        }
+        defs = new Entry[defined.size()];
+        int[] fill = Arrays.copyOf(defStart, size);
+        for (Entry e : defined) {
+            defs[fill[e.getSymbol().getId()]++] = e;
+        }
+
+        for (Kind kind : Kind.values()) {
+            int k = kind.ordinal();
+            long[] list = Arrays.copyOf(edges[k], edgeCount[k]);
+            forwardStart[k] = new int[size + 1];
+            forward[k] = build(list, forwardStart[k], false);
+            reverseStart[k] = new int[size + 1];
+            reverse[k] = build(list, reverseStart[k], true);
+        }
+
+        for (Reference r : firstUse.values()) {
+            if (!isDefined(r.getSymbol()) && !isConstant(r.getSymbol())) {
+                dangling.add(r);
+            }
+        }
+        if (!dangling.isEmpty()) {
+            log.info("{} symbols are used but never defined", dangling.size());
+        }
+
+        defined.clear();
+        firstUse.clear();
+        Arrays.fill(edges, null);
+    }
+
+    /**
+     * Turn a list of (from, to) pairs into CSR form, dropping duplicates.
+     */
+    private int[] build(long[] list, int[] start, boolean flip) {
+        long[] sorted = new long[list.length];
+        for (int i = 0; i < list.length; i += 1) {
+            sorted[i] = flip ? (list[i] << 32) | (list[i] >>> 32) : list[i];
+        }
+        Arrays.sort(sorted);
+
+        int[] adj = new int[sorted.length];
+        int count = 0;
+        for (int i = 0; i < sorted.length; i += 1) {
+            if (i > 0 && sorted[i] == sorted[i - 1]) {
+                continue;
+            }
+            start[(int) (sorted[i] >>> 32) + 1] += 1;
+            adj[count++] = (int) sorted[i];
+        }
+        for (int i = 0; i < size; i += 1) {
+            start[i + 1] += start[i];
+        }
+        return Arrays.copyOf(adj, count);
+    }
+
+    /**
+     * @param inherited 'depends on' and 'visible if' conditions from the
+     * menus and unnamed choices around the container, which the parser
+     * doesn't copy onto the entries inside them
+     */
+    private void walk(Container container, List<Expr> inherited) {
+        for (Entry e : container.getEntries()) {
+            // Entries without a symbol don't make edges, but the symbols
+            // they mention are still checked for being defined
+            Symbol from = e.getSymbol();
+            if (from != null) {
+                defined.add(e);
+            }
+            for (Expr x : inherited) {
+                add(from, e, x, Kind.DEPENDS);
+            }
+            for (Condition c : e.getDepends()) {
+                add(from, e, c.getExpr(), Kind.DEPENDS);
+            }
+            for (Default d : e.getDefaults()) {
+                add(from, e, d.getExpr(), Kind.REFERENCE);
+                add(from, e, d, Kind.REFERENCE);
+            }
+            Condition visible = e instanceof Menu ? ((Menu) e).getVisibleIf() : null;
+            if (visible != null) {
+                add(from, e, visible.getExpr(), Kind.DEPENDS);
+            }
+            if (e instanceof Config) {
+                Config c = (Config) e;
+                for (Select s : c.getSelects()) {
+                    add(from, e, s.getSymbol(), Kind.SELECT);
+                    add(from, e, s, Kind.REFERENCE);
+                }
+                for (Imply i : c.getImplies()) {
+                    add(from, e, i.getSymbol(), Kind.IMPLY);
+                    add(from, e, i, Kind.REFERENCE);
+                }
+                for (Range r : c.getRanges()) {
+                    add(from, e, symbols.intern(r.getValue()), Kind.REFERENCE);
+                    add(from, e, symbols.intern(r.getValue2()), Kind.REFERENCE);
+                    add(from, e, r, Kind.REFERENCE);
+                }
+            }
+            if (e instanceof Container) {
+                List<Expr> inner = inherited;
+                if (from == null && (!e.getDepends().isEmpty() || visible != null)) {
+                    inner = new ArrayList<>(inherited);
+                    for (Condition c : e.getDepends()) {
+                        inner.add(c.getExpr());
+                    }
+                    if (visible != null) {
+                        inner.add(visible.getExpr());
+                    }
+                }
+                walk((Container) e, inner);
+            }
+        }
+    }
+
+    private void add(Symbol from, Entry e, ConditionalValue v, Kind kind) {
+        if (v.getCondition() != null) {
+            add(from, e, v.getCondition().getExpr(), kind);
+        }
+    }
+
+    private void add(Symbol from, Entry e, Expr expr, Kind kind) {
+        switch (expr.getType()) {
+            case SYMBOL:
+                add(from, e, expr.getSymbol(), kind);
+                break;
+            case STRING:
+                break;
+            default:
+                add(from, e, expr.getLeft(), kind);
+                if (expr.getRight() != null) {
+                    add(from, e, expr.getRight(), kind);
+                }
+                break;
+        }
+    }
+
+    private void add(Symbol from, Entry e, Symbol to, Kind kind) {
+        firstUse.putIfAbsent(to, new Reference(to, e, kind));
+        if (from == null) {
+            return;
+        }
+        int k = kind.ordinal();
+        if (edgeCount[k] == edges[k].length) {
+            edges[k] = Arrays.copyOf(edges[k], edges[k].length * 2);
+        }
+        edges[k][edgeCount[k]++] = ((long) from.getId() << 32) | to.getId();
+    }
+
+    /**
+     * @param s
+     * @return true for y, m, n and numbers, which don't need defining
+     */
+    public static boolean isConstant(Symbol s) {
+        String name = s.getName();
+        switch (name) {
+            case "y":
+            case "m":
+            case "n":
+                return true;
+            default:
+                return name.matches("-?[0-9]+|0[xX][0-9a-fA-F]+");
+        }
+    }
+
+    private List<Symbol> symbols(int[] adj, int from, int to) {
+        List<Symbol> result = new ArrayList<>(to - from);
+        for (int i = from; i < to; i += 1) {
+            result.add(symbols.get(adj[i]));
+        }
+        return result;
+    }
+
+    /**
+     * @param s
+     * @return every entry that defines the symbol, in tree order
+     */
+    public List<Entry> getDefinitions(Symbol s) {
+        int id = s.getId();
+        if (id >= size) {
+            return Collections.emptyList();
+        }
+        return Arrays.asList(defs).subList(defStart[id], defStart[id + 1]);
+    }
+
+    public boolean isDefined(Symbol s) {
+        int id = s.getId();
+        return id < size && defStart[id] != defStart[id + 1];
+    }
+
+    /**
+     * @param kind
+     * @param s
+     * @return the symbols that s selects, depends on, or whatever
+     */
+    public List<Symbol> getForward(Kind kind, Symbol s) {
+        int id = s.getId();
+        if (id >= size) {
+            return Collections.emptyList();
+        }
+        int[] start = forwardStart[kind.ordinal()];
+        return symbols(forward[kind.ordinal()], start[id], start[id + 1]);
+    }
+
+    /**
+     * @param kind
+     * @param s
+     * @return the symbols that select s, depend on s, or whatever
+     */
+    public List<Symbol> getReverse(Kind kind, Symbol s) {
+        int id = s.getId();
+        if (id >= size) {
+            return Collections.emptyList();
+        }
+        int[] start = reverseStart[kind.ordinal()];
+        return symbols(reverse[kind.ordinal()], start[id], start[id + 1]);
+    }
+
+    /**
+     * @param s
+     * @return symbols that select s
+     */
+    public List<Symbol> getSelectedBy(Symbol s) {
+        return getReverse(Kind.SELECT, s);
+    }
+
+    /**
+     * @param s
+     * @return symbols that depend on s
+     */
+    public List<Symbol> getDependents(Symbol s) {
+        return getReverse(Kind.DEPENDS, s);
+    }
+
+    /**
+     * @return the first use of each symbol that is mentioned but never
+     * defined, not counting constants
+     */
+    public List<Reference> getDangling() {
+        return dangling;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.resolve;
+
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads and formats the lines of a kernel style .config file.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class DotConfig {
+
+    private static final Logger log = LoggerFactory.getLogger(DotConfig.class);
+
+    public static final String PREFIX = "CONFIG_";
+    private static final String NOT_SET = " is not set";
+
+    private DotConfig() {
+    }
+
+    /**
+     * Read the values from a .config file. Symbols that are "not set" have
+     * the value n, quoted strings are unquoted.
+     *
+     * @param in
+     * @param symbols table to intern symbol names into
+     * @return values in file order
+     * @throws IOException
+     */
+    public static Map<Symbol, String> read(Reader in, SymbolTable symbols) throws IOException {
+        Map<Symbol, String> result = new LinkedHashMap<>();
+        BufferedReader lines = new BufferedReader(in);
+        String line;
+        int number = 0;
+        while ((line = lines.readLine()) != null) {
+            number += 1;
+            line = line.trim();
+            if (line.startsWith("# " + PREFIX) && line.endsWith(NOT_SET)) {
+                String name = line.substring(2 + PREFIX.length(), line.length() - NOT_SET.length());
+                result.put(symbols.intern(name), "n");
+            } else if (line.startsWith(PREFIX)) {
+                int equals = line.indexOf('=');
+                if (equals < 0) {
+                    log.warn("line {}: Ignoring '{}'", number, line);
+                    continue;
+                }
+                String name = line.substring(PREFIX.length(), equals);
+                result.put(symbols.intern(name), unquote(line.substring(equals + 1)));
+            }
+        }
+        return result;
+    }
+
+    private static String unquote(String value) {
+        if (value.length() < 2 || value.charAt(0) != '"' || value.charAt(value.length() - 1) != '"') {
+            return value;
+        }
+        StringBuilder result = new StringBuilder();
+        for (int i = 1; i < value.length() - 1; i += 1) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length() - 1) {
+                i += 1;
+                c = value.charAt(i);
+            }
+            result.append(c);
+        }
+        return result.toString();
+    }
+
+    private static String quote(String value) {
+        StringBuilder result = new StringBuilder().append('"');
+        for (int i = 0; i < value.length(); i += 1) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\');
+            }
+            result.append(c);
+        }
+        return result.append('"').toString();
+    }
+
+    /**
+     * @param symbol
+     * @param value y, m, n or some text
+     * @param string true if the value should be quoted
+     * @return the line for this value, without a line ending
+     */
+    public static String format(Symbol symbol, String value, boolean string) {
+        if (!string && "n".equals(value)) {
+            return "# " + PREFIX + symbol.getName() + NOT_SET;
+        }
+        return PREFIX + symbol.getName() + "=" + (string ? quote(value) : value);
+    }
+
+}
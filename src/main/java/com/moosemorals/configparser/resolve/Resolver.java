@@ -0,0 +1,639 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.resolve;
+
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.expr.ExprFactory;
+import com.moosemorals.configparser.expr.SymbolValues;
+import com.moosemorals.configparser.expr.Tristate;
+import com.moosemorals.configparser.types.Choice;
+import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import com.moosemorals.configparser.values.ConditionalValue;
+import com.moosemorals.configparser.values.Default;
+import com.moosemorals.configparser.values.Imply;
+import com.moosemorals.configparser.values.Range;
+import com.moosemorals.configparser.values.Select;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Works out the value of every symbol in a tree from a partial set of user
+ * values, like 'make olddefconfig'.
+ *
+ * The rules for each symbol (its dependencies, prompt visibility, defaults,
+ * and the selects, implies and ranges that affect it) are compiled once into
+ * expressions. Each rule is then evaluated from a worklist, and when a
+ * symbol's value changes only the rules that read that symbol are evaluated
+ * again.
+ *
+ * As with kconfig a user value is only used if the symbol has a visible
+ * prompt, and is limited by that visibility. Otherwise the first default
+ * whose condition holds is used. Implies and then selects raise the value.
+ * Choices get the user's selection, the choice default, or the first
+ * visible entry, in that order.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class Resolver {
+
+    private static final Logger log = LoggerFactory.getLogger(Resolver.class);
+
+    // A rule that changes this many times in one resolve is part of a loop
+    private static final int MAX_UPDATES = 64;
+
+    private final SymbolTable symbols;
+    private final ExprFactory exprs;
+    private final SymbolValues values;
+    private final Expr yes;
+    private final Expr no;
+
+    private final List<Rule> rules = new ArrayList<>();
+    private final List<SymbolRule> order = new ArrayList<>();
+    private SymbolRule[] byId = new SymbolRule[0];
+    private int[][] dependents;
+    private String[] user = new String[0];
+    private final ArrayDeque<Rule> work = new ArrayDeque<>();
+    private Symbol modules;
+    private long updates = 0;
+
+    public Resolver(Menu top, SymbolTable symbols) {
+        this.symbols = symbols;
+        this.exprs = symbols.getExprFactory();
+        this.values = new SymbolValues(symbols);
+        this.yes = exprs.symbol(symbols.intern("y"));
+        this.no = exprs.symbol(symbols.intern("n"));
+
+        values.declareAll(top);
+        compile(top);
+        for (SymbolRule r : order) {
+            r.type = values.getType(r.symbol);
+        }
+        index();
+        log.debug("{} rules for {} symbols", rules.size(), order.size());
+    }
+
+    public SymbolValues getValues() {
+        return values;
+    }
+
+    /**
+     * @return number of rule evaluations so far
+     */
+    public long getUpdates() {
+        return updates;
+    }
+
+    private Expr and(Expr a, Expr b) {
+        if (a == yes || b == no) {
+            return b;
+        } else if (b == yes || a == no) {
+            return a;
+        }
+        return exprs.and(a, b);
+    }
+
+    private Expr or(Expr a, Expr b) {
+        if (a == no || b == yes) {
+            return b;
+        } else if (b == no || a == yes) {
+            return a;
+        }
+        return exprs.or(a, b);
+    }
+
+    private Expr all(List<Condition> conditions) {
+        Expr result = yes;
+        for (Condition c : conditions) {
+            result = and(result, c.getExpr());
+        }
+        return result;
+    }
+
+    private Expr condition(ConditionalValue v) {
+        return v.getCondition() != null ? v.getCondition().getExpr() : yes;
+    }
+
+    private SymbolRule ruleFor(Symbol symbol) {
+        int id = symbol.getId();
+        if (id >= byId.length) {
+            byId = Arrays.copyOf(byId, Math.max(id + 1, byId.length * 2));
+        }
+        if (byId[id] == null) {
+            byId[id] = new SymbolRule(symbol);
+        }
+        return byId[id];
+    }
+
+    private void compile(Container container) {
+        for (Entry e : container.getEntries()) {
+            if (e instanceof Choice) {
+                ChoiceRule choice = new ChoiceRule((Choice) e);
+                for (Entry member : ((Choice) e).getEntries()) {
+                    if (member instanceof Config) {
+                        SymbolRule r = define((Config) member);
+                        r.choice = choice;
+                        choice.members.add(r);
+                    }
+                }
+            } else if (e instanceof Config) {
+                define((Config) e);
+            }
+            if (e instanceof Menu) {
+                compile((Menu) e);
+            }
+        }
+    }
+
+    /**
+     * Add one definition of a symbol to its rule. A symbol can be defined in
+     * more than one place, and is available if any definition is.
+     */
+    private SymbolRule define(Config c) {
+        SymbolRule r = ruleFor(c.getSymbol());
+        if (!r.defined) {
+            r.defined = true;
+            rules.add(r);
+            order.add(r);
+        }
+
+        Expr dep = all(c.getDepends());
+        r.dirDep = or(r.dirDep, dep);
+        if (c.getPrompt() != null) {
+            r.visible = or(r.visible, dep);
+        }
+        for (Default d : c.getDefaults()) {
+            r.defaults.add(new Expr[]{d.getExpr(), and(condition(d), dep)});
+        }
+        for (Range range : c.getRanges()) {
+            r.ranges.add(new Object[]{symbols.intern(range.getValue()), symbols.intern(range.getValue2()), and(condition(range), dep)});
+        }
+        Expr self = exprs.symbol(c.getSymbol());
+        for (Select s : c.getSelects()) {
+            SymbolRule target = ruleFor(s.getSymbol());
+            target.revDep = or(target.revDep, and(self, condition(s)));
+        }
+        for (Imply i : c.getImplies()) {
+            SymbolRule target = ruleFor(i.getSymbol());
+            target.implied = or(target.implied, and(self, condition(i)));
+        }
+        if (c.getOptions().contains("modules")) {
+            modules = c.getSymbol();
+        }
+        return r;
+    }
+
+    /**
+     * Work out which rules read each symbol.
+     */
+    private void index() {
+        List<List<Integer>> readers = new ArrayList<>();
+        for (int i = 0; i < rules.size(); i += 1) {
+            Rule r = rules.get(i);
+            r.index = i;
+            Set<Symbol> inputs = new HashSet<>();
+            Set<Expr> seen = new HashSet<>();
+            for (Expr e : r.inputs()) {
+                collect(e, inputs, seen);
+            }
+            if (modules != null && r instanceof SymbolRule && ((SymbolRule) r).type == SymbolValues.TRISTATE) {
+                inputs.add(modules);
+            }
+            for (Symbol s : inputs) {
+                while (readers.size() <= s.getId()) {
+                    readers.add(null);
+                }
+                if (readers.get(s.getId()) == null) {
+                    readers.set(s.getId(), new ArrayList<>());
+                }
+                readers.get(s.getId()).add(i);
+            }
+        }
+
+        dependents = new int[readers.size()][];
+        for (int id = 0; id < readers.size(); id += 1) {
+            List<Integer> list = readers.get(id);
+            if (list != null) {
+                dependents[id] = list.stream().mapToInt(Integer::intValue).toArray();
+            }
+        }
+    }
+
+    private static void collect(Expr e, Set<Symbol> into, Set<Expr> seen) {
+        if (e == null || !seen.add(e)) {
+            return;
+        }
+        if (e.getType() == Expr.Type.SYMBOL) {
+            into.add(e.getSymbol());
+        }
+        collect(e.getLeft(), into, seen);
+        collect(e.getRight(), into, seen);
+    }
+
+    private void enqueue(Rule r) {
+        if (!r.queued) {
+            r.queued = true;
+            work.add(r);
+        }
+    }
+
+    private void changed(Symbol s) {
+        int id = s.getId();
+        if (id < dependents.length && dependents[id] != null) {
+            for (int i : dependents[id]) {
+                enqueue(rules.get(i));
+            }
+        }
+    }
+
+    private void setTristate(Symbol s, byte v) {
+        if (values.getTristate(s) != v) {
+            values.set(s, v);
+            changed(s);
+        }
+    }
+
+    private void setString(Symbol s, String v) {
+        if (!values.getString(s).equals(v)) {
+            values.set(s, v);
+            changed(s);
+        }
+    }
+
+    private String userValue(Symbol s) {
+        int id = s.getId();
+        return id < user.length ? user[id] : null;
+    }
+
+    private boolean modulesOff() {
+        return modules != null && values.getTristate(modules) == Tristate.N;
+    }
+
+    /**
+     * Use a complete set of user values, for example from a .config file,
+     * and resolve everything.
+     *
+     * @param config symbol values, as text
+     */
+    public void load(Map<Symbol, String> config) {
+        user = new String[symbols.size()];
+        for (Map.Entry<Symbol, String> e : config.entrySet()) {
+            user[e.getKey().getId()] = e.getValue();
+        }
+        rules.forEach(this::enqueue);
+        resolve();
+    }
+
+    /**
+     * Change one user value and update everything that depends on it.
+     *
+     * @param symbol
+     * @param value new value, or null to clear the user value
+     */
+    public void set(Symbol symbol, String value) {
+        int id = symbol.getId();
+        if (id >= user.length) {
+            user = Arrays.copyOf(user, Math.max(id + 1, symbols.size()));
+        }
+        user[id] = value;
+        if (id < byId.length && byId[id] != null && byId[id].defined) {
+            SymbolRule r = byId[id];
+            enqueue(r.choice != null ? r.choice : r);
+        }
+        resolve();
+    }
+
+    private void resolve() {
+        long start = System.nanoTime();
+        long before = updates;
+        while (!work.isEmpty()) {
+            Rule r = work.poll();
+            r.queued = false;
+            r.count += 1;
+            if (r.count > MAX_UPDATES) {
+                if (r.count == MAX_UPDATES + 1) {
+                    log.warn("Giving up on {}, it is part of a dependency loop", r);
+                }
+                continue;
+            }
+            updates += 1;
+            r.update();
+        }
+        for (Rule r : rules) {
+            r.count = 0;
+        }
+        log.debug("Resolved with {} updates in {}us", updates - before, (System.nanoTime() - start) / 1000);
+    }
+
+    /**
+     * Write the resolved values as a .config file. Symbols are written in
+     * tree order; bool and tristate symbols that are n are only written
+     * (as "not set") if they have a visible prompt.
+     *
+     * @param out
+     * @throws IOException
+     */
+    public void write(Writer out) throws IOException {
+        for (SymbolRule r : order) {
+            String line = null;
+            switch (r.type) {
+                case SymbolValues.BOOL:
+                case SymbolValues.TRISTATE:
+                    byte v = values.getTristate(r.symbol);
+                    if (v != Tristate.N || r.vis != Tristate.N) {
+                        line = DotConfig.format(r.symbol, Tristate.toString(v), false);
+                    }
+                    break;
+                case SymbolValues.STRING:
+                case SymbolValues.INT:
+                case SymbolValues.HEX:
+                    String s = values.getString(r.symbol);
+                    if (r.dep != Tristate.N && (r.vis != Tristate.N || !s.isEmpty())) {
+                        line = DotConfig.format(r.symbol, s, r.type == SymbolValues.STRING);
+                    }
+                    break;
+                default:
+                    break;
+            }
+            if (line != null) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        out.flush();
+    }
+
+    private abstract class Rule {
+
+        int index;
+        boolean queued = false;
+        int count = 0;
+
+        abstract List<Expr> inputs();
+
+        abstract void update();
+    }
+
+    private class SymbolRule extends Rule {
+
+        final Symbol symbol;
+        final List<Expr[]> defaults = new ArrayList<>();
+        // low symbol, high symbol, condition
+        final List<Object[]> ranges = new ArrayList<>();
+        boolean defined = false;
+        byte type;
+        Expr dirDep = no;
+        Expr visible = no;
+        Expr revDep = no;
+        Expr implied = no;
+        ChoiceRule choice;
+        // Last values worked out, kept for writing
+        byte dep;
+        byte vis;
+
+        SymbolRule(Symbol symbol) {
+            this.symbol = symbol;
+        }
+
+        @Override
+        List<Expr> inputs() {
+            List<Expr> result = new ArrayList<>();
+            result.add(dirDep);
+            result.add(visible);
+            result.add(revDep);
+            result.add(implied);
+            for (Expr[] d : defaults) {
+                result.add(d[0]);
+                result.add(d[1]);
+            }
+            for (Object[] range : ranges) {
+                result.add(exprs.symbol((Symbol) range[0]));
+                result.add(exprs.symbol((Symbol) range[1]));
+                result.add((Expr) range[2]);
+            }
+            return result;
+        }
+
+        @Override
+        void update() {
+            dep = values.evaluate(dirDep);
+            vis = Tristate.and(dep, values.evaluate(visible));
+            if (choice != null) {
+                // The choice sets the value
+                return;
+            }
+            switch (type) {
+                case SymbolValues.BOOL:
+                case SymbolValues.TRISTATE:
+                    setTristate(symbol, tristate());
+                    break;
+                case SymbolValues.STRING:
+                case SymbolValues.INT:
+                case SymbolValues.HEX:
+                    setString(symbol, text());
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        private byte tristate() {
+            byte result = Tristate.N;
+            String u = userValue(symbol);
+            byte wanted = u != null ? Tristate.parse(u) : -1;
+            if (vis != Tristate.N && wanted >= 0) {
+                result = Tristate.and(wanted, vis);
+            } else {
+                for (Expr[] d : defaults) {
+                    byte c = values.evaluate(d[1]);
+                    if (c != Tristate.N) {
+                        result = Tristate.and(values.evaluate(d[0]), c);
+                        break;
+                    }
+                }
+                byte imply = Tristate.and(values.evaluate(implied), dep);
+                result = Tristate.or(result, imply);
+            }
+            result = Tristate.or(result, values.evaluate(revDep));
+            if (result == Tristate.M && (type == SymbolValues.BOOL || modulesOff())) {
+                result = Tristate.Y;
+            }
+            return result;
+        }
+
+        private String text() {
+            String result = "";
+            String u = userValue(symbol);
+            if (vis != Tristate.N && u != null) {
+                result = u;
+            } else {
+                for (Expr[] d : defaults) {
+                    if (values.evaluate(d[1]) != Tristate.N) {
+                        result = text(d[0]);
+                        break;
+                    }
+                }
+            }
+            if (type == SymbolValues.INT || type == SymbolValues.HEX) {
+                result = clamp(result);
+            }
+            return result;
+        }
+
+        private String text(Expr e) {
+            switch (e.getType()) {
+                case SYMBOL:
+                    return values.getString(e.getSymbol());
+                case STRING:
+                    return e.getText();
+                default:
+                    return Tristate.toString(values.evaluate(e));
+            }
+        }
+
+        private String clamp(String value) {
+            for (Object[] range : ranges) {
+                if (values.evaluate((Expr) range[2]) == Tristate.N) {
+                    continue;
+                }
+                String low = values.getString((Symbol) range[0]);
+                String high = values.getString((Symbol) range[1]);
+                Long v = number(value);
+                Long lo = number(low);
+                Long hi = number(high);
+                if (lo == null || hi == null) {
+                    return value;
+                }
+                if (v == null || v < lo) {
+                    return low;
+                } else if (v > hi) {
+                    return high;
+                }
+                return value;
+            }
+            return value;
+        }
+
+        private Long number(String value) {
+            try {
+                if (type == SymbolValues.HEX) {
+                    return Long.parseLong(value.startsWith("0x") || value.startsWith("0X") ? value.substring(2) : value, 16);
+                }
+                return Long.parseLong(value);
+            } catch (NumberFormatException ex) {
+                return null;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return symbol.getName();
+        }
+    }
+
+    private class ChoiceRule extends Rule {
+
+        final Choice choice;
+        final Expr dep;
+        final List<SymbolRule> members = new ArrayList<>();
+
+        ChoiceRule(Choice choice) {
+            this.choice = choice;
+            this.dep = all(choice.getDepends());
+            rules.add(this);
+        }
+
+        @Override
+        List<Expr> inputs() {
+            List<Expr> result = new ArrayList<>();
+            result.add(dep);
+            for (Default d : choice.getDefaults()) {
+                result.add(condition(d));
+            }
+            for (SymbolRule m : members) {
+                result.add(m.dirDep);
+                result.add(m.visible);
+            }
+            return result;
+        }
+
+        private byte visible(SymbolRule m, byte d) {
+            return Tristate.and(d, Tristate.and(values.evaluate(m.dirDep), values.evaluate(m.visible)));
+        }
+
+        @Override
+        void update() {
+            byte d = values.evaluate(dep);
+            SymbolRule selected = null;
+            if (d != Tristate.N) {
+                for (SymbolRule m : members) {
+                    if ("y".equals(userValue(m.symbol)) && visible(m, d) != Tristate.N) {
+                        selected = m;
+                        break;
+                    }
+                }
+                for (int i = 0; selected == null && i < choice.getDefaults().size(); i += 1) {
+                    Default def = choice.getDefaults().get(i);
+                    if (def.evaluate(values) == Tristate.N || def.getExpr().getType() != Expr.Type.SYMBOL) {
+                        continue;
+                    }
+                    for (SymbolRule m : members) {
+                        if (m.symbol == def.getExpr().getSymbol() && visible(m, d) != Tristate.N) {
+                            selected = m;
+                            break;
+                        }
+                    }
+                }
+                for (int i = 0; selected == null && i < members.size(); i += 1) {
+                    if (visible(members.get(i), d) != Tristate.N) {
+                        selected = members.get(i);
+                    }
+                }
+            }
+            for (SymbolRule m : members) {
+                setTristate(m.symbol, m == selected ? Tristate.Y : Tristate.N);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "choice at " + choice.getLocation();
+        }
+    }
+
+}
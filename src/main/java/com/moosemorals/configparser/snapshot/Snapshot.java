@@ -0,0 +1,505 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.snapshot;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.SourceFile.Location;
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.expr.ExprFactory;
+import com.moosemorals.configparser.sources.SourceTree;
+import com.moosemorals.configparser.sources.StampedTree;
+import com.moosemorals.configparser.types.Comment;
+import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.FileTable;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.MenuConfig;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import com.moosemorals.configparser.values.Default;
+import com.moosemorals.configparser.values.Imply;
+import com.moosemorals.configparser.values.Prompt;
+import com.moosemorals.configparser.values.Range;
+import com.moosemorals.configparser.values.Select;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.RandomAccess;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A parsed tree read back from a file written by {@link SnapshotWriter}.
+ *
+ * The file is mapped rather than read, and nothing is built until it's
+ * asked for: an entry is made the first time it's fetched, and a menu or
+ * choice only makes its children as they are looked at. Opening a snapshot
+ * takes the same time however big the tree is. Entries from a snapshot
+ * can't have entries added to or removed from them.
+ *
+ * The file is a header followed by six sections. Numbers are big endian
+ * ints, except for file times and sizes, which are longs. Strings, symbols,
+ * expressions, files and entries are referred to by their index in their
+ * section, and -1 stands for none.
+ *
+ * <pre>
+ * header    magic, version, offset of each section
+ * strings   count, start of each string and end of the last, UTF-8 bytes
+ * symbols   count, name string of each
+ * exprs     count, (type, a, b) for each, children before parents
+ * files     count, (path string, modified, size) for each
+ * env       count, (name string, value string) for each
+ * entries   count, offset of each record, records
+ * </pre>
+ *
+ * The files are every file the parse read or looked for, whether or not
+ * it holds any entries, with a size of -1 for ones that weren't there. The
+ * environment is every variable that was set.
+ *
+ * An entry record is its kind as a byte, then file, line, symbol, type,
+ * env, prompt and help, then counted lists of depends, defaults and
+ * options. Configs add selects, implies and ranges, menus add their
+ * 'visible if', and menus and choices end with the ids of their children.
+ * Entries are numbered in tree order, so the top menu is entry 0.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class Snapshot {
+
+    private static final Logger log = LoggerFactory.getLogger(Snapshot.class);
+
+    /**
+     * Change this whenever the layout changes. Snapshots with any other
+     * version are refused.
+     */
+    public static final int VERSION = 2;
+
+    // "KSNP"
+    static final int MAGIC = 0x4b534e50;
+
+    static final int STRINGS = 0;
+    static final int SYMBOLS = 1;
+    static final int EXPRS = 2;
+    static final int FILES = 3;
+    static final int ENVIRONMENT = 4;
+    static final int ENTRIES = 5;
+    static final int SECTIONS = 6;
+    static final int HEADER_SIZE = 8 + 4 * SECTIONS;
+
+    static final byte CONFIG = 1;
+    static final byte MENUCONFIG = 2;
+    static final byte MENU = 3;
+    static final byte CHOICE = 4;
+    static final byte COMMENT = 5;
+
+    static final int NONE = -1;
+
+    private static final int EXPR_SIZE = 12;
+    private static final int FILE_SIZE = 20;
+    private static final Expr.Type[] EXPR_TYPES = Expr.Type.values();
+
+    private final File file;
+    private final ByteBuffer buffer;
+    private final SymbolTable symbols;
+    private final ExprFactory factory;
+    private final FileTable fileTable;
+
+    private final int stringCount;
+    private final int stringIndex;
+    private final int stringData;
+    private final int symbolCount;
+    private final int symbolIndex;
+    private final int exprCount;
+    private final int exprIndex;
+    private final int fileCount;
+    private final int fileIndex;
+    private final int envCount;
+    private final int envIndex;
+    private final int entryCount;
+    private final int entryIndex;
+
+    // Filled in as things are asked for. Strings, symbols and expressions
+    // come out the same however many times they are made, so races don't
+    // matter, but each entry must only be made once.
+    private final String[] strings;
+    private final Symbol[] symbolCache;
+    private final Expr[] exprs;
+    private final int[] fileIds;
+    private final AtomicReferenceArray<Entry> entries;
+
+    private Snapshot(File file, ByteBuffer buffer, SymbolTable symbols) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        this.symbols = symbols;
+        this.factory = symbols.getExprFactory();
+        this.fileTable = symbols.getFileTable();
+
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not a snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(String.format("%s is snapshot version %d, expected %d", file, version, VERSION));
+        }
+
+        int strings = section(STRINGS);
+        stringCount = buffer.getInt(strings);
+        stringIndex = strings + 4;
+        stringData = stringIndex + 4 * (stringCount + 1);
+
+        int syms = section(SYMBOLS);
+        symbolCount = buffer.getInt(syms);
+        symbolIndex = syms + 4;
+
+        int ex = section(EXPRS);
+        exprCount = buffer.getInt(ex);
+        exprIndex = ex + 4;
+
+        int files = section(FILES);
+        fileCount = buffer.getInt(files);
+        fileIndex = files + 4;
+
+        int env = section(ENVIRONMENT);
+        envCount = buffer.getInt(env);
+        envIndex = env + 4;
+
+        int ents = section(ENTRIES);
+        entryCount = buffer.getInt(ents);
+        entryIndex = ents + 4;
+        if (entryCount < 1) {
+            throw new IOException(file + " has no entries");
+        }
+
+        this.strings = new String[stringCount];
+        this.symbolCache = new Symbol[symbolCount];
+        this.exprs = new Expr[exprCount];
+        this.fileIds = new int[fileCount];
+        Arrays.fill(fileIds, NONE);
+        this.entries = new AtomicReferenceArray<>(entryCount);
+    }
+
+    private int section(int s) throws IOException {
+        int offset = buffer.getInt(8 + 4 * s);
+        if (offset < HEADER_SIZE || offset >= buffer.limit()) {
+            throw new IOException(file + " is damaged");
+        }
+        return offset;
+    }
+
+    /**
+     * Map a snapshot, with symbols going into a new table.
+     *
+     * @param file
+     * @return
+     * @throws IOException if the file can't be read, isn't a snapshot, or
+     * was written by a different version
+     */
+    public static Snapshot open(File file) throws IOException {
+        return open(file, new SymbolTable());
+    }
+
+    /**
+     * Map a snapshot.
+     *
+     * @param file
+     * @param symbols table to intern symbols into as entries are made
+     * @return
+     * @throws IOException if the file can't be read, isn't a snapshot, or
+     * was written by a different version
+     */
+    public static Snapshot open(File file, SymbolTable symbols) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            Snapshot result = new Snapshot(file, buffer, symbols);
+            log.debug("Mapped {}: {} entries from {} files", file, result.entryCount, result.fileCount);
+            return result;
+        }
+    }
+
+    /**
+     * Check that the tree and environment are the same as when the snapshot
+     * was written.
+     *
+     * @param tree where the files are
+     * @param environment
+     * @return true if every file the parse read or looked for has the same
+     * size and modification time (or still isn't there), and every variable
+     * has the same value
+     */
+    public boolean isCurrent(SourceTree tree, Environment environment) {
+        for (int i = 0; i < fileCount; i += 1) {
+            int at = fileIndex + FILE_SIZE * i;
+            String path = string(buffer.getInt(at));
+            StampedTree.Stamp now = StampedTree.Stamp.of(tree, path);
+            if (now.getModified() != buffer.getLong(at + 4) || now.getSize() != buffer.getLong(at + 12)) {
+                log.debug("{} is stale, {} has changed", file, path);
+                return false;
+            }
+        }
+        Map<String, String> values = environment.getValues();
+        if (values.size() != envCount) {
+            log.debug("{} is stale, different variables are set", file);
+            return false;
+        }
+        for (int i = 0; i < envCount; i += 1) {
+            String name = string(buffer.getInt(envIndex + 8 * i));
+            if (!values.containsKey(name) || !Objects.equals(values.get(name), string(buffer.getInt(envIndex + 8 * i + 4)))) {
+                log.debug("{} is stale, {} has changed", file, name);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * @return number of entries, including the top menu
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    public Menu getTop() {
+        return (Menu) getEntry(0);
+    }
+
+    /**
+     * @param id
+     * @return the entry, made now if this is the first time it's been asked
+     * for
+     * @throws IndexOutOfBoundsException if there's no such entry
+     */
+    public Entry getEntry(int id) {
+        Entry e = entries.get(id);
+        if (e == null) {
+            e = read(id);
+            if (!entries.compareAndSet(id, null, e)) {
+                e = entries.get(id);
+            }
+        }
+        return e;
+    }
+
+    private String string(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        String s = strings[id];
+        if (s == null) {
+            int start = buffer.getInt(stringIndex + 4 * id);
+            int end = buffer.getInt(stringIndex + 4 * (id + 1));
+            byte[] bytes = new byte[end - start];
+            ByteBuffer view = buffer.duplicate();
+            view.position(stringData + start);
+            view.get(bytes);
+            s = new String(bytes, StandardCharsets.UTF_8);
+            strings[id] = s;
+        }
+        return s;
+    }
+
+    private Symbol symbol(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        Symbol s = symbolCache[id];
+        if (s == null) {
+            s = symbols.intern(string(buffer.getInt(symbolIndex + 4 * id)));
+            symbolCache[id] = s;
+        }
+        return s;
+    }
+
+    private Expr expr(int id) {
+        Expr e = exprs[id];
+        if (e == null) {
+            int at = exprIndex + EXPR_SIZE * id;
+            int a = buffer.getInt(at + 4);
+            int b = buffer.getInt(at + 8);
+            switch (EXPR_TYPES[buffer.getInt(at)]) {
+                case SYMBOL:
+                    e = factory.symbol(symbol(a));
+                    break;
+                case STRING:
+                    e = factory.string(string(a));
+                    break;
+                case NOT:
+                    e = factory.not(expr(a));
+                    break;
+                case EQUAL:
+                    e = factory.equal(expr(a), expr(b));
+                    break;
+                case UNEQUAL:
+                    e = factory.unequal(expr(a), expr(b));
+                    break;
+                case AND:
+                    e = factory.and(expr(a), expr(b));
+                    break;
+                case OR:
+                    e = factory.or(expr(a), expr(b));
+                    break;
+            }
+            exprs[id] = e;
+        }
+        return e;
+    }
+
+    private Condition condition(int id) {
+        return id != NONE ? new Condition(expr(id)) : null;
+    }
+
+    private Location location(int file, int line) {
+        int id = fileIds[file];
+        if (id == NONE) {
+            id = fileTable.intern(string(buffer.getInt(fileIndex + FILE_SIZE * file)));
+            fileIds[file] = id;
+        }
+        return new Location(fileTable, FileTable.pack(id, line));
+    }
+
+    private Entry read(int id) {
+        if (id < 0 || id >= entryCount) {
+            throw new IndexOutOfBoundsException("No entry " + id);
+        }
+        int at = buffer.getInt(entryIndex + 4 * id);
+        byte kind = buffer.get(at);
+        at += 1;
+        Location location = location(buffer.getInt(at), buffer.getInt(at + 4));
+        Symbol symbol = symbol(buffer.getInt(at + 8));
+
+        Entry e;
+        switch (kind) {
+            case CONFIG:
+                e = new Config(location, symbol);
+                break;
+            case MENUCONFIG:
+                e = new MenuConfig(location, symbol);
+                break;
+            case MENU:
+                e = new SnapshotMenu(location, symbol);
+                break;
+            case CHOICE:
+                e = new SnapshotChoice(location, symbol);
+                break;
+            case COMMENT:
+                e = new Comment(location, symbol);
+                break;
+            default:
+                throw new IllegalStateException(String.format("%s: entry %d has unknown kind %d", file, id, kind));
+        }
+
+        e.setType(string(buffer.getInt(at + 12)));
+        e.setEnv(string(buffer.getInt(at + 16)));
+        String prompt = string(buffer.getInt(at + 20));
+        if (prompt != null) {
+            // The prompt's condition is already one of the depends
+            e.setPrompt(new Prompt(prompt, null));
+        }
+        e.setHelp(string(buffer.getInt(at + 24)));
+        at += 28;
+
+        int count = buffer.getInt(at);
+        at += 4;
+        for (int i = 0; i < count; i += 1, at += 4) {
+            e.addDepends(condition(buffer.getInt(at)));
+        }
+        count = buffer.getInt(at);
+        at += 4;
+        for (int i = 0; i < count; i += 1, at += 8) {
+            e.addDefault(new Default(expr(buffer.getInt(at)), condition(buffer.getInt(at + 4))));
+        }
+        count = buffer.getInt(at);
+        at += 4;
+        for (int i = 0; i < count; i += 1, at += 4) {
+            e.addOption(string(buffer.getInt(at)));
+        }
+
+        if (e instanceof Config) {
+            Config c = (Config) e;
+            count = buffer.getInt(at);
+            at += 4;
+            for (int i = 0; i < count; i += 1, at += 8) {
+                c.addSelect(new Select(symbol(buffer.getInt(at)), condition(buffer.getInt(at + 4))));
+            }
+            count = buffer.getInt(at);
+            at += 4;
+            for (int i = 0; i < count; i += 1, at += 8) {
+                c.addImplies(new Imply(symbol(buffer.getInt(at)), condition(buffer.getInt(at + 4))));
+            }
+            count = buffer.getInt(at);
+            at += 4;
+            for (int i = 0; i < count; i += 1, at += 12) {
+                c.addRange(new Range(string(buffer.getInt(at)), string(buffer.getInt(at + 4)), condition(buffer.getInt(at + 8))));
+            }
+        } else if (e instanceof SnapshotMenu) {
+            SnapshotMenu m = (SnapshotMenu) e;
+            m.setVisibleIf(condition(buffer.getInt(at)));
+            m.setChildren(new Children(buffer.getInt(at + 4), at + 8));
+        } else if (e instanceof SnapshotChoice) {
+            ((SnapshotChoice) e).setChildren(new Children(buffer.getInt(at), at + 4));
+        }
+        return e;
+    }
+
+    /**
+     * The entries of a menu or choice, made as they are looked at.
+     */
+    private class Children extends AbstractList<Entry> implements RandomAccess {
+
+        private final int size;
+        private final int ids;
+
+        Children(int size, int ids) {
+            this.size = size;
+            this.ids = ids;
+        }
+
+        @Override
+        public Entry get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("No child " + index);
+            }
+            return getEntry(buffer.getInt(ids + 4 * index));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.snapshot;
+
+import com.moosemorals.configparser.SourceFile.Location;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Symbol;
+import java.util.List;
+
+/**
+ * A menu from a {@link Snapshot}, whose entries are made as they are
+ * looked at. It can't be changed.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+class SnapshotMenu extends Menu {
+
+    private static final long serialVersionUID = 1L;
+
+    private List<Entry> children;
+
+    SnapshotMenu(Location location, Symbol symbol) {
+        super(location, symbol);
+    }
+
+    void setChildren(List<Entry> children) {
+        this.children = children;
+    }
+
+    @Override
+    public void addEntry(Entry e) {
+        throw new UnsupportedOperationException("Entries from a snapshot can't be changed");
+    }
+
+    @Override
+    public void addEntries(int index, List<Entry> e) {
+        throw new UnsupportedOperationException("Entries from a snapshot can't be changed");
+    }
+
+    @Override
+    public List<Entry> getEntries() {
+        return children;
+    }
+
+}
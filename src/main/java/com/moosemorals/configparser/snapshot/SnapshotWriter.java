@@ -0,0 +1,386 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.snapshot;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.SourceFile;
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.sources.StampedTree;
+import com.moosemorals.configparser.types.Choice;
+import com.moosemorals.configparser.types.Comment;
+import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.MenuConfig;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.values.Default;
+import com.moosemorals.configparser.values.Imply;
+import com.moosemorals.configparser.values.Range;
+import com.moosemorals.configparser.values.Select;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes a parsed tree as a snapshot that {@link Snapshot} can map straight
+ * back in. See there for the layout.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class SnapshotWriter {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotWriter.class);
+
+    private final StampedTree tree;
+    private final Environment environment;
+
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final ByteArrayOutputStream stringData = new ByteArrayOutputStream();
+    private final List<Integer> stringStarts = new ArrayList<>();
+
+    private final Map<Symbol, Integer> symbols = new IdentityHashMap<>();
+    private final ByteArrayOutputStream symbolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream symbolData = new DataOutputStream(symbolBytes);
+
+    private final Map<Expr, Integer> exprs = new HashMap<>();
+    private final ByteArrayOutputStream exprBytes = new ByteArrayOutputStream();
+    private final DataOutputStream exprData = new DataOutputStream(exprBytes);
+
+    private final Map<String, Integer> files = new HashMap<>();
+    private final ByteArrayOutputStream fileBytes = new ByteArrayOutputStream();
+    private final DataOutputStream fileData = new DataOutputStream(fileBytes);
+
+    private final Map<Entry, Integer> ids = new IdentityHashMap<>();
+    private final List<Entry> order = new ArrayList<>();
+
+    /**
+     * @param tree the tree was parsed from, which has the size and
+     * modification time of every file the parse read or looked for
+     * @param environment the tree was parsed with
+     */
+    public SnapshotWriter(StampedTree tree, Environment environment) {
+        this.tree = tree;
+        this.environment = environment;
+    }
+
+    /**
+     * Write a tree to a file. The file is replaced in one step, so a reader
+     * never sees half a snapshot.
+     *
+     * @param top
+     * @param file
+     * @param tree the tree was parsed from
+     * @param environment the tree was parsed with
+     * @throws IOException
+     */
+    public static void write(Menu top, File file, StampedTree tree, Environment environment) throws IOException {
+        long start = System.nanoTime();
+        Path dest = file.toPath().toAbsolutePath();
+        Path temp = Files.createTempFile(dest.getParent(), "snapshot", ".tmp");
+        try {
+            try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp), 1 << 20)) {
+                new SnapshotWriter(tree, environment).write(top, out);
+            }
+            Files.move(temp, dest, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        log.debug("Wrote snapshot {} in {}ms", file, (System.nanoTime() - start) / 1000000);
+    }
+
+    /**
+     * @param top
+     * @param out
+     * @throws IOException
+     */
+    public void write(Menu top, OutputStream out) throws IOException {
+        number(top);
+
+        // Every file the parse depended on, not just the ones with entries
+        for (String path : tree.getStamps().keySet()) {
+            file(path);
+        }
+
+        // Records refer to strings, symbols and expressions by id, so
+        // write them first, which fills in the tables
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(records);
+        int[] starts = new int[order.size()];
+        for (int i = 0; i < order.size(); i += 1) {
+            starts[i] = data.size();
+            record(data, order.get(i));
+        }
+
+        byte[][] sections = new byte[Snapshot.SECTIONS][];
+        // Also adds strings, so must come first
+        sections[Snapshot.ENVIRONMENT] = environment();
+        sections[Snapshot.STRINGS] = strings();
+        sections[Snapshot.SYMBOLS] = table(symbols.size(), symbolBytes);
+        sections[Snapshot.EXPRS] = table(exprs.size(), exprBytes);
+        sections[Snapshot.FILES] = table(files.size(), fileBytes);
+
+        int offset = Snapshot.HEADER_SIZE;
+        int[] offsets = new int[Snapshot.SECTIONS];
+        for (int s = 0; s < Snapshot.ENTRIES; s += 1) {
+            offsets[s] = offset;
+            offset += sections[s].length;
+        }
+        offsets[Snapshot.ENTRIES] = offset;
+
+        // Entries are found through a table of absolute offsets
+        int recordsStart = offset + 4 + 4 * starts.length;
+        ByteArrayOutputStream entries = new ByteArrayOutputStream(recordsStart - offset + records.size());
+        DataOutputStream index = new DataOutputStream(entries);
+        index.writeInt(starts.length);
+        for (int s : starts) {
+            index.writeInt(recordsStart + s);
+        }
+        records.writeTo(index);
+        sections[Snapshot.ENTRIES] = entries.toByteArray();
+
+        DataOutputStream header = new DataOutputStream(out);
+        header.writeInt(Snapshot.MAGIC);
+        header.writeInt(Snapshot.VERSION);
+        for (int o : offsets) {
+            header.writeInt(o);
+        }
+        for (byte[] section : sections) {
+            header.write(section);
+        }
+        header.flush();
+    }
+
+    /**
+     * Give entries ids in tree order.
+     */
+    private void number(Entry e) {
+        ids.put(e, order.size());
+        order.add(e);
+        if (e instanceof Container) {
+            for (Entry child : ((Container) e).getEntries()) {
+                number(child);
+            }
+        }
+    }
+
+    private void record(DataOutputStream out, Entry e) throws IOException {
+        byte kind;
+        if (e instanceof MenuConfig) {
+            kind = Snapshot.MENUCONFIG;
+        } else if (e instanceof Config) {
+            kind = Snapshot.CONFIG;
+        } else if (e instanceof Menu) {
+            kind = Snapshot.MENU;
+        } else if (e instanceof Choice) {
+            kind = Snapshot.CHOICE;
+        } else if (e instanceof Comment) {
+            kind = Snapshot.COMMENT;
+        } else {
+            throw new IllegalArgumentException("Can't write a " + e.getClass().getSimpleName());
+        }
+        out.writeByte(kind);
+        SourceFile.Location location = e.getLocation();
+        out.writeInt(file(location.getFile()));
+        out.writeInt(location.getLineNumber());
+        out.writeInt(symbol(e.getSymbol()));
+        out.writeInt(string(e.getType()));
+        out.writeInt(string(e.getEnv()));
+        out.writeInt(string(e.getPrompt()));
+        out.writeInt(string(e.getHelp()));
+
+        out.writeInt(e.getDepends().size());
+        for (Condition c : e.getDepends()) {
+            out.writeInt(condition(c));
+        }
+        out.writeInt(e.getDefaults().size());
+        for (Default d : e.getDefaults()) {
+            out.writeInt(expr(d.getExpr()));
+            out.writeInt(condition(d.getCondition()));
+        }
+        out.writeInt(e.getOptions().size());
+        for (String o : e.getOptions()) {
+            out.writeInt(string(o));
+        }
+
+        if (e instanceof Config) {
+            Config c = (Config) e;
+            out.writeInt(c.getSelects().size());
+            for (Select s : c.getSelects()) {
+                out.writeInt(symbol(s.getSymbol()));
+                out.writeInt(condition(s.getCondition()));
+            }
+            out.writeInt(c.getImplies().size());
+            for (Imply i : c.getImplies()) {
+                out.writeInt(symbol(i.getSymbol()));
+                out.writeInt(condition(i.getCondition()));
+            }
+            out.writeInt(c.getRanges().size());
+            for (Range r : c.getRanges()) {
+                out.writeInt(string(r.getValue()));
+                out.writeInt(string(r.getValue2()));
+                out.writeInt(condition(r.getCondition()));
+            }
+        }
+        if (e instanceof Menu) {
+            out.writeInt(condition(((Menu) e).getVisibleIf()));
+        }
+        if (e instanceof Container) {
+            List<Entry> children = ((Container) e).getEntries();
+            out.writeInt(children.size());
+            for (Entry child : children) {
+                out.writeInt(ids.get(child));
+            }
+        }
+    }
+
+    private int string(String s) throws IOException {
+        if (s == null) {
+            return Snapshot.NONE;
+        }
+        Integer id = strings.get(s);
+        if (id == null) {
+            id = strings.size();
+            strings.put(s, id);
+            stringStarts.add(stringData.size());
+            stringData.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return id;
+    }
+
+    private int symbol(Symbol s) throws IOException {
+        if (s == null) {
+            return Snapshot.NONE;
+        }
+        Integer id = symbols.get(s);
+        if (id == null) {
+            int name = string(s.getName());
+            id = symbols.size();
+            symbols.put(s, id);
+            symbolData.writeInt(name);
+        }
+        return id;
+    }
+
+    private int condition(Condition c) throws IOException {
+        return c != null ? expr(c.getExpr()) : Snapshot.NONE;
+    }
+
+    /**
+     * Expressions are written children first, so a reader can build them
+     * bottom up through the factory.
+     */
+    private int expr(Expr e) throws IOException {
+        Integer id = exprs.get(e);
+        if (id != null) {
+            return id;
+        }
+        int a;
+        int b = Snapshot.NONE;
+        switch (e.getType()) {
+            case SYMBOL:
+                a = symbol(e.getSymbol());
+                break;
+            case STRING:
+                a = string(e.getText());
+                break;
+            case NOT:
+                a = expr(e.getLeft());
+                break;
+            default:
+                a = expr(e.getLeft());
+                b = expr(e.getRight());
+                break;
+        }
+        id = exprs.size();
+        exprs.put(e, id);
+        exprData.writeInt(e.getType().ordinal());
+        exprData.writeInt(a);
+        exprData.writeInt(b);
+        return id;
+    }
+
+    private int file(String path) throws IOException {
+        Integer id = files.get(path);
+        if (id == null) {
+            int name = string(path);
+            id = files.size();
+            files.put(path, id);
+            StampedTree.Stamp stamp = tree.stamp(path);
+            fileData.writeInt(name);
+            fileData.writeLong(stamp.getModified());
+            fileData.writeLong(stamp.getSize());
+        }
+        return id;
+    }
+
+    private byte[] environment() throws IOException {
+        Map<String, String> values = new TreeMap<>(environment.getValues());
+        ByteArrayOutputStream result = new ByteArrayOutputStream(4 + 8 * values.size());
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeInt(values.size());
+        for (Map.Entry<String, String> e : values.entrySet()) {
+            out.writeInt(string(e.getKey()));
+            out.writeInt(string(e.getValue()));
+        }
+        return result.toByteArray();
+    }
+
+    private byte[] strings() throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(4 + 4 * (stringStarts.size() + 1) + stringData.size());
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeInt(stringStarts.size());
+        for (int s : stringStarts) {
+            out.writeInt(s);
+        }
+        out.writeInt(stringData.size());
+        stringData.writeTo(out);
+        return result.toByteArray();
+    }
+
+    private static byte[] table(int count, ByteArrayOutputStream data) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream(4 + data.size());
+        DataOutputStream out = new DataOutputStream(result);
+        out.writeInt(count);
+        data.writeTo(out);
+        return result.toByteArray();
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.sources;
+
+import com.moosemorals.configparser.SourceFile;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Files in a folder on disk.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class DirectoryTree implements SourceTree {
+
+    private final File root;
+
+    public DirectoryTree(File root) {
+        this.root = root;
+    }
+
+    @Override
+    public File getRoot() {
+        return root;
+    }
+
+    @Override
+    public byte[] read(String target) throws IOException {
+        return SourceFile.read(new File(root, target));
+    }
+
+    @Override
+    public boolean exists(String target) {
+        return new File(root, target).isFile();
+    }
+
+    @Override
+    public long lastModified(String target) {
+        return new File(root, target).lastModified();
+    }
+
+    @Override
+    public long size(String target) {
+        return new File(root, target).length();
+    }
+
+    @Override
+    public String toString() {
+        return root.toString();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.sources;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Somewhere to read Kconfig files from, by the paths used in 'source' lines.
+ * Trees that hold anything open, like {@link ZipTree}, release it when
+ * closed; for the others close does nothing.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public interface SourceTree extends Closeable {
+
+    /**
+     * Open a folder or an archive, depending on what it is. Archives whose
+     * name ends in .zip are opened with {@link ZipTree}, anything else that
+     * isn't a folder is taken to be a tarball.
+     *
+     * @param file folder or archive
+     * @return
+     * @throws IOException
+     */
+    static SourceTree open(File file) throws IOException {
+        if (file.isDirectory()) {
+            return new DirectoryTree(file);
+        } else if (file.getName().toLowerCase(Locale.ROOT).endsWith(".zip")) {
+            return new ZipTree(file);
+        } else {
+            return new TarTree(file);
+        }
+    }
+
+    /**
+     * @return the folder or archive that the tree comes from
+     */
+    File getRoot();
+
+    /**
+     * @param target path relative to the top of the tree
+     * @return the contents of the file
+     * @throws java.io.FileNotFoundException if there isn't one
+     * @throws IOException if it can't be read
+     */
+    byte[] read(String target) throws IOException;
+
+    /**
+     * @param target path relative to the top of the tree
+     * @return true if there is a file there
+     */
+    boolean exists(String target);
+
+    /**
+     * @param target path relative to the top of the tree
+     * @return modification time in milliseconds, or 0 if there isn't a file
+     */
+    long lastModified(String target);
+
+    /**
+     * @param target path relative to the top of the tree
+     * @return size in bytes, or 0 if there isn't a file
+     */
+    long size(String target);
+
+    @Override
+    default void close() throws IOException {
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.sources;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Wraps another tree and notes the size and modification time of every
+ * file the first time anything asks about it, before it is read. That's
+ * every file a parse depended on, including ones that only hold 'source'
+ * lines and ones that were looked for and not found, as they were when the
+ * parse saw them. Safe to use from any number of threads.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class StampedTree implements SourceTree {
+
+    private final SourceTree tree;
+    private final ConcurrentMap<String, Stamp> stamps = new ConcurrentHashMap<>();
+
+    public StampedTree(SourceTree tree) {
+        this.tree = tree;
+    }
+
+    /**
+     * Note a file's size and modification time, unless it has been noted
+     * already.
+     *
+     * @param target path relative to the top of the tree
+     * @return the stamp from the first time the file was asked about
+     */
+    public Stamp stamp(String target) {
+        return stamps.computeIfAbsent(target, t -> Stamp.of(tree, t));
+    }
+
+    /**
+     * @return every file asked about so far, by path
+     */
+    public Map<String, Stamp> getStamps() {
+        return Collections.unmodifiableMap(new TreeMap<>(stamps));
+    }
+
+    @Override
+    public File getRoot() {
+        return tree.getRoot();
+    }
+
+    @Override
+    public byte[] read(String target) throws IOException {
+        stamp(target);
+        return tree.read(target);
+    }
+
+    @Override
+    public boolean exists(String target) {
+        stamp(target);
+        return tree.exists(target);
+    }
+
+    @Override
+    public long lastModified(String target) {
+        stamp(target);
+        return tree.lastModified(target);
+    }
+
+    @Override
+    public long size(String target) {
+        stamp(target);
+        return tree.size(target);
+    }
+
+    @Override
+    public String toString() {
+        return tree.toString();
+    }
+
+    /**
+     * The size and modification time of a file, or a note that it wasn't
+     * there.
+     */
+    public static final class Stamp {
+
+        private static final long MISSING = -1;
+
+        private final long modified;
+        private final long size;
+
+        public Stamp(long modified, long size) {
+            this.modified = modified;
+            this.size = size;
+        }
+
+        /**
+         * @param tree
+         * @param target path relative to the top of the tree
+         * @return the file as it is now
+         */
+        public static Stamp of(SourceTree tree, String target) {
+            if (!tree.exists(target)) {
+                return new Stamp(0, MISSING);
+            }
+            return new Stamp(tree.lastModified(target), tree.size(target));
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        /**
+         * @return size in bytes, or -1 if there wasn't a file
+         */
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isMissing() {
+            return size == MISSING;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Stamp)) {
+                return false;
+            }
+            Stamp other = (Stamp) o;
+            return modified == other.modified && size == other.size;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(modified) * 31 + Long.hashCode(size);
+        }
+
+        @Override
+        public String toString() {
+            return isMissing() ? "missing" : size + " bytes, modified " + modified;
+        }
+    }
+
+}
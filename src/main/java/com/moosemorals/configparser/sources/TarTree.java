@@ -0,0 +1,527 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.sources;
+
+import com.github.luben.zstd.ZstdInputStream;
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.XZInputStream;
+
+/**
+ * Files from a tarball, read into memory.
+ *
+ * The archive is read once, straight through, when the tree is made. Only
+ * the members that might be wanted (by default anything whose name starts
+ * with "Kconfig") are kept, everything else is skipped over. Archives can be
+ * plain or compressed with gzip, xz or zstd, which is told from the first
+ * few bytes of the file rather than its name. Any other compression is
+ * refused, as is an archive with a header that fails its checksum or isn't
+ * ustar, or that ends before the end of archive marker.
+ *
+ * Kernel tarballs put everything in a folder named after the release. If
+ * every member of the archive is in the same folder then paths are taken to
+ * be relative to that folder rather than the top of the archive.
+ *
+ * Understands ustar, GNU long names and pax headers, which covers the
+ * tarballs from kernel.org and from 'git archive'. Links are followed as
+ * long as they point to a member that was kept.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class TarTree implements SourceTree {
+
+    private static final Logger log = LoggerFactory.getLogger(TarTree.class);
+
+    /**
+     * Keeps Kconfig, Kconfig.debug and so on.
+     */
+    public static final Predicate<String> KCONFIG = name -> name.substring(name.lastIndexOf('/') + 1).startsWith("Kconfig");
+
+    private static final int BLOCK = 512;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private static final byte[] GZIP = {0x1f, (byte) 0x8b};
+    private static final byte[] XZ = {(byte) 0xfd, '7', 'z', 'X', 'Z', 0};
+    private static final byte[] ZSTD = {0x28, (byte) 0xb5, 0x2f, (byte) 0xfd};
+    // Not supported, but worth naming when refusing them
+    private static final byte[] BZIP2 = {'B', 'Z', 'h'};
+    private static final byte[] LZIP = {'L', 'Z', 'I', 'P'};
+    private static final byte[] LZ4 = {0x04, 0x22, 0x4d, 0x18};
+    private static final byte[] COMPRESS = {0x1f, (byte) 0x9d};
+    private static final String[] COMPRESSED = {".bz2", ".tbz", ".tbz2", ".lz", ".lz4", ".lzma", ".tlz", ".Z"};
+
+    private final File archive;
+    private final Map<String, Member> members = new HashMap<>();
+
+    private static class Member {
+
+        final byte[] data;
+        final long modified;
+
+        Member(byte[] data, long modified) {
+            this.data = data;
+            this.modified = modified;
+        }
+    }
+
+    /**
+     * @param archive tarball to read Kconfig files from
+     * @throws IOException
+     */
+    public TarTree(File archive) throws IOException {
+        this(archive, KCONFIG);
+    }
+
+    /**
+     * @param archive tarball to read files from
+     * @param keep which members to keep, by their path in the archive
+     * @throws IOException
+     */
+    public TarTree(File archive, Predicate<String> keep) throws IOException {
+        this.archive = archive;
+        long start = System.nanoTime();
+        try (InputStream in = open(archive)) {
+            read(new DataInputStream(in), keep);
+        }
+        log.debug("Kept {} files from {} in {}ms", members.size(), archive, (System.nanoTime() - start) / 1000000);
+    }
+
+    private static InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        try {
+            byte[] magic = new byte[XZ.length];
+            in.mark(magic.length);
+            int length = readUpTo(in, magic);
+            in.reset();
+
+            if (startsWith(magic, length, GZIP)) {
+                return new GZIPInputStream(in, BUFFER_SIZE);
+            } else if (startsWith(magic, length, XZ)) {
+                return new XZInputStream(in);
+            } else if (startsWith(magic, length, ZSTD)) {
+                return new ZstdInputStream(in);
+            } else if (startsWith(magic, length, BZIP2) || startsWith(magic, length, LZIP)
+                    || startsWith(magic, length, LZ4) || startsWith(magic, length, COMPRESS)) {
+                throw new IOException(file + " is compressed in a way that isn't supported, use gzip, xz or zstd");
+            }
+            for (String extension : COMPRESSED) {
+                if (file.getName().endsWith(extension)) {
+                    throw new IOException(file + " is compressed in a way that isn't supported, use gzip, xz or zstd");
+                }
+            }
+            // Anything else had better be a plain tarball, which the
+            // header checks will find out
+            return in;
+        } catch (IOException ex) {
+            in.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Fill the buffer, unless the stream ends first.
+     *
+     * @return the number of bytes read
+     */
+    private static int readUpTo(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int count = in.read(buffer, total, buffer.length - total);
+            if (count < 0) {
+                break;
+            }
+            total += count;
+        }
+        return total;
+    }
+
+    private static boolean startsWith(byte[] data, int length, byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i += 1) {
+            if (data[i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void read(DataInputStream in, Predicate<String> keep) throws IOException {
+        byte[] header = new byte[BLOCK];
+        Map<String, String> links = new HashMap<>();
+        // Set by GNU long name and pax headers, for the member that follows
+        String longName = null;
+        String longLink = null;
+        long paxSize = -1;
+        // The folder that everything is in, if there is one
+        String top = null;
+        boolean oneFolder = true;
+        int headers = 0;
+
+        while (true) {
+            if (readUpTo(in, header) < BLOCK) {
+                if (headers == 0) {
+                    throw new IOException(archive + " is not a tar archive");
+                }
+                throw new EOFException(archive + " ends without an end of archive marker, it may be truncated");
+            }
+            if (isZero(header)) {
+                break;
+            }
+            check(header, headers);
+            headers += 1;
+
+            byte type = header[156];
+            long size = number(header, 124, 12);
+
+            switch (type) {
+                case 'L':
+                    longName = string(data(in, size), 0, (int) size);
+                    continue;
+                case 'K':
+                    longLink = string(data(in, size), 0, (int) size);
+                    continue;
+                case 'x': {
+                    Map<String, String> pax = pax(data(in, size), headers - 1);
+                    longName = pax.getOrDefault("path", longName);
+                    longLink = pax.getOrDefault("linkpath", longLink);
+                    if (pax.containsKey("size")) {
+                        try {
+                            paxSize = Long.parseLong(pax.get("size"));
+                        } catch (NumberFormatException ex) {
+                            paxSize = -1;
+                        }
+                        if (paxSize < 0) {
+                            throw badPax(headers - 1);
+                        }
+                    }
+                    continue;
+                }
+                case 'g':
+                    skip(in, size);
+                    continue;
+                default:
+                    break;
+            }
+
+            String name = longName != null ? longName : name(header);
+            String link = longLink != null ? longLink : string(header, 157, 100);
+            if (paxSize >= 0) {
+                size = paxSize;
+            }
+            longName = null;
+            longLink = null;
+            paxSize = -1;
+
+            name = normalize(name);
+            if (!name.isEmpty()) {
+                int slash = name.indexOf('/');
+                String folder = slash > 0 ? name.substring(0, slash) : (type == '5' ? name : null);
+                if (folder == null || (top != null && !top.equals(folder))) {
+                    oneFolder = false;
+                }
+                top = folder;
+            }
+
+            boolean wanted = !name.isEmpty() && keep.test(name);
+            if ((type == '0' || type == 0 || type == '7') && wanted) {
+                members.put(name, new Member(data(in, size), number(header, 136, 12) * 1000));
+            } else {
+                if ((type == '1' || type == '2') && wanted) {
+                    links.put(name, type == '1' ? normalize(link) : resolve(name, link));
+                }
+                skip(in, size);
+            }
+        }
+
+        for (Map.Entry<String, String> e : links.entrySet()) {
+            Member target = members.get(e.getValue());
+            if (target != null) {
+                members.put(e.getKey(), target);
+            }
+        }
+
+        if (oneFolder && top != null) {
+            String prefix = top + "/";
+            Map<String, Member> moved = new HashMap<>();
+            for (Map.Entry<String, Member> e : members.entrySet()) {
+                moved.put(e.getKey().substring(prefix.length()), e.getValue());
+            }
+            members.clear();
+            members.putAll(moved);
+        }
+    }
+
+    /**
+     * Make sure a header is a ustar header and that its checksum is right.
+     *
+     * @param index of the header in the archive, for messages
+     */
+    private void check(byte[] header, int index) throws IOException {
+        if (!string(header, 257, 5).equals("ustar")) {
+            throw new IOException(index == 0
+                    ? archive + " is not a tar archive"
+                    : String.format("%s: header %d is not a ustar header", archive, index));
+        }
+        // The checksum is worked out with its own field as spaces. Some old
+        // tars summed signed bytes, so either is accepted
+        long unsigned = 0;
+        long signed = 0;
+        for (int i = 0; i < BLOCK; i += 1) {
+            byte b = i >= 148 && i < 156 ? (byte) ' ' : header[i];
+            unsigned += b & 0xff;
+            signed += b;
+        }
+        long expected = number(header, 148, 8);
+        if (expected != unsigned && expected != signed) {
+            throw new IOException(String.format("%s: header %d has a bad checksum", archive, index));
+        }
+    }
+
+    /**
+     * Read the data for a member, and the padding after it.
+     */
+    private static byte[] data(DataInputStream in, long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Member too big to read: " + size + " bytes");
+        }
+        byte[] data = new byte[(int) size];
+        in.readFully(data);
+        skipFully(in, padding(size));
+        return data;
+    }
+
+    /**
+     * Skip the data for a member, and the padding after it.
+     */
+    private static void skip(DataInputStream in, long size) throws IOException {
+        skipFully(in, size + padding(size));
+    }
+
+    private static void skipFully(InputStream in, long count) throws IOException {
+        long remaining = count;
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("Archive ends part way through a member");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static long padding(long size) {
+        return (BLOCK - size % BLOCK) % BLOCK;
+    }
+
+    private static boolean isZero(byte[] header) {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String name(byte[] header) {
+        String name = string(header, 0, 100);
+        if (string(header, 257, 5).equals("ustar")) {
+            String prefix = string(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    /**
+     * A NUL terminated string from a header field.
+     */
+    private static String string(byte[] b, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && b[end] != 0) {
+            end += 1;
+        }
+        return new String(b, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A number from a header field, either in octal or, for big numbers, in
+     * GNU base 256.
+     */
+    private static long number(byte[] b, int offset, int length) {
+        long result = 0;
+        if ((b[offset] & 0x80) != 0) {
+            for (int i = offset + 1; i < offset + length; i += 1) {
+                result = (result << 8) | (b[i] & 0xff);
+            }
+            return result;
+        }
+        for (int i = offset; i < offset + length; i += 1) {
+            if (b[i] >= '0' && b[i] <= '7') {
+                result = (result << 3) | (b[i] - '0');
+            } else if (b[i] != ' ' || result != 0) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Records in a pax header look like "30 path=some/long/file/name\n",
+     * where the number is the length of the whole record.
+     *
+     * @param index of the header in the archive, for messages
+     */
+    private Map<String, String> pax(byte[] data, int index) throws IOException {
+        Map<String, String> result = new HashMap<>();
+        int i = 0;
+        while (i < data.length) {
+            int space = i;
+            while (space < data.length && data[space] != ' ') {
+                space += 1;
+            }
+            if (space == data.length) {
+                break;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(data, i, space - i, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException ex) {
+                throw badPax(index);
+            }
+            // At least the number, the space and the newline
+            if (length < space - i + 2 || i + length > data.length) {
+                throw badPax(index);
+            }
+            String record = new String(data, space + 1, i + length - space - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            if (equals > 0) {
+                result.put(record.substring(0, equals), record.substring(equals + 1));
+            }
+            i += length;
+        }
+        return result;
+    }
+
+    private IOException badPax(int index) {
+        return new IOException(String.format("%s: header %d has a bad pax record", archive, index));
+    }
+
+    private static String normalize(String name) {
+        while (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        while (name.endsWith("/")) {
+            name = name.substring(0, name.length() - 1);
+        }
+        return name;
+    }
+
+    /**
+     * Work out where a symbolic link points, as a path in the archive.
+     */
+    private static String resolve(String name, String link) {
+        Deque<String> parts = new ArrayDeque<>();
+        if (!link.startsWith("/")) {
+            String[] from = name.split("/");
+            for (int i = 0; i < from.length - 1; i += 1) {
+                parts.addLast(from[i]);
+            }
+        }
+        for (String part : link.split("/")) {
+            if (part.equals("..")) {
+                parts.pollLast();
+            } else if (!part.isEmpty() && !part.equals(".")) {
+                parts.addLast(part);
+            }
+        }
+        return String.join("/", parts);
+    }
+
+    /**
+     * @return the number of files kept from the archive
+     */
+    public int size() {
+        return members.size();
+    }
+
+    @Override
+    public File getRoot() {
+        return archive;
+    }
+
+    @Override
+    public byte[] read(String target) throws IOException {
+        Member m = members.get(target);
+        if (m == null) {
+            throw new FileNotFoundException(archive + ": " + target);
+        }
+        return m.data;
+    }
+
+    @Override
+    public boolean exists(String target) {
+        return members.containsKey(target);
+    }
+
+    @Override
+    public long lastModified(String target) {
+        Member m = members.get(target);
+        return m != null ? m.modified : 0;
+    }
+
+    @Override
+    public long size(String target) {
+        Member m = members.get(target);
+        return m != null ? m.data.length : 0;
+    }
+
+    @Override
+    public String toString() {
+        return archive.toString();
+    }
+
+}
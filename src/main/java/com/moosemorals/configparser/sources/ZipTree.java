@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.sources;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+/**
+ * Files from a zip archive, read with the zip file system provider as they
+ * are wanted.
+ *
+ * As with {@link TarTree}, if everything in the archive is in one folder then
+ * paths are relative to that folder.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ZipTree implements SourceTree {
+
+    private final File archive;
+    private final FileSystem fs;
+    private final Path top;
+
+    /**
+     * @param archive zip file to read from
+     * @throws IOException
+     */
+    public ZipTree(File archive) throws IOException {
+        this.archive = archive;
+        this.fs = FileSystems.newFileSystem(archive.toPath(), (ClassLoader) null);
+        this.top = top(fs.getPath("/"));
+    }
+
+    private static Path top(Path root) throws IOException {
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+            Iterator<Path> it = entries.iterator();
+            if (it.hasNext()) {
+                Path first = it.next();
+                if (!it.hasNext() && Files.isDirectory(first)) {
+                    return first;
+                }
+            }
+        }
+        return root;
+    }
+
+    private Path resolve(String target) {
+        return top.resolve(target);
+    }
+
+    @Override
+    public File getRoot() {
+        return archive;
+    }
+
+    @Override
+    public byte[] read(String target) throws IOException {
+        try {
+            return Files.readAllBytes(resolve(target));
+        } catch (NoSuchFileException ex) {
+            throw new FileNotFoundException(archive + ": " + target);
+        }
+    }
+
+    @Override
+    public boolean exists(String target) {
+        return Files.isRegularFile(resolve(target));
+    }
+
+    @Override
+    public long lastModified(String target) {
+        try {
+            return Files.getLastModifiedTime(resolve(target)).toMillis();
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    @Override
+    public long size(String target) {
+        try {
+            return Files.size(resolve(target));
+        } catch (IOException ex) {
+            return 0;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        fs.close();
+    }
+
+    @Override
+    public String toString() {
+        return archive.toString();
+    }
+
+}
@@ -0,0 +1,369 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes made up Kconfig trees of any size, for testing the parser and
+ * writers at scale without a real source tree.
+ *
+ * The top level file is "Kconfig". Each file sources up to
+ * {@link #setFanOut fan out} others, so files are nested about
+ * log(files) deep, and each defines its share of the symbols inside
+ * randomly nested menus, if blocks and choices. Entries depend on, select
+ * and default to symbols defined before them, so the result can be
+ * resolved as well as parsed. Only syntax that {@link
+ * com.moosemorals.configparser.parsers.MenuParser} understands is used.
+ *
+ * The same seed and settings always give the same files.
+ *
+ * Usage: CorpusGenerator &lt;folder&gt; [symbols] [files] [seed]
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class CorpusGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(CorpusGenerator.class);
+
+    private static final String[] WORDS = {
+        "support", "driver", "for", "the", "device", "controller", "enable",
+        "this", "option", "if", "you", "have", "a", "say", "Y", "here",
+        "module", "will", "be", "called", "kernel", "memory", "bus", "when",
+        "unsure", "N", "interface", "hardware", "feature", "debugging"
+    };
+
+    // Symbol types, as written after the config line
+    private static final int BOOL = 0;
+    private static final int TRISTATE = 1;
+    private static final int INT = 2;
+    private static final int HEX = 3;
+    private static final int STRING = 4;
+
+    private final long seed;
+    private int symbols = 10000;
+    private int files = 100;
+    private int fanOut = 4;
+    private int maxDepth = 8;
+    private int helpLines = 12;
+    private int selects = 4;
+
+    // Filled in as symbols are written, so later ones can refer back
+    private byte[] types;
+    private int next;
+
+    public CorpusGenerator(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * @param symbols how many symbols to define in total
+     */
+    public void setSymbols(int symbols) {
+        this.symbols = symbols;
+    }
+
+    /**
+     * @param files how many files, including the top level one
+     */
+    public void setFiles(int files) {
+        this.files = files;
+    }
+
+    /**
+     * @param fanOut most files sourced from any one file
+     */
+    public void setFanOut(int fanOut) {
+        this.fanOut = fanOut;
+    }
+
+    /**
+     * @param maxDepth deepest nesting of menus, ifs and choices within a
+     * file
+     */
+    public void setMaxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * @param helpLines most lines in a help block
+     */
+    public void setHelpLines(int helpLines) {
+        this.helpLines = helpLines;
+    }
+
+    /**
+     * @param selects most selects (and as many implies) from one config
+     */
+    public void setSelects(int selects) {
+        this.selects = selects;
+    }
+
+    /**
+     * @param index
+     * @return path of a file, relative to the root
+     */
+    public static String path(int index) {
+        if (index == 0) {
+            return "Kconfig";
+        }
+        return String.format("gen/%d/Kconfig.%d", index / 100, index);
+    }
+
+    public static String symbol(int id) {
+        return String.format("GEN_%d", id);
+    }
+
+    /**
+     * Write the tree.
+     *
+     * @param root folder to write into, which is created if needed
+     * @throws IOException
+     */
+    public void generate(File root) throws IOException {
+        types = new byte[symbols];
+        next = 0;
+        long bytes = 0;
+        for (int f = 0; f < files; f += 1) {
+            int end = (int) ((long) symbols * (f + 1) / files);
+            byte[] data = file(f, end).getBytes(StandardCharsets.UTF_8);
+            File file = new File(root, path(f));
+            file.getParentFile().mkdirs();
+            Files.write(file.toPath(), data);
+            bytes += data.length;
+        }
+        log.info("Wrote {} symbols in {} files, {} bytes", symbols, files, bytes);
+    }
+
+    private String file(int index, int end) {
+        Random random = new Random(seed * 1000003 + index);
+        StringBuilder b = new StringBuilder();
+        b.append("#\n# Generated file ").append(index).append(", seed ").append(seed).append("\n#\n\n");
+        if (index == 0) {
+            b.append("mainmenu \"Generated Configuration\"\n\n");
+        }
+
+        List<String> sources = new ArrayList<>();
+        for (int c = index * fanOut + 1; c <= index * fanOut + fanOut && c < files; c += 1) {
+            sources.add(path(c));
+        }
+
+        List<String> open = new ArrayList<>();
+        while (next < end || !sources.isEmpty()) {
+            int roll = random.nextInt(100);
+            if (!sources.isEmpty() && (next >= end || roll < 5)) {
+                b.append("source \"").append(sources.remove(0)).append("\"\n\n");
+            } else if (next >= end) {
+                break;
+            } else if (roll < 12 && open.size() < maxDepth) {
+                open.add("endmenu");
+                b.append("menu \"").append(words(random, 3)).append("\"\n");
+                if (next > 0 && random.nextBoolean()) {
+                    b.append("\tdepends on ").append(expression(random, 2, next)).append("\n");
+                }
+                if (next > 0 && random.nextInt(4) == 0) {
+                    b.append("\tvisible if ").append(symbol(random.nextInt(next))).append("\n");
+                }
+                b.append("\n");
+            } else if (roll < 18 && open.size() < maxDepth && next > 0) {
+                open.add("endif");
+                b.append("if ").append(expression(random, 2, next)).append("\n\n");
+            } else if (roll < 30 && !open.isEmpty()) {
+                b.append(open.remove(open.size() - 1)).append("\n\n");
+            } else if (roll < 33 && end - next >= 2) {
+                choice(random, b, Math.min(end - next, 2 + random.nextInt(3)));
+            } else if (roll < 35) {
+                b.append("comment \"").append(words(random, 4)).append("\"\n\n");
+            } else {
+                config(random, b, roll < 40 ? "menuconfig" : "config");
+            }
+        }
+        while (!open.isEmpty()) {
+            b.append(open.remove(open.size() - 1)).append("\n\n");
+        }
+        return b.toString();
+    }
+
+    private void config(Random random, StringBuilder b, String keyword) {
+        int id = next++;
+        int roll = random.nextInt(10);
+        int type = roll < 4 ? TRISTATE : roll < 7 ? BOOL : roll < 8 ? INT : roll < 9 ? HEX : STRING;
+        types[id] = (byte) type;
+
+        b.append(keyword).append(" ").append(symbol(id)).append("\n");
+        b.append("\t").append(typeName(type)).append(" \"").append(words(random, 5)).append("\"\n");
+        if (id > 0 && random.nextInt(3) > 0) {
+            b.append("\tdepends on ").append(expression(random, 3, id)).append("\n");
+        }
+        switch (type) {
+            case BOOL:
+            case TRISTATE:
+                for (int i = random.nextInt(selects + 1); i > 0 && id > 0; i -= 1) {
+                    int target = random.nextInt(id);
+                    if (types[target] == BOOL || types[target] == TRISTATE) {
+                        b.append("\tselect ").append(symbol(target));
+                        if (random.nextInt(4) == 0) {
+                            b.append(" if ").append(symbol(random.nextInt(id)));
+                        }
+                        b.append("\n");
+                    }
+                }
+                if (id > 0 && random.nextInt(4) == 0) {
+                    int target = random.nextInt(id);
+                    if (types[target] == BOOL || types[target] == TRISTATE) {
+                        b.append("\timply ").append(symbol(target)).append("\n");
+                    }
+                }
+                b.append("\tdefault ").append(random.nextBoolean() ? "y" : "n");
+                if (id > 0 && random.nextBoolean()) {
+                    b.append(" if ").append(expression(random, 2, id));
+                }
+                b.append("\n");
+                break;
+            case INT:
+                int max = 1 + random.nextInt(4096);
+                b.append("\trange 0 ").append(max).append("\n");
+                b.append("\tdefault ").append(random.nextInt(max)).append("\n");
+                break;
+            case HEX:
+                b.append("\tdefault 0x").append(Integer.toHexString(random.nextInt())).append("\n");
+                break;
+            case STRING:
+                b.append("\tdefault \"").append(words(random, 2)).append("\"\n");
+                break;
+        }
+        help(random, b);
+        b.append("\n");
+    }
+
+    private void choice(Random random, StringBuilder b, int count) {
+        b.append("choice\n");
+        b.append("\tprompt \"").append(words(random, 3)).append("\"\n");
+        b.append("\tdefault ").append(symbol(next)).append("\n");
+        help(random, b);
+        b.append("\n");
+        for (int i = 0; i < count; i += 1) {
+            int id = next++;
+            types[id] = BOOL;
+            b.append("config ").append(symbol(id)).append("\n");
+            b.append("\tbool \"").append(words(random, 3)).append("\"\n");
+            if (id > count && random.nextInt(3) == 0) {
+                b.append("\tdepends on ").append(symbol(random.nextInt(id - i))).append("\n");
+            }
+            b.append("\n");
+        }
+        b.append("endchoice\n\n");
+    }
+
+    private void help(Random random, StringBuilder b) {
+        int lines = random.nextInt(helpLines + 1);
+        if (lines == 0) {
+            return;
+        }
+        b.append("\thelp\n");
+        for (int i = 0; i < lines; i += 1) {
+            if (i > 0 && random.nextInt(6) == 0) {
+                b.append("\n");
+            }
+            b.append("\t  ").append(words(random, 6 + random.nextInt(8))).append(".\n");
+        }
+    }
+
+    /**
+     * Some symbols defined before the current one, joined with && and ||,
+     * sometimes negated or compared.
+     *
+     * @param bound symbols from here on are left out, so that a config only
+     * refers to those defined before it
+     */
+    private String expression(Random random, int terms, int bound) {
+        StringBuilder b = new StringBuilder();
+        int count = 1 + random.nextInt(terms);
+        for (int i = 0; i < count; i += 1) {
+            if (i > 0) {
+                b.append(random.nextInt(3) == 0 ? " || " : " && ");
+            }
+            int target = random.nextInt(bound);
+            int roll = random.nextInt(8);
+            if (roll == 0) {
+                b.append("!");
+            }
+            b.append(symbol(target));
+            if (roll == 1 && types[target] == TRISTATE) {
+                b.append(" != n");
+            }
+        }
+        return b.toString();
+    }
+
+    private static String words(Random random, int count) {
+        StringBuilder b = new StringBuilder();
+        for (int i = 0; i < count; i += 1) {
+            if (i > 0) {
+                b.append(' ');
+            }
+            b.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return b.toString();
+    }
+
+    private static String typeName(int type) {
+        switch (type) {
+            case BOOL:
+                return "bool";
+            case TRISTATE:
+                return "tristate";
+            case INT:
+                return "int";
+            case HEX:
+                return "hex";
+            default:
+                return "string";
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: CorpusGenerator <folder> [symbols] [files] [seed]");
+            System.exit(1);
+        }
+        CorpusGenerator generator = new CorpusGenerator(args.length > 3 ? Long.parseLong(args[3]) : 1);
+        if (args.length > 1) {
+            generator.setSymbols(Integer.parseInt(args[1]));
+        }
+        if (args.length > 2) {
+            generator.setFiles(Integer.parseInt(args[2]));
+        }
+        generator.generate(new File(args[0]));
+    }
+
+}
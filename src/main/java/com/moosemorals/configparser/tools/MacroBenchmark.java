@@ -0,0 +1,641 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.tools;
+
+import com.moosemorals.configparser.Environment;
+import com.moosemorals.configparser.TreeWriter;
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import javax.json.Json;
+import javax.json.JsonArrayBuilder;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.json.JsonWriter;
+import javax.json.JsonWriterFactory;
+import javax.json.stream.JsonGenerator;
+import javax.xml.stream.XMLStreamException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Parses a whole tree and writes it as XML, a few times over, and checks
+ * how long it took and how much memory it used against a stored baseline.
+ *
+ * Each metric is the median over the measured runs, along with its spread
+ * (the median absolute deviation). Most are better when lower; files per
+ * second is better when higher. A metric has regressed when it is worse than
+ * the baseline by more than the threshold, as a fraction of the baseline,
+ * and also by more than {@link #NOISE} times the spread of the two sets of
+ * runs added together. Metrics that can't be measured on this platform come
+ * out as -1 and aren't compared.
+ *
+ * Timings are only comparable on the same machine, so the baseline file
+ * keeps one baseline for each host and corpus. Hosts are named by a label
+ * given with --host (or the CONFIGPARSER_BENCH_HOST environment variable)
+ * rather than their host name, so that CI runners, which come and go, can
+ * share one. Make a baseline with --save on the machine that will run the
+ * checks. A host with no baseline fails, unless --allow-missing is given.
+ *
+ * Usage: MacroBenchmark [options]
+ * <pre>
+ *   --root &lt;folder&gt;          parse a real tree
+ *   --generate &lt;symbols&gt; &lt;files&gt;  parse a generated tree (default 20000 1000)
+ *   --baseline &lt;file&gt;        baseline to compare against (default benchmarks/baseline.json)
+ *   --threshold &lt;fraction&gt;   allowed regression (default 0.10)
+ *   --runs &lt;n&gt;               measured runs (default 11)
+ *   --warmup &lt;n&gt;             unmeasured runs first (default 3)
+ *   --parallel               parse and write in a pool of one thread per core
+ *   --host &lt;label&gt;          which baseline to use (default $CONFIGPARSER_BENCH_HOST, or "local")
+ *   --save                   write the results as the new baseline for this host
+ *   --allow-missing          pass, with a warning, if there is no baseline for this host
+ * </pre>
+ *
+ * Exits with status 1 if anything regressed, and 3 if there is no baseline
+ * to compare with.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class MacroBenchmark {
+
+    private static final Logger log = LoggerFactory.getLogger(MacroBenchmark.class);
+
+    public static final String PARSE_MILLIS = "parseMillis";
+    public static final String WRITE_MILLIS = "writeMillis";
+    public static final String TOTAL_MILLIS = "totalMillis";
+    public static final String FILES_PER_SECOND = "filesPerSecond";
+    public static final String ALLOCATED_MB = "allocatedMB";
+    public static final String PEAK_HEAP_MB = "peakHeapMB";
+    public static final String PEAK_RSS_MB = "peakRssMB";
+
+    // Metrics where a bigger number is better
+    private static final Set<String> HIGHER_IS_BETTER = Collections.singleton(FILES_PER_SECOND);
+
+    /**
+     * How many spreads a metric has to move by before it counts as a
+     * regression, whatever the threshold.
+     */
+    public static final double NOISE = 3;
+
+    private static final double MB = 1024 * 1024;
+
+    /**
+     * The median of one metric over several runs, and how much the runs
+     * varied.
+     */
+    public static final class Stat {
+
+        private final double median;
+        private final double spread;
+
+        public Stat(double median, double spread) {
+            this.median = median;
+            this.spread = spread;
+        }
+
+        /**
+         * @param values one value from each run, which gets sorted
+         * @return
+         */
+        public static Stat of(List<Double> values) {
+            Collections.sort(values);
+            double median = values.get(values.size() / 2);
+            List<Double> deviations = new ArrayList<>(values.size());
+            for (double v : values) {
+                deviations.add(Math.abs(v - median));
+            }
+            Collections.sort(deviations);
+            return new Stat(median, deviations.get(deviations.size() / 2));
+        }
+
+        public double getMedian() {
+            return median;
+        }
+
+        public double getSpread() {
+            return spread;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Stat)) {
+                return false;
+            }
+            Stat other = (Stat) obj;
+            return median == other.median && spread == other.spread;
+        }
+
+        @Override
+        public int hashCode() {
+            return Double.hashCode(median) * 31 + Double.hashCode(spread);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.1f +/- %.1f", median, spread);
+        }
+    }
+
+    private final File root;
+    private final Environment environment;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param root folder holding the tree to parse
+     * @param environment
+     * @param pool pool to parse and write in, or null for the calling
+     * thread
+     */
+    public MacroBenchmark(File root, Environment environment, ForkJoinPool pool) {
+        this.root = root;
+        this.environment = environment;
+        this.pool = pool;
+    }
+
+    /**
+     * Counts what it's given and keeps none of it.
+     */
+    private static class Sink extends Writer {
+
+        long count;
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * Parse and write the tree once.
+     *
+     * @return metrics for the run
+     * @throws IOException
+     */
+    public Map<String, Double> run() throws IOException {
+        System.gc();
+        resetPeaks();
+        Map<Long, Long> allocated = allocatedBytes();
+
+        long start = System.nanoTime();
+        ParseSession session = new ParseSession(root, environment);
+        if (pool != null) {
+            session.setPool(pool);
+        }
+        Menu top = session.parse("Kconfig");
+        long parsed = System.nanoTime();
+        try {
+            new TreeWriter(pool).write(top, new Sink());
+        } catch (XMLStreamException ex) {
+            throw new IOException(ex);
+        }
+        long written = System.nanoTime();
+        // Before any pool workers get a chance to retire
+        Map<Long, Long> after = allocatedBytes();
+
+        Set<String> files = new HashSet<>();
+        countFiles(top, files);
+
+        Map<String, Double> result = new LinkedHashMap<>();
+        result.put(PARSE_MILLIS, (parsed - start) / 1e6);
+        result.put(WRITE_MILLIS, (written - parsed) / 1e6);
+        result.put(TOTAL_MILLIS, (written - start) / 1e6);
+        result.put(FILES_PER_SECOND, files.size() / ((parsed - start) / 1e9));
+        result.put(ALLOCATED_MB, allocated != null && after != null ? allocatedSince(allocated, after) / MB : -1);
+        result.put(PEAK_HEAP_MB, peakHeap() / MB);
+        long rss = peakRss();
+        result.put(PEAK_RSS_MB, rss >= 0 ? rss / MB : -1);
+        return result;
+    }
+
+    /**
+     * Run a few times and take the median and spread of each metric.
+     *
+     * @param warmup runs to throw away first
+     * @param runs runs to measure
+     * @return
+     * @throws IOException
+     */
+    public Map<String, Stat> run(int warmup, int runs) throws IOException {
+        for (int i = 0; i < warmup; i += 1) {
+            run();
+        }
+        Map<String, List<Double>> all = new LinkedHashMap<>();
+        for (int i = 0; i < runs; i += 1) {
+            Map<String, Double> one = run();
+            log.debug("Run {}: {}", i, one);
+            for (Map.Entry<String, Double> m : one.entrySet()) {
+                all.computeIfAbsent(m.getKey(), k -> new ArrayList<>()).add(m.getValue());
+            }
+        }
+        Map<String, Stat> result = new LinkedHashMap<>();
+        for (Map.Entry<String, List<Double>> m : all.entrySet()) {
+            result.put(m.getKey(), Stat.of(m.getValue()));
+        }
+        return result;
+    }
+
+    private static void countFiles(Container container, Set<String> files) {
+        for (Entry e : container.getEntries()) {
+            files.add(e.getLocation().getFile());
+            if (e instanceof Container) {
+                countFiles((Container) e, files);
+            }
+        }
+    }
+
+    /**
+     * @return bytes allocated so far by each live thread, by thread id, or
+     * null if the JVM can't say
+     */
+    private static Map<Long, Long> allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return null;
+        }
+        com.sun.management.ThreadMXBean sun = (com.sun.management.ThreadMXBean) threads;
+        if (!sun.isThreadAllocatedMemorySupported() || !sun.isThreadAllocatedMemoryEnabled()) {
+            return null;
+        }
+        long[] ids = threads.getAllThreadIds();
+        long[] bytes = sun.getThreadAllocatedBytes(ids);
+        Map<Long, Long> result = new HashMap<>();
+        for (int i = 0; i < ids.length; i += 1) {
+            if (bytes[i] > 0) {
+                result.put(ids[i], bytes[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Add up what each thread allocated between two samples. Threads that
+     * started in between count from zero. A thread that finished in between
+     * is lost, which is why the pool is sampled as soon as the run is done
+     * and why main() gives --parallel runs a pool of their own.
+     */
+    private static long allocatedSince(Map<Long, Long> before, Map<Long, Long> after) {
+        long total = 0;
+        for (Map.Entry<Long, Long> t : after.entrySet()) {
+            total += t.getValue() - before.getOrDefault(t.getKey(), 0L);
+        }
+        return total;
+    }
+
+    private static void resetPeaks() {
+        for (MemoryPoolMXBean p : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (p.getType() == MemoryType.HEAP) {
+                p.resetPeakUsage();
+            }
+        }
+        // Linux resets the peak RSS when 5 is written here
+        try (FileWriter out = new FileWriter("/proc/self/clear_refs")) {
+            out.write("5");
+        } catch (IOException ex) {
+            log.trace("Can't reset peak RSS: {}", ex.toString());
+        }
+    }
+
+    private static long peakHeap() {
+        long total = 0;
+        for (MemoryPoolMXBean p : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (p.getType() == MemoryType.HEAP) {
+                total += p.getPeakUsage().getUsed();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return peak resident set size in bytes, or -1 if not on Linux
+     */
+    private static long peakRss() {
+        try {
+            for (String line : Files.readAllLines(Paths.get("/proc/self/status"), StandardCharsets.UTF_8)) {
+                if (line.startsWith("VmHWM:")) {
+                    // "VmHWM:    123456 kB"
+                    String[] parts = line.trim().split("\\s+");
+                    return Long.parseLong(parts[1]) * 1024;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            log.trace("Can't read peak RSS: {}", ex.toString());
+        }
+        return -1;
+    }
+
+    /**
+     * @param baseline
+     * @param current
+     * @param threshold how much worse a metric can get, as a fraction of
+     * the baseline
+     * @return a description of each metric that regressed, empty if none
+     * did
+     */
+    public static List<String> compare(Map<String, Stat> baseline, Map<String, Stat> current, double threshold) {
+        List<String> regressions = new ArrayList<>();
+        for (Map.Entry<String, Stat> b : baseline.entrySet()) {
+            Stat c = current.get(b.getKey());
+            double base = b.getValue().getMedian();
+            if (c == null || c.getMedian() < 0 || base <= 0) {
+                continue;
+            }
+            double allowed = Math.max(base * threshold, NOISE * (b.getValue().getSpread() + c.getSpread()));
+            double change = HIGHER_IS_BETTER.contains(b.getKey())
+                    ? base - c.getMedian()
+                    : c.getMedian() - base;
+            if (change > allowed) {
+                regressions.add(String.format("%s: %s, baseline %s (%+.0f%%)", b.getKey(), c, b.getValue(), (c.getMedian() - base) * 100 / base));
+            }
+        }
+        return regressions;
+    }
+
+    /**
+     * @return the label for this machine from the environment, or "local"
+     */
+    public static String host() {
+        String label = System.getenv("CONFIGPARSER_BENCH_HOST");
+        return label != null && !label.isEmpty() ? label : "local";
+    }
+
+    /**
+     * @param in baseline file
+     * @param host runner label, as given with --host or from {@link #host()}
+     * @param corpus
+     * @return the baseline for the host and corpus, or null if there isn't
+     * one
+     */
+    public static Map<String, Stat> readBaseline(Reader in, String host, String corpus) {
+        JsonObject found = null;
+        try (JsonReader reader = Json.createReader(in)) {
+            for (JsonValue v : reader.readObject().getJsonArray("baselines")) {
+                JsonObject b = (JsonObject) v;
+                if (host.equals(b.getString("host")) && corpus.equals(b.getString("corpus"))) {
+                    found = b.getJsonObject("metrics");
+                }
+            }
+        }
+        if (found == null) {
+            return null;
+        }
+        Map<String, Stat> result = new LinkedHashMap<>();
+        for (Map.Entry<String, JsonValue> m : found.entrySet()) {
+            JsonObject stat = (JsonObject) m.getValue();
+            result.put(m.getKey(), new Stat(stat.getJsonNumber("median").doubleValue(), stat.getJsonNumber("spread").doubleValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Write a baseline file, replacing the baseline for one host and corpus
+     * and keeping the rest.
+     *
+     * @param existing the current baseline file, or null to start a new one
+     * @param out
+     * @param host runner label, as given with --host or from {@link #host()}
+     * @param corpus
+     * @param metrics
+     * @throws IOException
+     */
+    public static void writeBaseline(Reader existing, Writer out, String host, String corpus, Map<String, Stat> metrics) throws IOException {
+        JsonArrayBuilder baselines = Json.createArrayBuilder();
+        if (existing != null) {
+            try (JsonReader reader = Json.createReader(existing)) {
+                for (JsonValue v : reader.readObject().getJsonArray("baselines")) {
+                    JsonObject b = (JsonObject) v;
+                    if (!(host.equals(b.getString("host")) && corpus.equals(b.getString("corpus")))) {
+                        baselines.add(b);
+                    }
+                }
+            }
+        }
+
+        JsonObjectBuilder values = Json.createObjectBuilder();
+        for (Map.Entry<String, Stat> m : metrics.entrySet()) {
+            values.add(m.getKey(), Json.createObjectBuilder()
+                    .add("median", round(m.getValue().getMedian()))
+                    .add("spread", round(m.getValue().getSpread())));
+        }
+        baselines.add(Json.createObjectBuilder()
+                .add("host", host)
+                .add("corpus", corpus)
+                .add("java", System.getProperty("java.version"))
+                .add("metrics", values));
+
+        JsonWriterFactory factory = Json.createWriterFactory(
+                Collections.<String, Object>singletonMap(JsonGenerator.PRETTY_PRINTING, true));
+        StringWriter json = new StringWriter();
+        try (JsonWriter writer = factory.createWriter(json)) {
+            writer.writeObject(Json.createObjectBuilder().add("baselines", baselines).build());
+        }
+        // The pretty printer starts with a newline and doesn't end with one
+        out.write(json.toString().trim());
+        out.write("\n");
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 10) / 10.0;
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> s = Files.walk(dir)) {
+            s.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        String root = null;
+        int symbols = 20000;
+        int files = 1000;
+        File baseline = new File("benchmarks/baseline.json");
+        double threshold = 0.10;
+        int runs = 11;
+        int warmup = 3;
+        boolean parallel = false;
+        boolean save = false;
+        boolean allowMissing = false;
+        String host = host();
+
+        for (int i = 0; i < args.length; i += 1) {
+            switch (args[i]) {
+                case "--root":
+                    root = args[++i];
+                    break;
+                case "--generate":
+                    symbols = Integer.parseInt(args[++i]);
+                    files = Integer.parseInt(args[++i]);
+                    break;
+                case "--baseline":
+                    baseline = new File(args[++i]);
+                    break;
+                case "--threshold":
+                    threshold = Double.parseDouble(args[++i]);
+                    break;
+                case "--runs":
+                    runs = Integer.parseInt(args[++i]);
+                    break;
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--parallel":
+                    parallel = true;
+                    break;
+                case "--host":
+                    host = args[++i];
+                    break;
+                case "--save":
+                    save = true;
+                    break;
+                case "--allow-missing":
+                    allowMissing = true;
+                    break;
+                default:
+                    System.err.println("Unknown option " + args[i] + ", see the MacroBenchmark javadoc");
+                    System.exit(2);
+            }
+        }
+
+        String corpus;
+        File generated = null;
+        File tree;
+        if (root != null) {
+            corpus = "tree " + root;
+            tree = new File(root);
+        } else {
+            corpus = String.format("generated, %d symbols in %d files, seed 1", symbols, files);
+            generated = Files.createTempDirectory("corpus").toFile();
+            CorpusGenerator generator = new CorpusGenerator(1);
+            generator.setSymbols(symbols);
+            generator.setFiles(files);
+            generator.generate(generated);
+            tree = generated;
+        }
+        corpus += parallel ? ", parallel" : ", sequential";
+
+        Environment environment = new Environment();
+        environment.put("SRCARCH", "x86");
+        environment.put("ARCH", "x86");
+        environment.put("KERNELVERSION", "4.13");
+
+        // A pool of our own, so its workers are only ever used here and none
+        // retire part way through a run and take their allocation with them
+        ForkJoinPool pool = parallel ? new ForkJoinPool(Runtime.getRuntime().availableProcessors()) : null;
+        MacroBenchmark benchmark = new MacroBenchmark(tree, environment, pool);
+        Map<String, Stat> result;
+        long start = System.nanoTime();
+        try {
+            result = benchmark.run(warmup, runs);
+        } finally {
+            if (pool != null) {
+                pool.shutdown();
+            }
+            if (generated != null) {
+                delete(generated.toPath());
+            }
+        }
+        log.info("{} on {} in {}s: {}", corpus, host, TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start), result);
+
+        if (save) {
+            StringWriter out = new StringWriter();
+            if (baseline.exists()) {
+                try (Reader in = new FileReader(baseline)) {
+                    writeBaseline(in, out, host, corpus, result);
+                }
+            } else {
+                writeBaseline(null, out, host, corpus, result);
+            }
+            Files.write(baseline.toPath(), out.toString().getBytes(StandardCharsets.UTF_8));
+            log.info("Saved baseline for {} to {}", host, baseline);
+            return;
+        }
+
+        Map<String, Stat> base = null;
+        if (baseline.exists()) {
+            try (FileReader in = new FileReader(baseline)) {
+                base = readBaseline(in, host, corpus);
+            }
+        }
+        if (base == null) {
+            if (allowMissing) {
+                log.warn("No baseline for {} on {} in {}, run with --save to make one", corpus, host, baseline);
+                return;
+            }
+            log.error("No baseline for {} on {} in {}, run with --save to make one or --allow-missing to skip the check", corpus, host, baseline);
+            System.exit(3);
+        }
+        List<String> regressions = compare(base, result, threshold);
+        if (regressions.isEmpty()) {
+            log.info("No regressions beyond {}%", Math.round(threshold * 100));
+        } else {
+            for (String r : regressions) {
+                log.error("Regressed: {}", r);
+            }
+            System.exit(1);
+        }
+    }
+
+}
@@ -24,9 +24,10 @@
 package com.moosemorals.configparser.types;
 
 import com.moosemorals.configparser.SourceFile.Location;
-import com.moosemorals.configparser.XML;
-import java.util.LinkedList;
+import com.moosemorals.configparser.StructuredWriter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,25 +36,59 @@ import org.slf4j.LoggerFactory;
  *
  * @author Osric Wilkinson (osric@fluffypeople.com)
  */
-public class Choice extends Entry {
+public class Choice extends Entry implements Container {
 
-    private final Logger log = LoggerFactory.getLogger(Choice.class);
+    private static final long serialVersionUID = 1L;
 
-    private final List<Entry> entries;
+    private static final Logger log = LoggerFactory.getLogger(Choice.class);
 
-    public Choice(Location location, String symbol) {
+    private List<Entry> entries;
+
+    public Choice(Location location, Symbol symbol) {
         super(location, symbol);
-        this.entries = new LinkedList<>();
+        this.entries = new ArrayList<>();
     }
 
+    @Override
     public void addEntry(Entry e) {
         entries.add(e);
     }
 
     @Override
-    public void toXML(XML xml) throws XMLStreamException {
-        super.toXML(xml, "choice", x -> {
-            xml.add("entries", entries);
-        });
+    public void addEntries(int index, List<Entry> e) {
+        entries.addAll(index, e);
+    }
+
+    @Override
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public Choice copy(Map<Entry, Entry> copies) {
+        Choice result = (Choice) super.copy(copies);
+        List<Entry> children = getEntries();
+        result.entries = new ArrayList<>(children.size());
+        for (Entry e : children) {
+            result.entries.add(e.copy(copies));
+        }
+        return result;
+    }
+
+    @Override
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
+        startXML(xml);
+        xml.add("entries", getEntries());
+        xml.end();
+    }
+
+    /**
+     * Write everything but the entries, leaving the element open.
+     *
+     * @param xml
+     * @throws XMLStreamException
+     */
+    public void startXML(StructuredWriter xml) throws XMLStreamException {
+        startXML(xml, "choice");
     }
 }
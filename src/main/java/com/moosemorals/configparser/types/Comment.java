@@ -24,7 +24,7 @@
 package com.moosemorals.configparser.types;
 
 import com.moosemorals.configparser.SourceFile.Location;
-import com.moosemorals.configparser.XML;
+import com.moosemorals.configparser.StructuredWriter;
 import com.moosemorals.configparser.values.Default;
 import java.util.List;
 import javax.xml.stream.XMLStreamException;
@@ -37,9 +37,11 @@ import org.slf4j.LoggerFactory;
  */
 public class Comment extends Entry {
 
-    private final Logger log = LoggerFactory.getLogger(Comment.class);
+    private static final long serialVersionUID = 1L;
 
-    public Comment(Location location, String symbol) {
+    private static final Logger log = LoggerFactory.getLogger(Comment.class);
+
+    public Comment(Location location, Symbol symbol) {
         super(location, symbol);
     }
 
@@ -64,7 +66,7 @@ public class Comment extends Entry {
     }
 
     @Override
-    public void toXML(XML xml) throws XMLStreamException {
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
         super.toXML(xml, "comment", null);
     }
 
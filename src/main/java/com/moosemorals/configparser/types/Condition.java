@@ -23,38 +23,53 @@
  */
 package com.moosemorals.configparser.types;
 
-import com.moosemorals.configparser.XML;
+import com.moosemorals.configparser.StructuredWriter;
 import com.moosemorals.configparser.XMLable;
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.expr.SymbolValues;
+import com.moosemorals.configparser.expr.Tristate;
+import java.io.Serializable;
 import java.util.Objects;
 import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
+ * A condition attached to an entry or value, held as an expression tree.
  *
  * @author Osric Wilkinson (osric@fluffypeople.com)
  */
-public class Condition implements XMLable {
+public class Condition implements XMLable, Serializable {
 
-    private final Logger log = LoggerFactory.getLogger(Condition.class);
-    private final String condition;
+    private static final long serialVersionUID = 1L;
 
-    public Condition(String condition) {
+    private static final Logger log = LoggerFactory.getLogger(Condition.class);
+    private final Expr condition;
+
+    public Condition(Expr condition) {
         this.condition = condition;
     }
 
-    public boolean evaluate() {
-        throw new RuntimeException("Method not written yet");
+    public Expr getExpr() {
+        return condition;
+    }
+
+    /**
+     * @param values
+     * @return one of the {@link Tristate} values
+     */
+    public byte evaluate(SymbolValues values) {
+        return values.evaluate(condition);
     }
 
     @Override
     public String toString() {
-        return condition;
+        return condition.toString();
     }
 
     @Override
-    public void toXML(XML xml) throws XMLStreamException {
-        xml.add("condition", condition);
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
+        xml.add("condition", condition.toString());
     }
 
     @Override
@@ -24,12 +24,12 @@
 package com.moosemorals.configparser.types;
 
 import com.moosemorals.configparser.SourceFile.Location;
-import com.moosemorals.configparser.XML;
+import com.moosemorals.configparser.StructuredWriter;
 import com.moosemorals.configparser.values.Select;
 import com.moosemorals.configparser.values.Range;
 import com.moosemorals.configparser.values.Imply;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,44 +40,58 @@ import org.slf4j.LoggerFactory;
  */
 public class Config extends Entry {
 
+    private static final long serialVersionUID = 1L;
+
     private static final Logger log = LoggerFactory.getLogger(Config.class);
 
-    protected final String TYPE_NAME = "config";
+    protected static final String TYPE_NAME = "config";
 
-    protected final List<Select> selects;
-    protected final List<Imply> implies;
-    protected final List<Range> ranges;
+    protected List<Select> selects = Lists.empty();
+    protected List<Imply> implies = Lists.empty();
+    protected List<Range> ranges = Lists.empty();
 
-    public Config(Location location, String symbol) {
+    public Config(Location location, Symbol symbol) {
         super(location, symbol);
-        this.selects = new LinkedList<>();
-        this.implies = new LinkedList<>();
-        this.ranges = new LinkedList<>();
     }
 
     public void addSelect(Select select) {
-        if (!selects.contains(select)) {
-            selects.add(select);
-        }
+        selects = Lists.addUnique(selects, select);
     }
 
     public void addImplies(Imply imply) {
-        if (!implies.contains(imply)) {
-            implies.add(imply);
-        }
+        implies = Lists.addUnique(implies, imply);
     }
 
     public void addRange(Range range) {
-        if (!ranges.contains(range)) {
-            ranges.add(range);
-        }
+        ranges = Lists.addUnique(ranges, range);
+    }
+
+    @Override
+    public Config copy(Map<Entry, Entry> copies) {
+        Config result = (Config) super.copy(copies);
+        result.selects = Lists.copy(selects);
+        result.implies = Lists.copy(implies);
+        result.ranges = Lists.copy(ranges);
+        return result;
+    }
+
+    public List<Select> getSelects() {
+        return selects;
+    }
+
+    public List<Imply> getImplies() {
+        return implies;
+    }
+
+    public List<Range> getRanges() {
+        return ranges;
     }
 
     @Override
-    public void toXML(XML xml) throws XMLStreamException {
-        super.toXML(xml, "config", x -> {
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
+        super.toXML(xml, TYPE_NAME, x -> {
             xml.add("selects", selects);
-            xml.add("implies", selects);
+            xml.add("implies", implies);
             xml.add("ranges", ranges);
         });
     }
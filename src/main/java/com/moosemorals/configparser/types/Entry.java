@@ -23,39 +23,88 @@
  */
 package com.moosemorals.configparser.types;
 
-import com.moosemorals.configparser.SourceFile;
 import com.moosemorals.configparser.SourceFile.Location;
-import com.moosemorals.configparser.XML;
+import com.moosemorals.configparser.StructuredWriter;
 import com.moosemorals.configparser.XMLable;
+import com.moosemorals.configparser.expr.SymbolValues;
+import com.moosemorals.configparser.expr.Tristate;
 import com.moosemorals.configparser.values.Default;
 import com.moosemorals.configparser.values.Prompt;
 
 import javax.xml.stream.XMLStreamException;
-import java.util.LinkedList;
+import java.io.Serializable;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
-public abstract class Entry implements XMLable {
+public abstract class Entry implements XMLable, Serializable, Cloneable {
 
-    protected final SourceFile.Location location;
-    protected final String symbol;
-    protected final List<Default> defaults;
-    protected final List<Condition> depends;
-    protected final List<String> options;
+    private static final long serialVersionUID = 1L;
+
+    // Set again when read back from the cache, see setFile
+    protected transient FileTable files;
+    // Packed file id and line, see FileTable
+    protected long location;
+    protected final Symbol symbol;
+    protected List<Default> defaults = Lists.empty();
+    protected List<Condition> depends = Lists.empty();
+    protected List<String> options = Lists.empty();
     protected String type;
     protected String env;
     protected String prompt;
     protected String help;
 
-    public Entry(Location location, String symbol) {
-        this.location = location;
+    public Entry(Location location, Symbol symbol) {
+        this.files = location.getFileTable();
+        this.location = location.getPosition();
         this.symbol = symbol;
-        this.defaults = new LinkedList<>();
-        this.depends = new LinkedList<>();
-        this.options = new LinkedList<>();
     }
 
-    public String getSymbol() {
+    public Location getLocation() {
+        return new Location(files, location);
+    }
+
+    /**
+     * Move this entry, and any it holds, to a file in another table. Used
+     * for entries read back from the cache, whose file ids belong to the
+     * parse that wrote them. Line numbers are kept.
+     *
+     * @param files
+     * @param file id of the file in the new table
+     */
+    public void setFile(FileTable files, int file) {
+        this.files = files;
+        this.location = FileTable.pack(file, FileTable.line(location));
+        if (this instanceof Container) {
+            for (Entry e : ((Container) this).getEntries()) {
+                e.setFile(files, file);
+            }
+        }
+    }
+
+    /**
+     * Copy this entry, and any entries it holds, so that the copy can be
+     * changed without changing the original. Values, conditions and symbols
+     * don't change, so they are shared.
+     *
+     * @param copies every entry copied is added here, mapped to its copy
+     * @return the copy
+     */
+    public Entry copy(Map<Entry, Entry> copies) {
+        Entry result;
+        try {
+            result = (Entry) clone();
+        } catch (CloneNotSupportedException ex) {
+            throw new IllegalStateException(ex);
+        }
+        result.defaults = Lists.copy(defaults);
+        result.depends = Lists.copy(depends);
+        result.options = Lists.copy(options);
+        copies.put(this, result);
+        return result;
+    }
+
+    public Symbol getSymbol() {
         return this.symbol;
     }
 
@@ -84,7 +133,8 @@ public abstract class Entry implements XMLable {
     }
 
     public void setType(String type) {
-        this.type = type;
+        // There are only a handful of types, so share one copy of each
+        this.type = type != null ? type.intern() : null;
     }
 
     public String getHelp() {
@@ -99,24 +149,41 @@ public abstract class Entry implements XMLable {
         return depends;
     }
 
-    public void addDepends(Condition condition) {
-        if (!depends.contains(condition)) {
-            depends.add(condition);
+    /**
+     * @param values
+     * @return all the depends anded together, as a {@link Tristate}
+     */
+    public byte evaluateDepends(SymbolValues values) {
+        byte result = Tristate.Y;
+        for (Condition c : depends) {
+            result = Tristate.and(result, c.evaluate(values));
+            if (result == Tristate.N) {
+                break;
+            }
         }
+        return result;
+    }
+
+    public void addDepends(Condition condition) {
+        depends = Lists.addUnique(depends, condition);
     }
 
     public void addDefault(Default def) {
-        defaults.add(def);
+        defaults = Lists.add(defaults, def);
     }
 
     public void addOption(String option) {
-        options.add(option);
+        options = Lists.add(options, option);
     }
 
     public List<Default> getDefaults() {
         return defaults;
     }
 
+    public List<String> getOptions() {
+        return options;
+    }
+
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder().append("[").append(symbol);
@@ -155,9 +222,23 @@ public abstract class Entry implements XMLable {
         return result.toString();
     }
 
-    protected void toXML(XML xml, String typename, XMLGenerator xmlConsumer) throws XMLStreamException {
-        xml.start(typename, "file", location.getFile(), "line", location.getLine());
-        xml.add("symbol", symbol);
+    protected void toXML(StructuredWriter xml, String typename, XMLGenerator xmlConsumer) throws XMLStreamException {
+        startXML(xml, typename);
+
+        if (xmlConsumer != null) {
+            xmlConsumer.generate(xml);
+        }
+
+        xml.end();
+    }
+
+    /**
+     * Write the opening tag and the fields common to all entries, leaving
+     * the element open.
+     */
+    protected void startXML(StructuredWriter xml, String typename) throws XMLStreamException {
+        xml.start(typename, "file", files.getFile(location), "line", Integer.toString(FileTable.line(location)));
+        xml.add("symbol", symbol != null ? symbol.getName() : null);
         xml.add("type", type);
         xml.add("env", env);
         xml.add("help", help);
@@ -165,23 +246,11 @@ public abstract class Entry implements XMLable {
         xml.add("defaults", defaults);
         xml.add("depends", depends);
 
-        if (!options.isEmpty()) {
-            xml.start("options");
-            for (String option : options) {
-                xml.add("option", option);
-            }
-            xml.end();
-        }
-
-        if (xmlConsumer != null) {
-            xmlConsumer.generate(xml);
-        }
-
-        xml.end();
+        xml.addList("options", "option", options);
     }
 
     public interface XMLGenerator {
-        void generate(XML xml) throws XMLStreamException;
+        void generate(StructuredWriter xml) throws XMLStreamException;
     }
 
 }
@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.types;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns the paths of the files in one parse, so that a location can be
+ * packed into a long: the file id in the top half and the line number in the
+ * bottom. Paths are only looked up again when a location is written out.
+ * Safe to share between threads.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class FileTable {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private volatile String[] byId = new String[64];
+    private int count = 0;
+
+    public static long pack(int file, int line) {
+        return ((long) file << 32) | (line & 0xffffffffL);
+    }
+
+    public static int file(long location) {
+        return (int) (location >>> 32);
+    }
+
+    public static int line(long location) {
+        return (int) location;
+    }
+
+    /**
+     * @param path
+     * @return the id for the path, the same every time for the same path
+     */
+    public synchronized int intern(String path) {
+        Integer id = ids.get(path);
+        if (id != null) {
+            return id;
+        }
+        if (count == byId.length) {
+            String[] paths = new String[byId.length * 2];
+            System.arraycopy(byId, 0, paths, 0, count);
+            byId = paths;
+        }
+        byId[count] = path;
+        ids.put(path, count);
+        return count++;
+    }
+
+    /**
+     * @param id
+     * @return the path with the given id
+     * @throws IndexOutOfBoundsException if there's no such file
+     */
+    public String get(int id) {
+        String[] paths = byId;
+        if (id >= 0 && id < paths.length && paths[id] != null) {
+            return paths[id];
+        }
+        // As in SymbolTable, a path interned by another thread may not be
+        // visible without the lock
+        synchronized (this) {
+            if (id < 0 || id >= count) {
+                throw new IndexOutOfBoundsException("No file " + id);
+            }
+            return byId[id];
+        }
+    }
+
+    /**
+     * @param location
+     * @return path of the file a packed location is in
+     */
+    public String getFile(long location) {
+        return get(file(location));
+    }
+
+    public synchronized int size() {
+        return count;
+    }
+
+}
@@ -0,0 +1,93 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Helpers for the small lists that entries hold. Most entries have no
+ * options, selects or ranges and only one or two defaults and depends, so
+ * lists start as the shared empty list and become a two slot ArrayList on
+ * the first add.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+final class Lists {
+
+    private static final int FIRST_SIZE = 2;
+
+    private Lists() {
+    }
+
+    static <T> List<T> empty() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param list
+     * @param item
+     * @return the list with the item added, which might be a new list
+     */
+    static <T> List<T> add(List<T> list, T item) {
+        if (list.isEmpty() && !(list instanceof ArrayList)) {
+            list = new ArrayList<>(FIRST_SIZE);
+        }
+        list.add(item);
+        return list;
+    }
+
+    /**
+     * @param list
+     * @return a list with the same items that can be changed without
+     * changing the original
+     */
+    static <T> List<T> copy(List<T> list) {
+        return list.isEmpty() ? empty() : new ArrayList<>(list);
+    }
+
+    /**
+     * Add an item unless there's an equal one there already. Hash codes
+     * (which are cached all the way down to the expressions) are compared
+     * first, so equals is only called on likely matches. This is a linear
+     * scan on purpose: the lists hold one or two items, and a set per
+     * entry would cost more memory than the lists themselves.
+     *
+     * @param list
+     * @param item
+     * @return the list with the item added, which might be a new list
+     */
+    static <T> List<T> addUnique(List<T> list, T item) {
+        int hash = item.hashCode();
+        for (int i = 0; i < list.size(); i += 1) {
+            T other = list.get(i);
+            if (other == item || (other.hashCode() == hash && other.equals(item))) {
+                return list;
+            }
+        }
+        return add(list, item);
+    }
+
+}
@@ -24,9 +24,12 @@
 package com.moosemorals.configparser.types;
 
 import com.moosemorals.configparser.SourceFile.Location;
-import com.moosemorals.configparser.XML;
-import java.util.LinkedList;
+import com.moosemorals.configparser.StructuredWriter;
+import com.moosemorals.configparser.expr.SymbolValues;
+import com.moosemorals.configparser.expr.Tristate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,44 +38,95 @@ import org.slf4j.LoggerFactory;
  *
  * @author Osric Wilkinson (osric@fluffypeople.com)
  */
-public class Menu extends Entry {
+public class Menu extends Entry implements Container {
 
-    private final Logger log = LoggerFactory.getLogger(Menu.class);
+    private static final long serialVersionUID = 1L;
 
-    private final List<Entry> entries;
+    private static final Logger log = LoggerFactory.getLogger(Menu.class);
+
+    private List<Entry> entries;
     private Condition visibleIf;
 
-    public Menu(Location location, String symbol) {
+    public Menu(Location location, Symbol symbol) {
         super(location, symbol);
-        this.entries = new LinkedList<>();
+        this.entries = new ArrayList<>();
     }
 
+    @Override
     public void addEntry(Entry e) {
         entries.add(e);
     }
 
+    @Override
+    public void addEntries(int index, List<Entry> e) {
+        entries.addAll(index, e);
+    }
+
+    @Override
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    @Override
+    public Menu copy(Map<Entry, Entry> copies) {
+        Menu result = (Menu) super.copy(copies);
+        List<Entry> children = getEntries();
+        result.entries = new ArrayList<>(children.size());
+        for (Entry e : children) {
+            result.entries.add(e.copy(copies));
+        }
+        return result;
+    }
+
     public void setVisibleIf(Condition visibleIf) {
         this.visibleIf = visibleIf;
     }
 
+    public Condition getVisibleIf() {
+        return visibleIf;
+    }
+
+    /**
+     * @param values
+     * @return whether the menu is shown, from its depends and 'visible if',
+     * as a {@link Tristate}
+     */
+    public byte evaluateVisible(SymbolValues values) {
+        byte result = evaluateDepends(values);
+        if (visibleIf != null) {
+            result = Tristate.and(result, visibleIf.evaluate(values));
+        }
+        return result;
+    }
+
     @Override
     public String toString() {
         StringBuilder result = new StringBuilder();
 
         result.append("[menu: ").append(prompt);
 
-        result.append(entries.size()).append(entries.size() == 1 ? " entry" : " entries");
+        result.append(getEntries().size()).append(getEntries().size() == 1 ? " entry" : " entries");
 
         result.append("]");
         return result.toString();
     }
 
     @Override
-    public void toXML(XML xml) throws XMLStreamException {
-        super.toXML(xml, "menu", x -> {
-            xml.add("visibleIf", visibleIf);
-            xml.add("entries", entries);
-        });
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
+        startXML(xml);
+        xml.add("entries", getEntries());
+        xml.end();
+    }
+
+    /**
+     * Write everything but the entries, leaving the element open.
+     *
+     * @param xml
+     * @throws XMLStreamException
+     */
+    public void startXML(StructuredWriter xml) throws XMLStreamException {
+        startXML(xml, "menu");
+        xml.add("visibleIf", visibleIf);
     }
 
 }
@@ -24,7 +24,7 @@
 package com.moosemorals.configparser.types;
 
 import com.moosemorals.configparser.SourceFile;
-import com.moosemorals.configparser.XML;
+import com.moosemorals.configparser.StructuredWriter;
 import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,19 +35,21 @@ import org.slf4j.LoggerFactory;
  */
 public class MenuConfig extends Config {
 
-    private final Logger log = LoggerFactory.getLogger(MenuConfig.class);
+    private static final long serialVersionUID = 1L;
 
-    protected final String TYPE_NAME = "menuconfig";
+    private static final Logger log = LoggerFactory.getLogger(MenuConfig.class);
 
-    public MenuConfig(SourceFile.Location location, String symbol) {
+    protected static final String TYPE_NAME = "menuconfig";
+
+    public MenuConfig(SourceFile.Location location, Symbol symbol) {
         super(location, symbol);
     }
 
     @Override
-    public void toXML(XML xml) throws XMLStreamException {
-        super.toXML(xml, "menuconfig", x -> {
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
+        super.toXML(xml, TYPE_NAME, x -> {
             xml.add("selects", selects);
-            xml.add("implies", selects);
+            xml.add("implies", implies);
             xml.add("ranges", ranges);
         });
     }
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.types;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A Kconfig symbol name. There is exactly one Symbol for each name in a
+ * {@link SymbolTable}, so they can be compared with ==, and each has a small
+ * id that can be used as an array index.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class Symbol implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int id;
+    private final String name;
+    private final byte[] bytes;
+    private final int hash;
+
+    Symbol(int id, String name, byte[] bytes, int hash) {
+        this.id = id;
+        this.name = name;
+        this.bytes = bytes;
+        this.hash = hash;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    int getHash() {
+        return hash;
+    }
+
+    boolean matches(byte[] buf, int start, int end) {
+        if (end - start != bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i += 1) {
+            if (bytes[i] != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte[] toBytes(String name) {
+        return name.getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
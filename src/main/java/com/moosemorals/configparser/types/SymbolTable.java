@@ -0,0 +1,173 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser.types;
+
+import com.moosemorals.configparser.expr.ExprFactory;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Interns symbol names for one parse.
+ *
+ * Lookups can be made straight from the bytes of a file, and don't allocate
+ * or lock if the symbol has been seen before. New symbols get the next id.
+ * Safe to share between threads.
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public final class SymbolTable {
+
+    private static final int INITIAL_SIZE = 4096;
+
+    // Open addressing, resized (under the lock) when half full. Readers that
+    // miss because of a race fall back to the locked path.
+    private volatile Symbol[] table = new Symbol[INITIAL_SIZE];
+    private volatile Symbol[] byId = new Symbol[INITIAL_SIZE / 2];
+    private int count = 0;
+
+    private final ExprFactory exprs = new ExprFactory();
+    private final FileTable files = new FileTable();
+
+    public static int hash(byte[] b, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i += 1) {
+            h = 31 * h + b[i];
+        }
+        return h ^ (h >>> 16);
+    }
+
+    public Symbol intern(String name) {
+        byte[] b = Symbol.toBytes(name);
+        return intern(b, 0, b.length);
+    }
+
+    /**
+     * Find or create the symbol with a name given as UTF-8 bytes.
+     *
+     * @param buf
+     * @param start first byte of the name
+     * @param end one past the last byte
+     * @return
+     */
+    public Symbol intern(byte[] buf, int start, int end) {
+        int hash = hash(buf, start, end);
+        Symbol s = find(table, buf, start, end, hash);
+        if (s != null) {
+            return s;
+        }
+        synchronized (this) {
+            Symbol[] t = table;
+            s = find(t, buf, start, end, hash);
+            if (s != null) {
+                return s;
+            }
+            byte[] bytes = new byte[end - start];
+            System.arraycopy(buf, start, bytes, 0, bytes.length);
+            s = new Symbol(count, new String(bytes, StandardCharsets.UTF_8), bytes, hash);
+
+            if (count == byId.length) {
+                Symbol[] ids = new Symbol[byId.length * 2];
+                System.arraycopy(byId, 0, ids, 0, count);
+                byId = ids;
+            }
+            byId[count] = s;
+            count += 1;
+
+            if (count * 2 > t.length) {
+                t = new Symbol[t.length * 2];
+                for (int i = 0; i < count; i += 1) {
+                    insert(t, byId[i]);
+                }
+                table = t;
+            } else {
+                insert(t, s);
+            }
+            return s;
+        }
+    }
+
+    private static Symbol find(Symbol[] t, byte[] buf, int start, int end, int hash) {
+        int mask = t.length - 1;
+        int slot = hash & mask;
+        Symbol s;
+        while ((s = t[slot]) != null) {
+            if (s.getHash() == hash && s.matches(buf, start, end)) {
+                return s;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    private static void insert(Symbol[] t, Symbol s) {
+        int mask = t.length - 1;
+        int slot = s.getHash() & mask;
+        while (t[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        t[slot] = s;
+    }
+
+    /**
+     * @param id
+     * @return the symbol with the given id
+     * @throws IndexOutOfBoundsException if there's no such symbol
+     */
+    public Symbol get(int id) {
+        Symbol[] ids = byId;
+        if (id >= 0 && id < ids.length && ids[id] != null) {
+            return ids[id];
+        }
+        // Slots are filled after the array is published, so a symbol that
+        // has only just been interned may not be visible here yet
+        synchronized (this) {
+            if (id < 0 || id >= count) {
+                throw new IndexOutOfBoundsException("No symbol " + id);
+            }
+            return byId[id];
+        }
+    }
+
+    /**
+     * @return number of symbols, one more than the largest id
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * @return the factory for expressions over these symbols, so that an
+     * expression is shared as widely as its symbols are
+     */
+    public ExprFactory getExprFactory() {
+        return exprs;
+    }
+
+    /**
+     * @return the table of file paths that locations in this parse refer to
+     */
+    public FileTable getFileTable() {
+        return files;
+    }
+
+}
@@ -24,8 +24,11 @@
 package com.moosemorals.configparser.values;
 
 import com.moosemorals.configparser.types.Condition;
-import com.moosemorals.configparser.XML;
+import com.moosemorals.configparser.StructuredWriter;
 import com.moosemorals.configparser.XMLable;
+import com.moosemorals.configparser.expr.SymbolValues;
+import com.moosemorals.configparser.expr.Tristate;
+import java.io.Serializable;
 import java.util.Objects;
 import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
@@ -35,9 +38,13 @@ import org.slf4j.LoggerFactory;
  *
  * @author Osric Wilkinson (osric@fluffypeople.com)
  */
-public abstract class ConditionalValue implements XMLable {
+public abstract class ConditionalValue implements XMLable, Serializable {
 
-    private final Logger log = LoggerFactory.getLogger(ConditionalValue.class);
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(ConditionalValue.class);
+
+    private static final String[] NO_ATTRIBUTES = new String[0];
 
     protected final String value;
     protected final Condition condition;
@@ -51,8 +58,13 @@ public abstract class ConditionalValue implements XMLable {
         return value;
     }
 
-    public boolean evaluate() {
-        return condition.evaluate();
+    /**
+     * @param values
+     * @return whether this value applies, as a {@link Tristate}. Values
+     * without a condition always apply
+     */
+    public byte evaluate(SymbolValues values) {
+        return condition != null ? condition.evaluate(values) : Tristate.Y;
     }
 
     public Condition getCondition() {
@@ -102,15 +114,12 @@ public abstract class ConditionalValue implements XMLable {
     }
 
     @Override
-    public void toXML(XML xml) throws XMLStreamException {
-
-
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
         if (condition != null) {
             xml.add(getClass().getSimpleName().toLowerCase(), value, "if", condition.toString());
-        }        else {
-            xml.add(getClass().getSimpleName().toLowerCase(), value);
+        } else if (value != null) {
+            xml.add(getClass().getSimpleName().toLowerCase(), value, NO_ATTRIBUTES);
         }
-
     }
 
 }
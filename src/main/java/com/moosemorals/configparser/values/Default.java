@@ -24,6 +24,7 @@
 
 package com.moosemorals.configparser.values;
 
+import com.moosemorals.configparser.expr.Expr;
 import com.moosemorals.configparser.types.Condition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -34,11 +35,20 @@ import org.slf4j.LoggerFactory;
  */
 public class Default extends ConditionalValue {
 
-    private final Logger log = LoggerFactory.getLogger(Default.class);
+    private static final long serialVersionUID = 1L;
 
-    public Default(String value, Condition condition) {
-        super(value, condition);
+    private static final Logger log = LoggerFactory.getLogger(Default.class);
+
+    private final Expr expr;
+
+    public Default(Expr value, Condition condition) {
+        super(value.toString(), condition);
+        this.expr = value;
     }
- 
+
+    public Expr getExpr() {
+        return expr;
+    }
+
     
 }
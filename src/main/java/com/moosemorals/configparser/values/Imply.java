@@ -25,6 +25,7 @@
 package com.moosemorals.configparser.values;
 
 import com.moosemorals.configparser.types.Condition;
+import com.moosemorals.configparser.types.Symbol;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -34,10 +35,19 @@ import org.slf4j.LoggerFactory;
  */
 public class Imply extends ConditionalValue {
 
-    private final Logger log = LoggerFactory.getLogger(Imply.class);
+    private static final long serialVersionUID = 1L;
 
-    public Imply(String value, Condition condition) {
-        super(value, condition);
+    private static final Logger log = LoggerFactory.getLogger(Imply.class);
+
+    private final Symbol symbol;
+
+    public Imply(Symbol symbol, Condition condition) {
+        super(symbol.getName(), condition);
+        this.symbol = symbol;
+    }
+
+    public Symbol getSymbol() {
+        return symbol;
     }
 
 }
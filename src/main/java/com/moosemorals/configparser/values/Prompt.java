@@ -34,7 +34,9 @@ import org.slf4j.LoggerFactory;
  */
 public class Prompt extends ConditionalValue {
 
-    private final Logger log = LoggerFactory.getLogger(Prompt.class);
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(Prompt.class);
 
     public Prompt(String value, Condition condition) {
         super(value, condition);
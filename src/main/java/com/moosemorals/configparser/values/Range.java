@@ -24,8 +24,10 @@
 
 package com.moosemorals.configparser.values;
 
+import com.moosemorals.configparser.StructuredWriter;
 import com.moosemorals.configparser.types.Condition;
 import java.util.Objects;
+import javax.xml.stream.XMLStreamException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -35,7 +37,9 @@ import org.slf4j.LoggerFactory;
  */
 public class Range extends ConditionalValue {
 
-    private final Logger log = LoggerFactory.getLogger(Range.class);
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger log = LoggerFactory.getLogger(Range.class);
 
     private final String value2;
 
@@ -95,4 +99,15 @@ public class Range extends ConditionalValue {
         return result.toString();
     }
 
+    @Override
+    public void toXML(StructuredWriter xml) throws XMLStreamException {
+        if (value2 == null) {
+            super.toXML(xml);
+        } else if (condition != null) {
+            xml.add("range", value, "to", value2, "if", condition.toString());
+        } else {
+            xml.add("range", value, "to", value2);
+        }
+    }
+
 }
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.BatchParser;
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class BatchParserNGTest {
+
+    // Files that exist in the test tree
+    private static final int FILES = 4;
+
+    private Path tree;
+    private Environment x86;
+    private Environment arm;
+
+    public BatchParserNGTest() {
+    }
+
+    @BeforeMethod
+    public void copyTree() throws Exception {
+        tree = MenuParserNGTest.copyTestTree();
+        Files.createDirectories(tree.resolve("arch/arm"));
+        Files.write(tree.resolve("arch/arm/Kconfig"), "config ARM\n\tdef_bool y\n".getBytes(StandardCharsets.UTF_8));
+
+        x86 = MenuParserNGTest.testEnvironment();
+        arm = MenuParserNGTest.testEnvironment();
+        arm.put("SRCARCH", "arm");
+    }
+
+    @Test
+    public void test_matchesSeparateParses() throws IOException, XMLStreamException {
+        BatchParser parser = new BatchParser(tree.toFile());
+        List<Menu> tops = parser.parse("Kconfig", Arrays.asList(x86, arm, x86));
+
+        assertEquals(MenuParserNGTest.toXML(tops.get(0)), MenuParserNGTest.toXML(new ParseSession(tree.toFile(), x86).parse("Kconfig")));
+        assertEquals(MenuParserNGTest.toXML(tops.get(1)), MenuParserNGTest.toXML(new ParseSession(tree.toFile(), arm).parse("Kconfig")));
+        assertEquals(MenuParserNGTest.toXML(tops.get(2)), MenuParserNGTest.toXML(tops.get(0)));
+        assertTrue(MenuParserNGTest.toXML(tops.get(1)).contains("<symbol>ARM</symbol>"));
+    }
+
+    @Test
+    public void test_sharedFilesParsedOnce() throws IOException {
+        BatchParser parser = new BatchParser(tree.toFile());
+        parser.parse("Kconfig", x86);
+        assertEquals(parser.getParsed(), FILES);
+
+        // Only the top level file looks at SRCARCH, and it sources
+        // arch/arm/Kconfig in place of arch/x86/Kconfig
+        parser.parse("Kconfig", arm);
+        assertEquals(parser.getParsed(), FILES + 2);
+        assertEquals(parser.getReused(), FILES - 2);
+
+        parser.parse("Kconfig", x86);
+        assertEquals(parser.getParsed(), FILES + 2);
+        assertEquals(parser.getReused(), FILES - 2 + FILES);
+    }
+
+    @Test
+    public void test_modelsIndependent() throws IOException {
+        BatchParser parser = new BatchParser(tree.toFile());
+        List<Menu> tops = parser.parse("Kconfig", Arrays.asList(x86, x86));
+
+        Set<Entry> first = Collections.newSetFromMap(new IdentityHashMap<>());
+        collect(tops.get(0), first);
+        Set<Entry> second = Collections.newSetFromMap(new IdentityHashMap<>());
+        collect(tops.get(1), second);
+
+        assertFalse(first.isEmpty());
+        assertEquals(second.size(), first.size());
+        for (Entry e : second) {
+            assertFalse(first.contains(e), e.toString());
+        }
+    }
+
+    private static void collect(Container c, Set<Entry> into) {
+        for (Entry e : c.getEntries()) {
+            into.add(e);
+            if (e instanceof Container) {
+                collect((Container) e, into);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.resolve.DependencyIndex;
+import com.moosemorals.configparser.tools.CorpusGenerator;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class CorpusGeneratorNGTest {
+
+    public CorpusGeneratorNGTest() {
+    }
+
+    private static Path generate(long seed, int symbols, int files) throws IOException {
+        Path root = Files.createTempDirectory("corpus");
+        CorpusGenerator generator = new CorpusGenerator(seed);
+        generator.setSymbols(symbols);
+        generator.setFiles(files);
+        generator.generate(root.toFile());
+        return root;
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> s = Files.walk(root)) {
+            s.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Test
+    public void test_parses() throws IOException, XMLStreamException {
+        Path root = generate(42, 2000, 60);
+        try {
+            ParseSession session = new ParseSession(root.toFile(), MenuParserNGTest.testEnvironment());
+            Menu top = session.parse("Kconfig");
+
+            SymbolTable symbols = session.getSymbolTable();
+            DependencyIndex index = new DependencyIndex(top, symbols);
+            for (int i = 0; i < 2000; i += 1) {
+                assertTrue(index.isDefined(symbols.intern(CorpusGenerator.symbol(i))), CorpusGenerator.symbol(i));
+            }
+            assertTrue(index.getDangling().isEmpty(), index.getDangling().toString());
+
+            // No config refers to itself, or to one defined after it
+            for (int i = 0; i < 2000; i += 1) {
+                Symbol from = symbols.intern(CorpusGenerator.symbol(i));
+                for (DependencyIndex.Kind kind : DependencyIndex.Kind.values()) {
+                    for (Symbol to : index.getForward(kind, from)) {
+                        if (to.getName().startsWith("GEN_")) {
+                            assertTrue(Integer.parseInt(to.getName().substring(4)) < i, from + " " + kind + " " + to);
+                        }
+                    }
+                }
+            }
+
+            // Every file is sourced from somewhere
+            String expected = MenuParserNGTest.toXML(top);
+            assertTrue(expected.contains("file=\"" + CorpusGenerator.path(59) + "\""));
+
+            ForkJoinPool pool = new ForkJoinPool(4);
+            try {
+                ParseSession parallel = new ParseSession(root.toFile(), MenuParserNGTest.testEnvironment());
+                parallel.setPool(pool);
+                assertEquals(MenuParserNGTest.toXML(parallel.parse("Kconfig")), expected);
+            } finally {
+                pool.shutdown();
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    @Test
+    public void test_seeded() throws IOException {
+        Path a = generate(7, 500, 20);
+        Path b = generate(7, 500, 20);
+        try {
+            for (int i = 0; i < 20; i += 1) {
+                String path = CorpusGenerator.path(i);
+                assertEquals(Files.readAllBytes(a.resolve(path)), Files.readAllBytes(b.resolve(path)), path);
+            }
+        } finally {
+            delete(a);
+            delete(b);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.resolve.DependencyIndex;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class DependencyIndexNGTest {
+
+    private SymbolTable symbols;
+    private DependencyIndex index;
+
+    public DependencyIndexNGTest() {
+    }
+
+    @BeforeClass
+    public void setUp() throws URISyntaxException, IOException {
+        ParseSession session = new ParseSession(new File(DependencyIndexNGTest.class.getResource("/resolve").toURI()), new Environment());
+        Menu top = session.parse("Kconfig");
+        symbols = session.getSymbolTable();
+        index = new DependencyIndex(top, symbols);
+    }
+
+    private List<String> names(List<Symbol> list) {
+        return list.stream().map(Symbol::getName).sorted().collect(Collectors.toList());
+    }
+
+    @Test
+    public void test_select() {
+        assertEquals(names(index.getSelectedBy(symbols.intern("CRC32"))), Collections.singletonList("IGB"));
+        assertEquals(names(index.getForward(DependencyIndex.Kind.IMPLY, symbols.intern("IGB"))), Collections.singletonList("PTP"));
+        assertEquals(index.getSelectedBy(symbols.intern("PCI")).size(), 0);
+    }
+
+    @Test
+    public void test_depends() {
+        // From 'depends on' and the enclosing 'if'
+        assertEquals(names(index.getDependents(symbols.intern("PCI"))), Arrays.asList("E1000", "IGB"));
+        assertEquals(names(index.getDependents(symbols.intern("NET"))), Arrays.asList("E1000", "IGB"));
+        assertEquals(names(index.getForward(DependencyIndex.Kind.DEPENDS, symbols.intern("IGB"))), Arrays.asList("NET", "PCI"));
+    }
+
+    @Test
+    public void test_definitions() {
+        assertEquals(index.getDefinitions(symbols.intern("E1000")).size(), 1);
+        assertTrue(index.isDefined(symbols.intern("HZ_100")));
+    }
+
+    @Test
+    public void test_menuConditions() throws IOException {
+        Path tree = Files.createTempDirectory("index");
+        Files.write(tree.resolve("Kconfig"), ("config PCI\n\tbool \"PCI\"\n\n"
+                + "menu \"Network devices\"\n\tdepends on PCI && !ALPHA\n\tvisible if EXPERT\n\n"
+                + "config E100\n\ttristate \"Intel PRO/100\"\n\n"
+                + "comment \"Old cards\"\n\tdepends on ISA\n\n"
+                + "endmenu\n").getBytes(StandardCharsets.UTF_8));
+        ParseSession session = new ParseSession(tree.toFile(), new Environment());
+        DependencyIndex menus = new DependencyIndex(session.parse("Kconfig"), session.getSymbolTable());
+        SymbolTable table = session.getSymbolTable();
+
+        // The menu's conditions apply to what's in it
+        assertEquals(names(menus.getDependents(table.intern("PCI"))), Collections.singletonList("E100"));
+        assertEquals(names(menus.getDependents(table.intern("EXPERT"))), Collections.singletonList("E100"));
+        // Symbols only mentioned by a menu or comment still have to exist
+        assertEquals(menus.getDangling().stream().map(r -> r.getSymbol().getName()).sorted().collect(Collectors.toList()),
+                Arrays.asList("ALPHA", "EXPERT", "ISA"));
+    }
+
+    @Test
+    public void test_dangling() {
+        assertEquals(index.getDangling().size(), 1);
+        assertEquals(index.getDangling().get(0).getSymbol().getName(), "SPARC");
+        assertEquals(index.getDangling().get(0).getEntry().getSymbol().getName(), "PTP");
+    }
+
+}
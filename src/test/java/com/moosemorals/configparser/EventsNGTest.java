@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.events.Events;
+import com.moosemorals.configparser.parsers.ExpressionParser;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.stream.XMLStreamException;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class EventsNGTest {
+
+    private static final String[] NAMES = {"File", "Config", "Choice", "Menu", "Source", "Help", "Write"};
+
+    public EventsNGTest() {
+    }
+
+    private static List<RecordedEvent> record() throws IOException, URISyntaxException, XMLStreamException {
+        Path file = Files.createTempFile("configparser", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                for (String name : NAMES) {
+                    recording.enable("com.moosemorals.configparser." + name).withoutThreshold();
+                }
+                recording.start();
+                Menu top = MenuParserNGTest.testSession().parse("Kconfig");
+                new TreeWriter(null).write(top, new StringWriter());
+                // Not a file, so shouldn't get a File event
+                ExpressionParser.parse("A && !B", new SymbolTable());
+                recording.stop();
+                recording.dump(file);
+            }
+            return RecordingFile.readAllEvents(file);
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static List<RecordedEvent> named(List<RecordedEvent> events, String name) {
+        List<RecordedEvent> result = new ArrayList<>();
+        for (RecordedEvent e : events) {
+            if (e.getEventType().getName().equals("com.moosemorals.configparser." + name)) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void test_events() throws IOException, URISyntaxException, XMLStreamException {
+        assertTrue(Events.isAvailable());
+        List<RecordedEvent> events = record();
+
+        assertEquals(named(events, "File").size(), 4);
+        assertEquals(named(events, "Choice").size(), 1);
+
+        boolean found = false;
+        for (RecordedEvent e : named(events, "Config")) {
+            if ("E1000".equals(e.getString("symbol"))) {
+                assertEquals(e.getString("file"), "drivers/net/ethernet/Kconfig");
+                assertTrue(e.getInt("line") > 0);
+                found = true;
+            }
+        }
+        assertTrue(found);
+
+        List<String> targets = new ArrayList<>();
+        for (RecordedEvent e : named(events, "Source")) {
+            targets.add(e.getString("target"));
+        }
+        assertTrue(targets.contains("arch/x86/Kconfig"), targets.toString());
+        assertTrue(targets.contains("missing/Kconfig"), targets.toString());
+
+        assertTrue(named(events, "Help").size() > 0);
+        assertTrue(named(events, "Write").size() > 0);
+    }
+
+    @Test
+    public void test_notRecording() {
+        assertEquals(Events.begin(Events.Kind.CONFIG), null);
+        Events.end(null, "Kconfig", 1, "X");
+    }
+
+}
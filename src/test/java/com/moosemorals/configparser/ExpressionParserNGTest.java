@@ -0,0 +1,81 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.expr.Expr;
+import com.moosemorals.configparser.parsers.ExpressionParser;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.IOException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ExpressionParserNGTest {
+
+    public ExpressionParserNGTest() {
+    }
+
+    @Test
+    public void test_precedence() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        Expr e = ExpressionParser.parse("A || B && !C = y", symbols);
+
+        assertEquals(e.getType(), Expr.Type.OR);
+        assertEquals(e.getLeft().getSymbol().getName(), "A");
+        Expr and = e.getRight();
+        assertEquals(and.getType(), Expr.Type.AND);
+        // = belongs to the symbol, so this is !(C=y)
+        assertEquals(and.getRight().getType(), Expr.Type.NOT);
+        assertEquals(and.getRight().getLeft().getType(), Expr.Type.EQUAL);
+        assertEquals(e.toString(), "A||B&&!C=y");
+    }
+
+    @Test
+    public void test_brackets() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        assertEquals(ExpressionParser.parse("(A || B) && !(C && D)", symbols).toString(), "(A||B)&&!(C&&D)");
+        assertEquals(ExpressionParser.parse("((A != \"x\"))", symbols).toString(), "A!=\"x\"");
+        assertEquals(ExpressionParser.parse("A && (B && C)", symbols).toString(), "A&&(B&&C)");
+    }
+
+    @Test
+    public void test_shared() throws IOException {
+        SymbolTable symbols = new SymbolTable();
+        Expr a = ExpressionParser.parse("PCI && (NET || X86)", symbols);
+        Expr b = ExpressionParser.parse("!(PCI && (NET || X86))", symbols);
+
+        assertSame(b.getLeft(), a);
+        assertSame(a.getRight().getLeft().getSymbol(), symbols.intern("NET"));
+    }
+
+    @Test(expectedExceptions = ParseError.class)
+    public void test_unbalanced() throws IOException {
+        ExpressionParser.parse("(A && B", new SymbolTable());
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.types.Menu;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import javax.json.Json;
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.json.JsonValue;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertNull;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class JSONNGTest {
+
+    public JSONNGTest() {
+    }
+
+    static String toJSON(Menu top) throws XMLStreamException {
+        StringWriter out = new StringWriter();
+        JSON json = new JSON(out);
+        top.toXML(json);
+        json.endDocument();
+        return out.toString();
+    }
+
+    private static JsonObject read(String json) {
+        try (JsonReader reader = Json.createReader(new StringReader(json))) {
+            return reader.readObject();
+        }
+    }
+
+    private static JsonObject find(JsonObject container, String symbol) {
+        JsonArray entries = container.getJsonArray("entries");
+        if (entries == null) {
+            return null;
+        }
+        for (JsonValue v : entries) {
+            JsonObject e = (JsonObject) v;
+            if (symbol.equals(e.getString("symbol", null))) {
+                return e;
+            }
+            JsonObject found = find(e, symbol);
+            if (found != null) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void test_tree() throws IOException, URISyntaxException, XMLStreamException {
+        JsonObject top = read(toJSON(MenuParserNGTest.testSession().parse("Kconfig")));
+
+        assertEquals(top.getString(JSON.KIND), "menu");
+        assertEquals(top.getString("prompt"), "Test Kernel Configuration");
+
+        JsonObject bits = find(top, "64BIT");
+        assertNotNull(bits);
+        assertEquals(bits.getString(JSON.KIND), "config");
+        assertEquals(bits.getString("type"), "bool");
+        assertEquals(bits.getString("file"), "Kconfig");
+
+        JsonObject def = bits.getJsonArray("defaults").getJsonObject(0);
+        assertEquals(def.getString(JSON.KIND), "default");
+        assertEquals(def.getString(JSON.VALUE), "ARCH!=\"i386\"");
+        assertNull(def.get("if"));
+
+        JsonObject size = find(top, "CC_OPTIMIZE_FOR_SIZE");
+        assertEquals(size.getJsonArray("depends").getString(0), "!ARM");
+
+        JsonObject srcarch = find(top, "SRCARCH");
+        assertEquals(srcarch.getString("env"), "x86");
+    }
+
+    @Test
+    public void test_streamMatchesTree() throws IOException, URISyntaxException, XMLStreamException {
+        String expected = toJSON(MenuParserNGTest.testSession().parse("Kconfig"));
+
+        StringWriter out = new StringWriter();
+        JSON json = new JSON(out);
+        MenuParserNGTest.testSession().parse("Kconfig", new XMLParseListener(json));
+        json.endDocument();
+
+        assertEquals(out.toString(), expected);
+    }
+
+    @Test
+    public void test_attributesWithoutContent() {
+        // As XML writes an empty element with just the attributes
+        StringWriter out = new StringWriter();
+        JSON json = new JSON(out);
+        json.startList("defaults");
+        json.add("default", null, "if", "A");
+        json.end();
+        json.endDocument();
+
+        assertEquals(out.toString(), "[{\"kind\":\"default\",\"if\":\"A\"}]");
+    }
+
+    @Test(expectedExceptions = IllegalStateException.class)
+    public void test_unbalanced() {
+        JSON json = new JSON(new StringWriter());
+        json.start("menu");
+        json.end();
+        json.end();
+    }
+
+}
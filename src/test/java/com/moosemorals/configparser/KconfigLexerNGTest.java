@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import java.nio.charset.StandardCharsets;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class KconfigLexerNGTest {
+
+    public KconfigLexerNGTest() {
+    }
+
+    private static KconfigLexer lexer(String text) {
+        return new KconfigLexer(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void test_words() {
+        KconfigLexer t = lexer("config FOO_BAR\n\tbool 64BIT");
+
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getTokenString(), "config");
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getTokenString(), "FOO_BAR");
+        assertEquals(t.getLineNumber(), 1);
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOL);
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertTrue(t.tokenEquals("bool"));
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getTokenString(), "64BIT");
+        assertEquals(t.getLineNumber(), 2);
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOF);
+    }
+
+    @Test
+    public void test_keywordsShared() {
+        KconfigLexer t = lexer("depends depends");
+
+        t.nextToken();
+        String first = t.getTokenString();
+        t.nextToken();
+        assertSame(t.getTokenString(), first);
+    }
+
+    @Test
+    public void test_operators() {
+        KconfigLexer t = lexer("A&&!(B||C!=D)");
+
+        int[] expected = {KconfigLexer.TT_WORD, '&', '&', '!', '(', KconfigLexer.TT_WORD, '|', '|',
+            KconfigLexer.TT_WORD, '!', '=', KconfigLexer.TT_WORD, ')', KconfigLexer.TT_EOF};
+        for (int e : expected) {
+            assertEquals(t.nextToken(), e);
+        }
+    }
+
+    @Test
+    public void test_comment() {
+        KconfigLexer t = lexer("A # comment \"here\n# whole line\nB");
+
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOL);
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOL);
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getTokenString(), "B");
+        assertEquals(t.getLineNumber(), 3);
+    }
+
+    @Test
+    public void test_continuation() {
+        KconfigLexer t = lexer("depends on A && \\\n\tB\nC");
+
+        t.nextToken();
+        t.nextToken();
+        t.nextToken();
+        assertEquals(t.nextToken(), '&');
+        assertEquals(t.nextToken(), '&');
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getTokenString(), "B");
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOL);
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getLineNumber(), 3);
+    }
+
+    @Test
+    public void test_quotes() {
+        KconfigLexer t = lexer("\"Item #1\" 'it\\'s' \"say \\\"hi\\\"\" \"unterminated\nX");
+
+        assertEquals(t.nextToken(), '"');
+        assertEquals(t.getTokenString(), "Item #1");
+        assertEquals(t.nextToken(), '\'');
+        assertEquals(t.getTokenString(), "it's");
+        assertEquals(t.nextToken(), '"');
+        assertEquals(t.getTokenString(), "say \"hi\"");
+        assertEquals(t.nextToken(), '"');
+        assertEquals(t.getTokenString(), "unterminated");
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOL);
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+    }
+
+    @Test
+    public void test_pushBack() {
+        KconfigLexer t = lexer("A B");
+
+        t.nextToken();
+        t.pushBack();
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getTokenString(), "A");
+        t.nextToken();
+        assertEquals(t.getTokenString(), "B");
+    }
+
+    @Test
+    public void test_readLine() {
+        KconfigLexer t = lexer("help\n\t  Some text # not this\n\n\tmore\nconfig");
+
+        t.nextToken();
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOL);
+        assertEquals(t.readLine(), "\t  Some text ");
+        assertEquals(t.readLine(), "");
+        assertEquals(t.readLine(), "\tmore");
+        assertEquals(t.readLine(), "config");
+        t.unreadLine();
+        assertEquals(t.getLineNumber(), 5);
+        assertEquals(t.nextToken(), KconfigLexer.TT_WORD);
+        assertEquals(t.getTokenString(), "config");
+        assertEquals(t.nextToken(), KconfigLexer.TT_EOF);
+        assertNull(t.readLine());
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.KconfigWatcher;
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.types.Container;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class KconfigWatcherNGTest {
+
+    private Path tree;
+    private KconfigWatcher watcher;
+    private final List<String> changes = new ArrayList<>();
+
+    private final KconfigWatcher.Listener listener = new KconfigWatcher.Listener() {
+        @Override
+        public void replaced(String target, Container host, int index, List<Entry> removed, List<Entry> added) {
+            changes.add(target);
+        }
+
+        @Override
+        public void reloaded(Menu top) {
+            changes.add("reload");
+        }
+    };
+
+    public KconfigWatcherNGTest() {
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        tree = MenuParserNGTest.copyTestTree();
+        watcher = new KconfigWatcher(tree.toFile(), MenuParserNGTest.testEnvironment(), ForkJoinPool.commonPool(), null);
+        watcher.parse("Kconfig");
+        changes.clear();
+    }
+
+    @AfterMethod
+    public void tearDown() throws Exception {
+        watcher.close();
+    }
+
+    private void write(String target, String text) throws IOException {
+        Files.write(tree.resolve(target), text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private String expected() throws IOException, XMLStreamException {
+        return MenuParserNGTest.toXML(new ParseSession(tree.toFile(), MenuParserNGTest.testEnvironment()).parse("Kconfig"));
+    }
+
+    @Test
+    public void test_updateNested() throws IOException, XMLStreamException {
+        write("drivers/net/ethernet/Kconfig", "config IGB\n\ttristate \"IGB\"\n\nconfig IXGBE\n\ttristate \"IXGBE\"\n");
+        assertTrue(watcher.update("drivers/net/ethernet/Kconfig", listener));
+        assertEquals(MenuParserNGTest.toXML(watcher.getTop()), expected());
+
+        // Parent of the file that just changed, then the file again
+        write("drivers/net/Kconfig", "config EARLY\n\tbool\n\nif NET\nsource \"drivers/net/ethernet/Kconfig\"\nendif\n\nconfig LATE\n\tbool\n");
+        assertTrue(watcher.update("drivers/net/Kconfig", listener));
+        assertEquals(MenuParserNGTest.toXML(watcher.getTop()), expected());
+
+        write("drivers/net/ethernet/Kconfig", "config E100\n\ttristate \"E100\"\n");
+        assertTrue(watcher.update("drivers/net/ethernet/Kconfig", listener));
+        assertEquals(MenuParserNGTest.toXML(watcher.getTop()), expected());
+
+        assertEquals(changes.size(), 3);
+        assertFalse(watcher.update("drivers/net/Makefile", listener));
+    }
+
+    @Test
+    public void test_missingFileCreated() throws IOException, XMLStreamException {
+        Files.createDirectories(tree.resolve("missing"));
+        write("missing/Kconfig", "config FOUND\n\tbool \"Found it\"\n");
+        assertTrue(watcher.update("missing/Kconfig", listener));
+
+        String xml = MenuParserNGTest.toXML(watcher.getTop());
+        assertTrue(xml.contains("<symbol>FOUND</symbol>"));
+        assertEquals(xml, expected());
+    }
+
+    @Test
+    public void test_brokenFileKept() throws IOException, XMLStreamException {
+        String before = MenuParserNGTest.toXML(watcher.getTop());
+        write("drivers/net/ethernet/Kconfig", "if FOO\nconfig BAR\n\tbool\n");
+        watcher.update("drivers/net/ethernet/Kconfig", listener);
+
+        assertEquals(MenuParserNGTest.toXML(watcher.getTop()), before);
+        assertTrue(changes.isEmpty());
+    }
+
+    @Test
+    public void test_watchService() throws IOException, InterruptedException, XMLStreamException {
+        write("arch/x86/Kconfig", "config X86\n\tdef_bool y\n\nconfig X86_64\n\tdef_bool 64BIT\n");
+
+        int count = 0;
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while (count == 0 && System.currentTimeMillis() < end) {
+            count = watcher.poll(1, TimeUnit.SECONDS, listener);
+        }
+        assertEquals(count, 1);
+        assertEquals(changes.get(0), "arch/x86/Kconfig");
+        assertEquals(MenuParserNGTest.toXML(watcher.getTop()), expected());
+    }
+}
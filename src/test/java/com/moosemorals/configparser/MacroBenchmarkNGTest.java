@@ -0,0 +1,124 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.tools.MacroBenchmark;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class MacroBenchmarkNGTest {
+
+    public MacroBenchmarkNGTest() {
+    }
+
+    private static Map<String, MacroBenchmark.Stat> metrics(double parse, double filesPerSecond) {
+        Map<String, MacroBenchmark.Stat> m = new LinkedHashMap<>();
+        m.put(MacroBenchmark.PARSE_MILLIS, new MacroBenchmark.Stat(parse, 1));
+        m.put(MacroBenchmark.FILES_PER_SECOND, new MacroBenchmark.Stat(filesPerSecond, 10));
+        m.put(MacroBenchmark.PEAK_RSS_MB, new MacroBenchmark.Stat(-1, 0));
+        return m;
+    }
+
+    @Test
+    public void test_compare() {
+        Map<String, MacroBenchmark.Stat> baseline = metrics(100, 1000);
+
+        assertTrue(MacroBenchmark.compare(baseline, metrics(109, 910), 0.1).isEmpty());
+        assertTrue(MacroBenchmark.compare(baseline, metrics(50, 5000), 0.1).isEmpty());
+
+        List<String> slower = MacroBenchmark.compare(baseline, metrics(111, 1000), 0.1);
+        assertEquals(slower.size(), 1);
+        assertTrue(slower.get(0).startsWith(MacroBenchmark.PARSE_MILLIS));
+
+        List<String> fewer = MacroBenchmark.compare(baseline, metrics(100, 800), 0.1);
+        assertEquals(fewer.size(), 1);
+        assertTrue(fewer.get(0).startsWith(MacroBenchmark.FILES_PER_SECOND));
+    }
+
+    @Test
+    public void test_noisy() {
+        Map<String, MacroBenchmark.Stat> baseline = new LinkedHashMap<>();
+        baseline.put(MacroBenchmark.PARSE_MILLIS, new MacroBenchmark.Stat(100, 8));
+        Map<String, MacroBenchmark.Stat> current = new LinkedHashMap<>();
+
+        // 30% slower, but within three times the spread of both sets of runs
+        current.put(MacroBenchmark.PARSE_MILLIS, new MacroBenchmark.Stat(130, 4));
+        assertTrue(MacroBenchmark.compare(baseline, current, 0.1).isEmpty());
+
+        current.put(MacroBenchmark.PARSE_MILLIS, new MacroBenchmark.Stat(140, 4));
+        assertEquals(MacroBenchmark.compare(baseline, current, 0.1).size(), 1);
+    }
+
+    @Test
+    public void test_stat() {
+        MacroBenchmark.Stat stat = MacroBenchmark.Stat.of(new ArrayList<>(Arrays.asList(10.0, 12.0, 11.0, 30.0, 9.0)));
+        assertEquals(stat.getMedian(), 11.0);
+        assertEquals(stat.getSpread(), 1.0);
+    }
+
+    @Test
+    public void test_baselineRoundTrip() throws IOException {
+        Map<String, MacroBenchmark.Stat> metrics = metrics(123.4, 567.8);
+        StringWriter first = new StringWriter();
+        MacroBenchmark.writeBaseline(null, first, "ci-linux", "test", metrics);
+
+        // Another host's baseline is kept alongside
+        StringWriter out = new StringWriter();
+        MacroBenchmark.writeBaseline(new StringReader(first.toString()), out, "ci-macos", "test", metrics(99.9, 1000));
+        String json = out.toString();
+        assertTrue(json.startsWith("{"));
+        assertTrue(json.endsWith("}\n"));
+
+        assertEquals(MacroBenchmark.readBaseline(new StringReader(json), "ci-linux", "test"), metrics);
+        assertEquals(MacroBenchmark.readBaseline(new StringReader(json), "ci-macos", "test"), metrics(99.9, 1000));
+        assertNull(MacroBenchmark.readBaseline(new StringReader(json), "laptop (2 cores)", "test"));
+    }
+
+    @Test
+    public void test_run() throws IOException, URISyntaxException {
+        Map<String, MacroBenchmark.Stat> result = new MacroBenchmark(MenuParserNGTest.testTree(), MenuParserNGTest.testEnvironment(), null).run(0, 3);
+
+        assertTrue(result.get(MacroBenchmark.PARSE_MILLIS).getMedian() > 0);
+        assertTrue(result.get(MacroBenchmark.FILES_PER_SECOND).getMedian() > 0);
+        assertTrue(result.get(MacroBenchmark.PEAK_HEAP_MB).getMedian() > 0);
+        assertTrue(result.get(MacroBenchmark.ALLOCATED_MB).getMedian() > 0);
+        assertTrue(MacroBenchmark.compare(result, result, 0).isEmpty());
+    }
+
+}
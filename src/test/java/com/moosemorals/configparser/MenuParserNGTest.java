@@ -0,0 +1,195 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseListener;
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.types.Choice;
+import com.moosemorals.configparser.types.Comment;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Menu;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class MenuParserNGTest {
+
+    public MenuParserNGTest() {
+    }
+
+    static Environment testEnvironment() {
+        Environment environment = new Environment();
+        environment.put("SRCARCH", "x86");
+        environment.put("ARCH", "x86");
+        return environment;
+    }
+
+    static File testTree() throws URISyntaxException {
+        return new File(MenuParserNGTest.class.getResource("/tree").toURI());
+    }
+
+    /**
+     * Copy the test tree somewhere it can be changed.
+     */
+    static Path copyTestTree() throws IOException, URISyntaxException {
+        Path tree = Files.createTempDirectory("tree");
+        Path source = testTree().toPath();
+        try (Stream<Path> s = Files.walk(source)) {
+            for (Path p : (Iterable<Path>) s::iterator) {
+                Path dest = tree.resolve(source.relativize(p).toString());
+                if (Files.isDirectory(p)) {
+                    Files.createDirectories(dest);
+                } else {
+                    Files.copy(p, dest);
+                }
+            }
+        }
+        return tree;
+    }
+
+    /**
+     * @return a session for the test tree and environment
+     */
+    static ParseSession testSession() throws URISyntaxException {
+        return new ParseSession(testTree(), testEnvironment());
+    }
+
+    static String toXML(Menu top) throws XMLStreamException {
+        StringWriter out = new StringWriter();
+        XML xml = new XML(out);
+        top.toXML(xml);
+        xml.endDocument();
+        xml.flush();
+        return out.toString();
+    }
+
+    @Test
+    public void test_sequentialParse() throws IOException, URISyntaxException, XMLStreamException {
+        Menu top = testSession().parse("Kconfig");
+
+        String xml = toXML(top);
+        assertTrue(xml.contains("<symbol>E1000</symbol>"));
+        assertTrue(xml.contains("<condition>ETHERNET</condition>"));
+    }
+
+    @Test
+    public void test_parallelMatchesSequential() throws IOException, URISyntaxException, XMLStreamException {
+        String expected = toXML(testSession().parse("Kconfig"));
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 10; i += 1) {
+                ParseSession session = testSession();
+                session.setPool(pool);
+                Menu top = session.parse("Kconfig");
+                assertEquals(toXML(top), expected);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_fragmentsWithoutPool() throws IOException, URISyntaxException, XMLStreamException {
+        String expected = toXML(testSession().parse("Kconfig"));
+
+        ParseSession session = testSession();
+        session.setPool(null);
+        Menu top = session.parse("Kconfig");
+        assertEquals(toXML(top), expected);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_missingTopLevel() throws IOException, URISyntaxException {
+        ParseSession session = testSession();
+        session.setPool(ForkJoinPool.commonPool());
+        session.parse("NoSuchKconfig");
+    }
+
+    @Test
+    public void test_streamMatchesTree() throws IOException, URISyntaxException, XMLStreamException {
+        String expected = toXML(testSession().parse("Kconfig"));
+
+        StringWriter out = new StringWriter();
+        XML xml = new XML(out);
+        testSession().parse("Kconfig", new XMLParseListener(xml));
+        xml.endDocument();
+        xml.flush();
+
+        assertEquals(out.toString(), expected);
+    }
+
+    @Test
+    public void test_streamKeepsNothing() throws IOException, URISyntaxException {
+        List<Menu> menus = new ArrayList<>();
+        int[] leaves = new int[1];
+        testSession().parse("Kconfig", new ParseListener() {
+            @Override
+            public void startMenu(Menu menu) {
+                menus.add(menu);
+            }
+
+            @Override
+            public void endMenu(Menu menu) {
+                assertTrue(menu.getEntries().isEmpty());
+            }
+
+            @Override
+            public void startChoice(Choice choice) {
+            }
+
+            @Override
+            public void endChoice(Choice choice) {
+                assertTrue(choice.getEntries().isEmpty());
+            }
+
+            @Override
+            public void config(Config config) {
+                leaves[0] += 1;
+            }
+
+            @Override
+            public void comment(Comment comment) {
+                leaves[0] += 1;
+            }
+        });
+        assertTrue(menus.size() > 1);
+        assertTrue(leaves[0] > 0);
+    }
+}
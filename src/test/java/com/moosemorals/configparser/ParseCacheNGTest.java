@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseCache;
+import com.moosemorals.configparser.parsers.ParseSession;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ParseCacheNGTest {
+
+    // Files that exist in the test tree
+    private static final int FILES = 4;
+
+    private Path tree;
+    private Path cacheDir;
+
+    public ParseCacheNGTest() {
+    }
+
+    @BeforeMethod
+    public void copyTree() throws Exception {
+        tree = MenuParserNGTest.copyTestTree();
+        cacheDir = Files.createTempDirectory("cache");
+    }
+
+    private String parse(ParseCache cache, Environment environment) throws IOException, XMLStreamException {
+        ParseSession session = new ParseSession(tree.toFile(), environment);
+        session.setCache(cache);
+        return MenuParserNGTest.toXML(session.parse("Kconfig"));
+    }
+
+    @Test
+    public void test_warmRunMatches() throws IOException, XMLStreamException {
+        String expected = parse(null, MenuParserNGTest.testEnvironment());
+
+        ParseCache cold = new ParseCache(cacheDir.toFile());
+        assertEquals(parse(cold, MenuParserNGTest.testEnvironment()), expected);
+        assertEquals(cold.getMisses(), FILES);
+        assertEquals(cold.getHits(), 0);
+
+        for (int i = 0; i < 2; i += 1) {
+            ParseCache warm = new ParseCache(cacheDir.toFile());
+            assertEquals(parse(warm, MenuParserNGTest.testEnvironment()), expected);
+            assertEquals(warm.getHits(), FILES);
+            assertEquals(warm.getMisses(), 0);
+        }
+    }
+
+    @Test
+    public void test_changedFileReparsed() throws IOException, XMLStreamException {
+        parse(new ParseCache(cacheDir.toFile()), MenuParserNGTest.testEnvironment());
+
+        Path changed = tree.resolve("drivers/net/ethernet/Kconfig");
+        Files.write(changed, "\nconfig IGB\n\ttristate \"Intel(R) 82575/82576 support\"\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        File f = changed.toFile();
+        f.setLastModified(f.lastModified() + 2000);
+
+        ParseCache cache = new ParseCache(cacheDir.toFile());
+        String xml = parse(cache, MenuParserNGTest.testEnvironment());
+        assertEquals(cache.getMisses(), 1);
+        assertEquals(cache.getHits(), FILES - 1);
+        assertTrue(xml.contains("<symbol>IGB</symbol>"));
+        assertEquals(xml, parse(null, MenuParserNGTest.testEnvironment()));
+    }
+
+    @Test
+    public void test_environmentChange() throws IOException, XMLStreamException {
+        parse(new ParseCache(cacheDir.toFile()), MenuParserNGTest.testEnvironment());
+
+        // Only the top level file looks at SRCARCH
+        Files.createDirectories(tree.resolve("arch/arm"));
+        Files.write(tree.resolve("arch/arm/Kconfig"), "config ARM\n\tdef_bool y\n".getBytes(StandardCharsets.UTF_8));
+        Environment arm = MenuParserNGTest.testEnvironment();
+        arm.put("SRCARCH", "arm");
+
+        ParseCache cache = new ParseCache(cacheDir.toFile());
+        String xml = parse(cache, arm);
+        assertEquals(cache.getMisses(), 2);
+        assertTrue(xml.contains("<symbol>ARM</symbol>"));
+        assertEquals(xml, parse(null, arm));
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.metrics.FileMetrics;
+import com.moosemorals.configparser.metrics.ParseMetrics;
+import com.moosemorals.configparser.parsers.ParseSession;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.util.concurrent.ForkJoinPool;
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonReader;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ParseMetricsNGTest {
+
+    public ParseMetricsNGTest() {
+    }
+
+    private static ParseMetrics parse(ParseSession session) throws IOException {
+        ParseMetrics metrics = new ParseMetrics();
+        session.setMetrics(metrics);
+        session.parse("Kconfig");
+        return metrics;
+    }
+
+    private static FileMetrics find(ParseMetrics metrics, String target) {
+        for (FileMetrics f : metrics.getFiles()) {
+            if (f.getTarget().equals(target)) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    @Test
+    public void test_sequential() throws IOException, URISyntaxException {
+        ParseMetrics metrics = parse(MenuParserNGTest.testSession());
+
+        assertEquals(metrics.getFileCount(), 4);
+        assertEquals(metrics.getMissingCount(), 1);
+        assertEquals(metrics.getCachedCount(), 0);
+
+        FileMetrics top = find(metrics, "Kconfig");
+        assertEquals(top.getSources(), 3);
+        assertTrue(top.getTokens() > 0);
+        assertTrue(top.getLines() > 40);
+        assertTrue(top.getBytes() > 0);
+        assertTrue(top.getLexNanos() > 0);
+        assertTrue(top.getParseNanos() >= 0);
+        assertEquals(find(metrics, "drivers/net/Kconfig").getSources(), 1);
+        assertNull(find(metrics, "missing/Kconfig"));
+    }
+
+    @Test
+    public void test_parallelMatchesSequential() throws IOException, URISyntaxException {
+        ParseMetrics sequential = parse(MenuParserNGTest.testSession());
+        ParseSession session = MenuParserNGTest.testSession();
+        session.setPool(ForkJoinPool.commonPool());
+        ParseMetrics parallel = parse(session);
+
+        assertEquals(parallel.getFileCount(), sequential.getFileCount());
+        assertEquals(parallel.getMissingCount(), sequential.getMissingCount());
+        assertEquals(parallel.getTokenCount(), sequential.getTokenCount());
+        assertEquals(parallel.getLineCount(), sequential.getLineCount());
+        assertEquals(parallel.getByteCount(), sequential.getByteCount());
+        assertEquals(parallel.getSourceCount(), sequential.getSourceCount());
+    }
+
+    @Test
+    public void test_mbean() throws IOException, JMException, URISyntaxException {
+        ParseMetrics metrics = parse(MenuParserNGTest.testSession());
+        metrics.register();
+
+        ObjectName name = new ObjectName(ParseMetrics.OBJECT_NAME);
+        assertEquals(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "FileCount"), 4);
+        String[] slowest = (String[]) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "SlowestFiles");
+        assertEquals(slowest.length, 4);
+
+        ManagementFactory.getPlatformMBeanServer().invoke(name, "reset", null, null);
+        assertEquals(metrics.getFileCount(), 0);
+    }
+
+    @Test
+    public void test_report() throws IOException, URISyntaxException {
+        ParseMetrics metrics = parse(MenuParserNGTest.testSession());
+        StringWriter out = new StringWriter();
+        metrics.writeReport(out);
+
+        JsonObject report;
+        try (JsonReader reader = Json.createReader(new StringReader(out.toString()))) {
+            report = reader.readObject();
+        }
+        assertEquals(report.getInt("files"), 4);
+        assertEquals(report.getJsonNumber("tokens").longValue(), metrics.getTokenCount());
+        assertEquals(report.getJsonArray("perFile").size(), 4);
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.MenuParser;
+import com.moosemorals.configparser.parsers.ParseSession;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ParseSessionNGTest {
+
+    // Different trees, each parsed by several threads at once
+    private static final int TREES = 4;
+    private static final int THREADS = 16;
+    private static final int ROUNDS = 25;
+
+    private final List<File> trees = new ArrayList<>();
+    private final List<String> expected = new ArrayList<>();
+
+    public ParseSessionNGTest() {
+    }
+
+    @BeforeClass
+    public void makeTrees() throws Exception {
+        for (int i = 0; i < TREES; i += 1) {
+            Path tree = MenuParserNGTest.copyTestTree();
+            Files.write(tree.resolve("drivers/net/Kconfig"), String.format("\nconfig TREE_%d\n\tbool \"Tree %d\"\n", i, i).getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            trees.add(tree.toFile());
+            expected.add(MenuParserNGTest.toXML(new ParseSession(tree.toFile(), MenuParserNGTest.testEnvironment()).parse("Kconfig")));
+        }
+    }
+
+    /**
+     * The deprecated static root and constructors still parse the same
+     * tree, and sessions take no notice of the static root.
+     */
+    @Test
+    @SuppressWarnings("deprecation")
+    public void test_deprecatedRoot() throws IOException, XMLStreamException {
+        File old = SourceFile.getRoot();
+        try {
+            SourceFile.setRoot(trees.get(0));
+            assertEquals(MenuParserNGTest.toXML(new MenuParser(null, MenuParserNGTest.testEnvironment()).parse("Kconfig")), expected.get(0));
+            assertEquals(MenuParserNGTest.toXML(new MenuParser(MenuParserNGTest.testEnvironment(), null).parse("Kconfig")), expected.get(0));
+
+            SourceFile.setRoot(new File("/no/such/folder"));
+            String xml = MenuParserNGTest.toXML(new ParseSession(trees.get(0), MenuParserNGTest.testEnvironment()).parse("Kconfig"));
+            assertEquals(xml, expected.get(0));
+            assertTrue(xml.contains("<symbol>TREE_0</symbol>"));
+        } finally {
+            SourceFile.setRoot(old);
+        }
+    }
+
+    /**
+     * Lots of sessions on lots of threads, mixing sequential, parallel and
+     * streaming parses of different trees.
+     */
+    @Test
+    public void test_concurrentSessions() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        ForkJoinPool pool = new ForkJoinPool(4);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread += 1) {
+                final int id = thread;
+                results.add(executor.submit((Callable<Integer>) () -> {
+                    start.await();
+                    int checked = 0;
+                    for (int round = 0; round < ROUNDS; round += 1) {
+                        int tree = (id + round) % TREES;
+                        ParseSession session = new ParseSession(trees.get(tree), MenuParserNGTest.testEnvironment());
+                        String xml;
+                        switch ((id + round) % 3) {
+                            case 0:
+                                xml = MenuParserNGTest.toXML(session.parse("Kconfig"));
+                                break;
+                            case 1:
+                                session.setPool(pool);
+                                xml = MenuParserNGTest.toXML(session.parse("Kconfig"));
+                                break;
+                            default:
+                                StringWriter out = new StringWriter();
+                                XML writer = new XML(out);
+                                session.parse("Kconfig", new XMLParseListener(writer));
+                                writer.endDocument();
+                                writer.flush();
+                                xml = out.toString();
+                                break;
+                        }
+                        assertEquals(xml, expected.get(tree), "Thread " + id + " round " + round);
+                        checked += 1;
+                    }
+                    return checked;
+                }));
+            }
+            start.countDown();
+            int total = 0;
+            for (Future<Integer> f : results) {
+                total += f.get(2, TimeUnit.MINUTES);
+            }
+            assertEquals(total, THREADS * ROUNDS);
+        } finally {
+            executor.shutdownNow();
+            pool.shutdown();
+        }
+    }
+
+}
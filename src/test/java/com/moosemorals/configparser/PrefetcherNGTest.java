@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseCache;
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.parsers.Prefetcher;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ForkJoinPool;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class PrefetcherNGTest {
+
+    // Sourced from the test tree, counting the one that doesn't exist
+    private static final int SOURCED = 4;
+
+    private File tree;
+    private Environment environment;
+    private String expected;
+
+    public PrefetcherNGTest() {
+    }
+
+    @BeforeMethod
+    public void setUp() throws Exception {
+        tree = MenuParserNGTest.copyTestTree().toFile();
+        environment = MenuParserNGTest.testEnvironment();
+        expected = MenuParserNGTest.toXML(new ParseSession(tree, environment).parse("Kconfig"));
+    }
+
+    private String parse(ParseSession session, Prefetcher prefetcher) throws IOException, XMLStreamException {
+        session.setPrefetcher(prefetcher);
+        return MenuParserNGTest.toXML(session.parse("Kconfig"));
+    }
+
+    @Test
+    public void test_inline() throws IOException, XMLStreamException {
+        try (Prefetcher prefetcher = new Prefetcher(tree, environment, 2)) {
+            assertEquals(parse(new ParseSession(tree, environment), prefetcher), expected);
+            // Only the top level file is read when it's wanted
+            assertEquals(prefetcher.getMisses(), 1);
+            assertEquals(prefetcher.getHits() + prefetcher.getWaits(), SOURCED);
+        }
+    }
+
+    @Test
+    public void test_fragments() throws IOException, XMLStreamException {
+        try (Prefetcher prefetcher = new Prefetcher(tree, environment, 2)) {
+            ParseSession session = new ParseSession(tree, environment);
+            session.setPool(ForkJoinPool.commonPool());
+            assertEquals(parse(session, prefetcher), expected);
+            assertEquals(prefetcher.getMisses(), 1);
+        }
+    }
+
+    @Test
+    public void test_cache() throws IOException, XMLStreamException {
+        ParseCache cache = new ParseCache();
+        SymbolTable symbols = new SymbolTable();
+        for (int i = 0; i < 2; i += 1) {
+            try (Prefetcher prefetcher = new Prefetcher(tree, environment, 2)) {
+                ParseSession session = new ParseSession(tree, environment, symbols);
+                session.setCache(cache);
+                assertEquals(parse(session, prefetcher), expected);
+            }
+        }
+        // Every file that exists, including the top level one
+        assertEquals(cache.getHits(), SOURCED);
+    }
+
+    @Test
+    public void test_sourceInHelp() throws IOException, XMLStreamException {
+        // Looks like a source line, but isn't one
+        Path ethernet = tree.toPath().resolve("drivers/net/ethernet/Kconfig");
+        Files.write(ethernet, "\nconfig E1000E\n\ttristate \"Intel PRO/1000\"\n\thelp\n\t  source Kconfig\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        expected = MenuParserNGTest.toXML(new ParseSession(tree, environment).parse("Kconfig"));
+
+        try (Prefetcher prefetcher = new Prefetcher(tree, environment, 2)) {
+            assertEquals(parse(new ParseSession(tree, environment), prefetcher), expected);
+        }
+    }
+
+}
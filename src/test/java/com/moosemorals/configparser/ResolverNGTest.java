@@ -0,0 +1,132 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.expr.SymbolValues;
+import com.moosemorals.configparser.expr.Tristate;
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.resolve.DotConfig;
+import com.moosemorals.configparser.resolve.Resolver;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class ResolverNGTest {
+
+    private static final String CONFIG = "CONFIG_MODULES=y\n"
+            + "CONFIG_NET=y\n"
+            + "CONFIG_IGB=m\n"
+            + "CONFIG_NR_CPUS=4096\n"
+            + "CONFIG_HZ_100=y\n";
+
+    private SymbolTable symbols;
+    private Resolver resolver;
+
+    public ResolverNGTest() {
+    }
+
+    private static ParseSession session() throws URISyntaxException {
+        return new ParseSession(new File(ResolverNGTest.class.getResource("/resolve").toURI()), new Environment());
+    }
+
+    @BeforeMethod
+    public void setUp() throws URISyntaxException, IOException {
+        ParseSession session = session();
+        Menu top = session.parse("Kconfig");
+        symbols = session.getSymbolTable();
+        resolver = new Resolver(top, symbols);
+        resolver.load(DotConfig.read(new StringReader(CONFIG), symbols));
+    }
+
+    private String value(String name) {
+        return resolver.getValues().getString(symbols.intern(name));
+    }
+
+    @Test
+    public void test_resolve() {
+        assertEquals(value("PCI"), "y");
+        assertEquals(value("E1000"), "m");
+        assertEquals(value("IGB"), "m");
+        // Selected and implied by IGB
+        assertEquals(value("CRC32"), "m");
+        assertEquals(value("PTP"), "m");
+        assertEquals(value("NR_CPUS"), "512");
+        assertEquals(value("LOCALVERSION"), "-test");
+        assertEquals(value("HZ_100"), "y");
+        assertEquals(value("HZ_250"), "n");
+    }
+
+    @Test
+    public void test_update() {
+        long before = resolver.getUpdates();
+        resolver.set(symbols.intern("NET"), "n");
+
+        assertEquals(value("E1000"), "n");
+        assertEquals(value("IGB"), "n");
+        assertEquals(value("CRC32"), "n");
+        // Only the rules that read NET and what they change
+        assertTrue(resolver.getUpdates() - before < 10);
+
+        resolver.set(symbols.intern("HZ_100"), null);
+        assertEquals(value("HZ_250"), "y");
+
+        resolver.set(symbols.intern("MODULES"), "n");
+        assertEquals(resolver.getValues().getTristate(symbols.intern("PCI")), Tristate.Y);
+        resolver.set(symbols.intern("NET"), "y");
+        assertEquals(value("E1000"), "y");
+    }
+
+    @Test
+    public void test_write() throws IOException, URISyntaxException {
+        StringWriter out = new StringWriter();
+        resolver.write(out);
+        String config = out.toString();
+
+        assertTrue(config.contains("CONFIG_E1000=m\n"));
+        assertTrue(config.contains("CONFIG_LOCALVERSION=\"-test\"\n"));
+        assertTrue(config.contains("# CONFIG_HZ_250 is not set\n"));
+        assertEquals(resolver.getValues().getType(symbols.intern("NR_CPUS")), SymbolValues.INT);
+
+        // Reading the output back gives the same values
+        ParseSession session = session();
+        Resolver again = new Resolver(session.parse("Kconfig"), session.getSymbolTable());
+        again.load(DotConfig.read(new StringReader(config), session.getSymbolTable()));
+        StringWriter second = new StringWriter();
+        again.write(second);
+        assertEquals(second.toString(), config);
+    }
+
+}
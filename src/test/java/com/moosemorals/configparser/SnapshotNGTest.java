@@ -0,0 +1,163 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.snapshot.Snapshot;
+import com.moosemorals.configparser.snapshot.SnapshotWriter;
+import com.moosemorals.configparser.sources.DirectoryTree;
+import com.moosemorals.configparser.sources.StampedTree;
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class SnapshotNGTest {
+
+    private Path tree;
+    private File file;
+    private Menu top;
+
+    public SnapshotNGTest() {
+    }
+
+    @BeforeMethod
+    public void parse() throws Exception {
+        tree = MenuParserNGTest.copyTestTree();
+        file = Files.createTempFile("snapshot", ".bin").toFile();
+        file.deleteOnExit();
+        top = write();
+    }
+
+    private Menu write() throws IOException {
+        StampedTree stamped = new StampedTree(new DirectoryTree(tree.toFile()));
+        Environment environment = MenuParserNGTest.testEnvironment();
+        Menu parsed = new ParseSession(stamped, environment, new SymbolTable()).parse("Kconfig");
+        SnapshotWriter.write(parsed, file, stamped, environment);
+        return parsed;
+    }
+
+    private boolean isCurrent() throws IOException {
+        return isCurrent(MenuParserNGTest.testEnvironment());
+    }
+
+    private boolean isCurrent(Environment environment) throws IOException {
+        return Snapshot.open(file).isCurrent(new DirectoryTree(tree.toFile()), environment);
+    }
+
+    @Test
+    public void test_roundTrip() throws IOException, XMLStreamException {
+        Snapshot snapshot = Snapshot.open(file);
+        assertTrue(isCurrent());
+        assertEquals(MenuParserNGTest.toXML(snapshot.getTop()), MenuParserNGTest.toXML(top));
+    }
+
+    @Test
+    public void test_entriesMadeOnce() throws IOException {
+        Snapshot snapshot = Snapshot.open(file);
+        Menu loaded = snapshot.getTop();
+        assertSame(loaded.getEntries().get(0), snapshot.getEntry(1));
+        assertSame(snapshot.getEntry(1), snapshot.getEntry(1));
+        // Symbols go into the snapshot's table, the same as a parse
+        for (int i = 1; i < snapshot.size(); i += 1) {
+            if (snapshot.getEntry(i) instanceof Config) {
+                Config c = (Config) snapshot.getEntry(i);
+                assertSame(c.getSymbol(), snapshot.getSymbolTable().intern(c.getSymbol().getName()));
+            }
+        }
+    }
+
+    @Test(expectedExceptions = UnsupportedOperationException.class)
+    public void test_readOnly() throws IOException {
+        Snapshot.open(file).getTop().addEntry(new Config(top.getLocation(), null));
+    }
+
+    @Test
+    public void test_staleWhenSourceChanges() throws IOException {
+        File changed = tree.resolve("drivers/net/ethernet/Kconfig").toFile();
+        assertTrue(changed.setLastModified(changed.lastModified() + 2000));
+        assertFalse(isCurrent());
+    }
+
+    @Test
+    public void test_staleWhenSourceOnlyFileChanges() throws IOException {
+        // A file with nothing but a 'source' line has no entries of its own
+        Path kconfig = tree.resolve("Kconfig");
+        String text = new String(Files.readAllBytes(kconfig), StandardCharsets.UTF_8);
+        Files.write(kconfig, text.replace("source \"drivers/net/Kconfig\"", "source \"drivers/Kconfig\"").getBytes(StandardCharsets.UTF_8));
+        Path drivers = tree.resolve("drivers/Kconfig");
+        Files.write(drivers, "source \"drivers/net/Kconfig\"\n".getBytes(StandardCharsets.UTF_8));
+        write();
+        assertTrue(isCurrent());
+
+        Files.write(drivers, "config DRIVERS\n\tbool\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        assertFalse(isCurrent());
+    }
+
+    @Test
+    public void test_staleWhenMissingFileAppears() throws IOException {
+        Path missing = tree.resolve("missing/Kconfig");
+        Files.createDirectories(missing.getParent());
+        Files.write(missing, "config FOUND\n\tbool\n".getBytes(StandardCharsets.UTF_8));
+        assertFalse(isCurrent());
+    }
+
+    @Test
+    public void test_staleWhenEnvironmentChanges() throws IOException {
+        Environment other = MenuParserNGTest.testEnvironment();
+        other.put("ARCH", "arm");
+        assertFalse(isCurrent(other));
+
+        Environment extra = MenuParserNGTest.testEnvironment();
+        extra.put("KERNELVERSION", "4.13");
+        assertFalse(isCurrent(extra));
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_otherVersionRefused() throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(4);
+            raw.writeInt(Snapshot.VERSION + 1);
+        }
+        Snapshot.open(file);
+    }
+
+}
@@ -0,0 +1,243 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.parsers.ParseSession;
+import com.moosemorals.configparser.sources.SourceTree;
+import com.moosemorals.configparser.sources.TarTree;
+import com.moosemorals.configparser.sources.ZipTree;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class SourceTreeNGTest {
+
+    // Too long for the name field of a tar header
+    private static final String LONG = "drivers/a/very/deeply/nested/folder/that/goes/on/and/on/for/more/than/a/hundred/characters/Kconfig";
+
+    private Path tree;
+    private Path archives;
+    private List<Path> files;
+    private String expected;
+
+    public SourceTreeNGTest() {
+    }
+
+    @BeforeClass
+    public void makeArchives() throws Exception {
+        tree = MenuParserNGTest.copyTestTree();
+        Files.write(tree.resolve("README"), "Not a Kconfig file\n".getBytes(StandardCharsets.UTF_8));
+        Files.createDirectories(tree.resolve(LONG).getParent());
+        Files.write(tree.resolve(LONG), "config DEEP\n\tbool\n".getBytes(StandardCharsets.UTF_8));
+        try (Stream<Path> walk = Files.walk(tree)) {
+            files = walk.filter(Files::isRegularFile).collect(Collectors.toList());
+        }
+        archives = Files.createTempDirectory("archives");
+        expected = parse(SourceTree.open(tree.toFile()));
+    }
+
+    private static String parse(SourceTree source) throws IOException, XMLStreamException {
+        return MenuParserNGTest.toXML(new ParseSession(source, MenuParserNGTest.testEnvironment(), new SymbolTable()).parse("Kconfig"));
+    }
+
+    private File tar(String name) throws IOException {
+        File file = archives.resolve(name).toFile();
+        try (OutputStream raw = new FileOutputStream(file)) {
+            OutputStream out = raw;
+            if (name.endsWith(".gz")) {
+                out = new GZIPOutputStream(raw);
+            } else if (name.endsWith(".xz")) {
+                out = new XZOutputStream(raw, new LZMA2Options());
+            }
+            for (Path p : files) {
+                String path = "linux-test/" + tree.relativize(p).toString();
+                if (path.length() > 100) {
+                    byte[] record = String.format("%d path=%s\n", path.length() + 10, path).getBytes(StandardCharsets.UTF_8);
+                    member(out, "PaxHeader", 'x', record);
+                }
+                member(out, path, '0', Files.readAllBytes(p));
+            }
+            out.write(new byte[1024]);
+            out.close();
+        }
+        return file;
+    }
+
+    private static void member(OutputStream out, String name, char type, byte[] data) throws IOException {
+        byte[] header = new byte[512];
+        byte[] n = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(n, 0, header, 0, Math.min(n.length, 100));
+        field(header, 100, 8, 0644);
+        field(header, 124, 12, data.length);
+        field(header, 136, 12, 1500000000);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        for (int i = 148; i < 156; i += 1) {
+            header[i] = ' ';
+        }
+        int sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        field(header, 148, 8, sum);
+        out.write(header);
+        out.write(data);
+        out.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void field(byte[] header, int offset, int length, long value) {
+        byte[] octal = String.format("%0" + (length - 1) + "o", value).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(octal, 0, header, offset, octal.length);
+    }
+
+    @Test
+    public void test_tar() throws IOException, XMLStreamException {
+        for (String name : new String[]{"linux.tar", "linux.tar.gz", "linux.tar.xz"}) {
+            TarTree source = new TarTree(tar(name));
+            assertEquals(parse(source), expected, name);
+            assertTrue(source.exists("drivers/net/Kconfig"));
+            assertTrue(source.exists(LONG), name);
+            assertFalse(source.exists("README"), name);
+            assertEquals(source.lastModified("Kconfig"), 1500000000000L);
+        }
+    }
+
+    @Test
+    public void test_compressionFromContents() throws IOException, XMLStreamException {
+        // A gzipped tarball without the usual name is still read
+        File gz = tar("linux.tar.gz");
+        File renamed = archives.resolve("linux-gz.tar").toFile();
+        Files.copy(gz.toPath(), renamed.toPath());
+        assertEquals(parse(new TarTree(renamed)), expected);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_bzip2Refused() throws IOException {
+        File file = archives.resolve("linux.tar.bz2").toFile();
+        Files.write(file.toPath(), "BZh91AY&SY not really bzip2".getBytes(StandardCharsets.US_ASCII));
+        new TarTree(file);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_notTarRefused() throws IOException {
+        new TarTree(tree.resolve("README").toFile());
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_truncatedRefused() throws IOException {
+        byte[] whole = Files.readAllBytes(tar("linux.tar").toPath());
+        File file = archives.resolve("truncated.tar").toFile();
+        Files.write(file.toPath(), Arrays.copyOf(whole, whole.length / 2));
+        new TarTree(file);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_missingEndRefused() throws IOException {
+        // Cut between members, so only the end of archive marker is missing
+        byte[] whole = Files.readAllBytes(tar("linux.tar").toPath());
+        long size = Long.parseLong(new String(whole, 124, 11, StandardCharsets.US_ASCII), 8);
+        File file = archives.resolve("unfinished.tar").toFile();
+        Files.write(file.toPath(), Arrays.copyOf(whole, 512 + (int) ((size + 511) / 512 * 512)));
+        new TarTree(file);
+    }
+
+    @Test(expectedExceptions = IOException.class)
+    public void test_badChecksumRefused() throws IOException {
+        byte[] whole = Files.readAllBytes(tar("linux.tar").toPath());
+        // Change the name of the first member without fixing the checksum
+        whole[0] ^= 1;
+        File file = archives.resolve("damaged.tar").toFile();
+        Files.write(file.toPath(), whole);
+        new TarTree(file);
+    }
+
+    @Test
+    public void test_badPaxRefused() throws IOException {
+        String[] records = {
+            "xx path=Kconfig\n",
+            "99 path=Kconfig\n",
+            "2 \n",
+            "13 size=lots\n",
+            "11 size=-5\n"
+        };
+        for (String record : records) {
+            File file = archives.resolve("pax.tar").toFile();
+            try (OutputStream out = new FileOutputStream(file)) {
+                member(out, "PaxHeader", 'x', record.getBytes(StandardCharsets.UTF_8));
+                member(out, "Kconfig", '0', "config A\n\tbool \"A\"\n".getBytes(StandardCharsets.UTF_8));
+                out.write(new byte[1024]);
+            }
+            try {
+                new TarTree(file);
+                fail(record);
+            } catch (IOException ex) {
+                assertEquals(ex.getMessage(), file + ": header 0 has a bad pax record", record);
+            }
+        }
+    }
+
+    @Test
+    public void test_zip() throws IOException, XMLStreamException {
+        File file = archives.resolve("linux.zip").toFile();
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (Path p : files) {
+                out.putNextEntry(new ZipEntry("linux-test/" + tree.relativize(p).toString()));
+                out.write(Files.readAllBytes(p));
+                out.closeEntry();
+            }
+        }
+        try (ZipTree source = (ZipTree) SourceTree.open(file)) {
+            assertEquals(parse(source), expected);
+            assertTrue(source.exists(LONG));
+            assertTrue(source.exists("README"));
+            assertFalse(source.exists("missing/Kconfig"));
+        }
+    }
+
+}
@@ -0,0 +1,157 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.types.FileTable;
+import com.moosemorals.configparser.types.Symbol;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class SymbolTableNGTest {
+
+    public SymbolTableNGTest() {
+    }
+
+    @Test
+    public void test_intern() {
+        SymbolTable table = new SymbolTable();
+        byte[] text = "select PCI if NET".getBytes(StandardCharsets.UTF_8);
+
+        Symbol pci = table.intern(text, 7, 10);
+        Symbol net = table.intern(text, 14, 17);
+
+        assertEquals(pci.getName(), "PCI");
+        assertEquals(pci.getId(), 0);
+        assertEquals(net.getId(), 1);
+        assertSame(table.intern("PCI"), pci);
+        assertSame(table.get(1), net);
+        assertEquals(table.size(), 2);
+    }
+
+    @Test
+    public void test_grow() {
+        SymbolTable table = new SymbolTable();
+        for (int i = 0; i < 20000; i += 1) {
+            assertEquals(table.intern("SYM_" + i).getId(), i);
+        }
+        for (int i = 0; i < 20000; i += 1) {
+            assertSame(table.intern("SYM_" + i), table.get(i));
+        }
+    }
+
+    @Test
+    public void test_concurrent() throws Exception {
+        SymbolTable table = new SymbolTable();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Symbol[]>> results = new ArrayList<>();
+            for (int n = 0; n < 4; n += 1) {
+                results.add(executor.submit(() -> {
+                    Symbol[] seen = new Symbol[5000];
+                    for (int i = 0; i < seen.length; i += 1) {
+                        seen[i] = table.intern("SYM_" + i);
+                    }
+                    return seen;
+                }));
+            }
+            Symbol[] first = results.get(0).get();
+            for (Future<Symbol[]> f : results) {
+                Symbol[] seen = f.get();
+                for (int i = 0; i < seen.length; i += 1) {
+                    assertSame(seen[i], first[i]);
+                }
+            }
+            assertEquals(table.size(), 5000);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_getWhileGrowing() throws Exception {
+        SymbolTable table = new SymbolTable();
+        FileTable files = table.getFileTable();
+        AtomicInteger interned = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int i = 0; i < 50000; i += 1) {
+                    table.intern("SYM_" + i);
+                    files.intern("file_" + i);
+                    interned.set(i + 1);
+                }
+            });
+            List<Future<?>> readers = new ArrayList<>();
+            for (int n = 0; n < 2; n += 1) {
+                readers.add(executor.submit(() -> {
+                    while (!writer.isDone()) {
+                        int last = interned.get() - 1;
+                        if (last >= 0) {
+                            assertEquals(table.get(last).getName(), "SYM_" + last);
+                            assertEquals(files.get(last), "file_" + last);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            writer.get();
+            for (Future<?> f : readers) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_fileTable() {
+        FileTable files = new SymbolTable().getFileTable();
+        int kconfig = files.intern("Kconfig");
+        int net = files.intern("net/Kconfig");
+        assertEquals(files.intern("Kconfig"), kconfig);
+
+        long location = FileTable.pack(net, 1234);
+        assertEquals(FileTable.file(location), net);
+        assertEquals(FileTable.line(location), 1234);
+        assertEquals(files.getFile(location), "net/Kconfig");
+
+        SourceFile.Location l = new SourceFile.Location(files, location);
+        assertEquals(l.getLine(), "1234");
+        assertEquals(l.toString(), "net/Kconfig: 1234");
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.expr.SymbolValues;
+import com.moosemorals.configparser.expr.Tristate;
+import com.moosemorals.configparser.parsers.ExpressionParser;
+import com.moosemorals.configparser.types.SymbolTable;
+import java.io.IOException;
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class SymbolValuesNGTest {
+
+    private SymbolTable symbols;
+    private SymbolValues values;
+
+    public SymbolValuesNGTest() {
+    }
+
+    @BeforeMethod
+    public void setUp() {
+        symbols = new SymbolTable();
+        values = new SymbolValues(symbols);
+        values.declare(symbols.intern("NET"), "bool");
+        values.declare(symbols.intern("E1000"), "tristate");
+        values.declare(symbols.intern("ARCH"), "string");
+        values.declare(symbols.intern("UNSET"), "tristate");
+        values.set(symbols.intern("NET"), "y");
+        values.set(symbols.intern("E1000"), "m");
+        values.set(symbols.intern("ARCH"), "x86");
+    }
+
+    private byte eval(String expr) throws IOException {
+        return values.evaluate(ExpressionParser.parse(expr, symbols));
+    }
+
+    @Test
+    public void test_logic() throws IOException {
+        assertEquals(eval("NET"), Tristate.Y);
+        assertEquals(eval("E1000"), Tristate.M);
+        assertEquals(eval("UNSET"), Tristate.N);
+        assertEquals(eval("NET && E1000"), Tristate.M);
+        assertEquals(eval("UNSET || E1000"), Tristate.M);
+        assertEquals(eval("!E1000"), Tristate.M);
+        assertEquals(eval("!(NET && UNSET)"), Tristate.Y);
+    }
+
+    @Test
+    public void test_constants() throws IOException {
+        assertEquals(eval("y"), Tristate.Y);
+        assertEquals(eval("m"), Tristate.M);
+        assertEquals(eval("n"), Tristate.N);
+        // Undeclared symbols are n
+        assertEquals(eval("SPARC"), Tristate.N);
+        assertEquals(eval("ARCH"), Tristate.N);
+    }
+
+    @Test
+    public void test_compare() throws IOException {
+        assertEquals(eval("E1000 = m"), Tristate.Y);
+        assertEquals(eval("E1000 != m"), Tristate.N);
+        assertEquals(eval("ARCH = \"x86\""), Tristate.Y);
+        assertEquals(eval("ARCH = \"arm\""), Tristate.N);
+        assertEquals(eval("UNSET = n && NET"), Tristate.Y);
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.github.luben.zstd.ZstdInputStream;
+import com.moosemorals.configparser.types.Menu;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class TreeWriterNGTest {
+
+    private Menu top;
+    private String expected;
+
+    public TreeWriterNGTest() {
+    }
+
+    @BeforeClass
+    public void parse() throws URISyntaxException, IOException, XMLStreamException {
+        top = MenuParserNGTest.testSession().parse("Kconfig");
+        expected = MenuParserNGTest.toXML(top);
+    }
+
+    private static String readAll(InputStream in) throws IOException {
+        try (InputStream i = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = i.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private void write(File file) throws IOException, XMLStreamException {
+        try (Writer out = TreeWriter.open(file)) {
+            new TreeWriter(ForkJoinPool.commonPool()).write(top, out);
+        }
+    }
+
+    @Test
+    public void test_parallelMatchesTree() throws XMLStreamException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int i = 0; i < 10; i += 1) {
+                StringWriter out = new StringWriter();
+                new TreeWriter(pool).write(top, out);
+                assertEquals(out.toString(), expected);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void test_withoutPool() throws XMLStreamException {
+        StringWriter out = new StringWriter();
+        new TreeWriter(null).write(top, out);
+        assertEquals(out.toString(), expected);
+    }
+
+    @Test
+    public void test_gzip() throws IOException, XMLStreamException {
+        File file = File.createTempFile("config", ".xml.gz");
+        try {
+            write(file);
+            assertEquals(readAll(new GZIPInputStream(new FileInputStream(file))), expected);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void test_zstd() throws IOException, XMLStreamException {
+        File file = File.createTempFile("config", ".xml.zst");
+        try {
+            write(file);
+            assertEquals(readAll(new ZstdInputStream(new FileInputStream(file))), expected);
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Osric Wilkinson (osric@fluffypeople.com).
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package com.moosemorals.configparser;
+
+import com.moosemorals.configparser.types.Config;
+import com.moosemorals.configparser.types.Entry;
+import com.moosemorals.configparser.types.Menu;
+import com.moosemorals.configparser.values.Range;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.file.Files;
+import javax.xml.stream.XMLStreamException;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertSame;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ *
+ * @author Osric Wilkinson (osric@fluffypeople.com)
+ */
+public class XMLLoaderNGTest {
+
+    private Menu top;
+    private String expected;
+
+    public XMLLoaderNGTest() {
+    }
+
+    @BeforeClass
+    public void parse() throws Exception {
+        top = MenuParserNGTest.testSession().parse("Kconfig");
+        expected = MenuParserNGTest.toXML(top);
+    }
+
+    @Test
+    public void test_roundTrip() throws XMLStreamException {
+        XMLLoader loader = new XMLLoader();
+        Menu loaded = loader.load(new StringReader(expected));
+        assertEquals(MenuParserNGTest.toXML(loaded), expected);
+
+        Entry first = loaded.getEntries().get(0);
+        assertEquals(first.getLocation().getFile(), "Kconfig");
+        assertSame(first.getSymbol(), loader.getSymbolTable().intern("SRCARCH"));
+    }
+
+    @Test
+    public void test_rangesKeepBothEnds() throws XMLStreamException {
+        Config cpus = null;
+        for (Entry e : new XMLLoader().load(new StringReader(expected)).getEntries()) {
+            if (e.getSymbol() != null && e.getSymbol().getName().equals("NR_CPUS")) {
+                cpus = (Config) e;
+            }
+        }
+        assertNotNull(cpus);
+        Range range = cpus.getRanges().get(0);
+        assertEquals(range.getValue(), "2");
+        assertEquals(range.getValue2(), "512");
+        assertEquals(range.getCondition().toString(), "SMP");
+    }
+
+    @Test
+    public void test_compressed() throws IOException, XMLStreamException {
+        File file = Files.createTempFile("config", ".xml.gz").toFile();
+        file.deleteOnExit();
+        try (Writer out = TreeWriter.open(file)) {
+            new TreeWriter(null).write(top, out);
+        }
+        assertEquals(MenuParserNGTest.toXML(new XMLLoader().load(file)), expected);
+    }
+
+    @Test(expectedExceptions = XMLStreamException.class)
+    public void test_unknownElement() throws XMLStreamException {
+        new XMLLoader().load(new StringReader("<menu file=\"Kconfig\" line=\"1\"><colour>red</colour></menu>"));
+    }
+
+}